@@ -29,6 +29,8 @@ public class AnalysisExecutionStatusDTO {
     private Long id;
     private String stdout;
     private Date stdoutDate;
+    // Size of the analysis output so far, null if not monitored
+    private Long bytesWritten;
 
     public AnalysisExecutionStatusDTO() {
     }
@@ -62,4 +64,12 @@ public class AnalysisExecutionStatusDTO {
     public void setStdoutDate(Date stdoutDate) {
         this.stdoutDate = stdoutDate;
     }
+
+    public Long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public void setBytesWritten(Long bytesWritten) {
+        this.bytesWritten = bytesWritten;
+    }
 }
@@ -0,0 +1,58 @@
+package com.odysseusinc.arachne.execution_engine_common.api.v1.dto;
+
+import javax.validation.constraints.Min;
+
+/**
+ * Resource limits of an analysis process tree, null means not limited.
+ */
+public class AnalysisResourcesDTO {
+
+    @Min(value = 0, message = "cpus can not be below 0")
+    private Double cpus;
+
+    @Min(value = 0, message = "memoryMb can not be below 0")
+    private Long memoryMb;
+
+    @Min(value = 1, message = "ioWeight can not be below 1")
+    private Integer ioWeight;
+
+    public AnalysisResourcesDTO() {
+    }
+
+    public AnalysisResourcesDTO(Double cpus, Long memoryMb, Integer ioWeight) {
+
+        this.cpus = cpus;
+        this.memoryMb = memoryMb;
+        this.ioWeight = ioWeight;
+    }
+
+    public Double getCpus() {
+
+        return cpus;
+    }
+
+    public void setCpus(Double cpus) {
+
+        this.cpus = cpus;
+    }
+
+    public Long getMemoryMb() {
+
+        return memoryMb;
+    }
+
+    public void setMemoryMb(Long memoryMb) {
+
+        this.memoryMb = memoryMb;
+    }
+
+    public Integer getIoWeight() {
+
+        return ioWeight;
+    }
+
+    public void setIoWeight(Integer ioWeight) {
+
+        this.ioWeight = ioWeight;
+    }
+}
@@ -24,7 +24,8 @@ package com.odysseusinc.arachne.execution_engine_common.api.v1.dto;
 
 public enum AnalysisResultStatusDTO {
     EXECUTED("EXECUTED"),
-    FAILED("FAILED");
+    FAILED("FAILED"),
+    CANCELLED("CANCELLED");
 
     private String title;
 
@@ -1,5 +1,6 @@
 package com.odysseusinc.arachne.execution_engine_common.api.v1.dto;
 
+import javax.validation.Valid;
 import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.Date;
@@ -23,6 +24,12 @@ public class AnalysisSyncRequestDTO {
 
     private String resultExclusions = "";
 
+    @Valid
+    private AnalysisResourcesDTO resources;
+
+    // Format of SQL result files: csv (default), csv.gz, csv.zst, parquet or arrow
+    private String resultFormat;
+
     public Long getId() {
 
         return id;
@@ -80,4 +87,24 @@ public class AnalysisSyncRequestDTO {
     public void setRequestedDescriptorId(String requestedDescriptorId) {
         this.requestedDescriptorId = requestedDescriptorId;
     }
+
+    public AnalysisResourcesDTO getResources() {
+
+        return resources;
+    }
+
+    public void setResources(AnalysisResourcesDTO resources) {
+
+        this.resources = resources;
+    }
+
+    public String getResultFormat() {
+
+        return resultFormat;
+    }
+
+    public void setResultFormat(String resultFormat) {
+
+        this.resultFormat = resultFormat;
+    }
 }
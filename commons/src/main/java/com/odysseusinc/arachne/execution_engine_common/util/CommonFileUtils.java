@@ -26,8 +26,11 @@ import static org.apache.commons.lang3.StringUtils.split;
 
 import com.odysseusinc.arachne.execution_engine_common.exception.IORuntimeException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -36,7 +39,11 @@ import java.util.stream.Collectors;
 
 import net.lingala.zip4j.ZipFile;
 import net.lingala.zip4j.exception.ZipException;
+import net.lingala.zip4j.headers.HeaderWriter;
+import net.lingala.zip4j.io.outputstream.SplitOutputStream;
+import net.lingala.zip4j.io.outputstream.ZipOutputStream;
 import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.ZipModel;
 import net.lingala.zip4j.model.ZipParameters;
 import net.lingala.zip4j.model.enums.CompressionLevel;
 import net.lingala.zip4j.model.enums.CompressionMethod;
@@ -51,6 +58,9 @@ public class CommonFileUtils {
     private static final AntPathMatcher matcher = new AntPathMatcher();
     private static final String DELETE_IN_ZIP_ERROR = "Error deleting file in zip archive. Skipped";
     private static final PathMatcher ZIP_FILES_MATCHER = FileSystems.getDefault().getPathMatcher("glob:**.zip");
+    private static final PathMatcher COMPRESSED_FILES_MATCHER = FileSystems.getDefault()
+            .getPathMatcher("glob:*.{gz,tgz,zst,bz2,xz,zip,7z,parquet,png,jpg,jpeg,gif}");
+    private static final int BUFFER_SIZE = 1 << 16;
     private static final PathMatcher RENV_FILES_MATCHER = FileSystems.getDefault()
             .getPathMatcher("glob:{,**/}renv{,/**}");
 
@@ -89,29 +99,39 @@ public class CommonFileUtils {
         return compressAndSplit(folder, zipArchive, maximumSize, "");
     }
 
+    /**
+     * Creates the archive, split into parts of the maximum size if given. Entries compressed by their own format are
+     * stored as they are, deflating them again costs a full pass over the data for nothing.
+     */
     public static File compressAndSplit(File folder, File zipArchive, Long maximumSize, String exclusions)
             throws ZipException {
 
         File zipDir = new File(zipArchive.getParent());
         try {
             Files.createDirectories(zipDir.toPath());
-            ZipFile zipFile = new ZipFile(zipArchive);
-
-            ZipParameters parameters = new ZipParameters();
-            parameters.setCompressionMethod(CompressionMethod.DEFLATE);
-            // High compression level was set selected as possible fix for a bug:
-            // http://www.lingala.net/zip4j/forum/index.php?topic=225.0
-            parameters.setCompressionLevel(CompressionLevel.MAXIMUM);
-            parameters.setIncludeRootFolder(false);
-            parameters.setReadHiddenFiles(false);
-
-            parameters.setDefaultFolderPath(folder.getAbsolutePath());
+            if (zipArchive.exists()) {
+                throw new ZipException("Zip file already exists");
+            }
             ArrayList<File> filesToAdd = filterFiles(folder.toPath(), exclusions);
 
-            if (maximumSize != null) {
-                zipFile.createSplitZipFile(filesToAdd, parameters, true, maximumSize);
-            } else {
-                zipFile.addFiles(filesToAdd, parameters);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long splitLength = maximumSize != null ? maximumSize : -1;
+            ZipModel zipModel = new ZipModel();
+            zipModel.setZipFile(zipArchive);
+            HeaderWriter headerWriter = new HeaderWriter();
+            try (SplitOutputStream splitStream = new SplitOutputStream(zipArchive, splitLength);
+                 ZipOutputStream zipStream = new ZipOutputStream(splitStream, null, StandardCharsets.UTF_8, zipModel)) {
+                for (File file : filesToAdd) {
+                    zipStream.putNextEntry(getEntryParameters(folder, file));
+                    try (InputStream in = new FileInputStream(file)) {
+                        int read;
+                        while ((read = in.read(buffer)) != -1) {
+                            zipStream.write(buffer, 0, read);
+                        }
+                    }
+                    // Sizes and CRC are known once the entry is written, as zip4j does for addFiles()
+                    headerWriter.updateLocalFileHeader(zipStream.closeEntry(), zipModel, splitStream);
+                }
             }
         } catch (ZipException zipException) {
             throw new ZipException(String.format("Zip exception [folder: %s, zipArchive: %s]: %s",
@@ -123,6 +143,30 @@ public class CommonFileUtils {
         return zipDir;
     }
 
+    private static ZipParameters getEntryParameters(File folder, File file) throws IOException {
+
+        ZipParameters parameters = new ZipParameters();
+        parameters.setFileNameInZip(folder.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/'));
+        parameters.setLastModifiedFileTime(file.lastModified());
+        if (file.length() == 0 || isCompressed(file)) {
+            // Without a data descriptor, streaming readers cannot find the end of stored data otherwise
+            parameters.setCompressionMethod(CompressionMethod.STORE);
+            parameters.setEntrySize(file.length());
+            parameters.setWriteExtendedLocalFileHeader(false);
+        } else {
+            parameters.setCompressionMethod(CompressionMethod.DEFLATE);
+            // High compression level was set selected as possible fix for a bug:
+            // http://www.lingala.net/zip4j/forum/index.php?topic=225.0
+            parameters.setCompressionLevel(CompressionLevel.MAXIMUM);
+        }
+        return parameters;
+    }
+
+    public static boolean isCompressed(File file) {
+
+        return COMPRESSED_FILES_MATCHER.matches(Paths.get(file.getName().toLowerCase()));
+    }
+
     private static ArrayList<File> filterFiles(Path folderPath, String exclusions) throws IOException {
 
         List<String> patterns = Arrays.asList(split(exclusions, ","));
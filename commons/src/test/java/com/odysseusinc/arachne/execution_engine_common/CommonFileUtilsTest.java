@@ -0,0 +1,94 @@
+package com.odysseusinc.arachne.execution_engine_common;
+
+import com.odysseusinc.arachne.execution_engine_common.util.CommonFileUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import net.lingala.zip4j.ZipFile;
+import net.lingala.zip4j.model.FileHeader;
+import net.lingala.zip4j.model.enums.CompressionMethod;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CommonFileUtilsTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void testCompressedEntriesAreStored() throws Exception {
+
+        File folder = temporaryFolder.newFolder("results");
+        byte[] csv = "id,name\r\n1,a\r\n2,b\r\n".getBytes(StandardCharsets.UTF_8);
+        Files.write(new File(folder, "query.sql.result_0.csv").toPath(), csv);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(csv);
+        }
+        Files.createDirectories(new File(folder, "sub").toPath());
+        Files.write(new File(folder, "sub/query.sql.result_1.CSV.GZ").toPath(), gzip.toByteArray());
+        Files.write(new File(folder, "empty.txt").toPath(), new byte[0]);
+        File zipArchive = new File(temporaryFolder.newFolder("zip"), "1_result.zip");
+
+        CommonFileUtils.compressAndSplit(folder, zipArchive, null, "");
+
+        Map<String, CompressionMethod> methods = new HashMap<>();
+        for (FileHeader header : new ZipFile(zipArchive).getFileHeaders()) {
+            methods.put(header.getFileName(), header.getCompressionMethod());
+        }
+        Assert.assertEquals(CompressionMethod.DEFLATE, methods.get("query.sql.result_0.csv"));
+        Assert.assertEquals(CompressionMethod.STORE, methods.get("sub/query.sql.result_1.CSV.GZ"));
+        Assert.assertEquals(CompressionMethod.STORE, methods.get("empty.txt"));
+        Map<String, byte[]> entries = readEntries(zipArchive);
+        Assert.assertEquals(3, entries.size());
+        Assert.assertArrayEquals(csv, entries.get("query.sql.result_0.csv"));
+        Assert.assertArrayEquals(gzip.toByteArray(), entries.get("sub/query.sql.result_1.CSV.GZ"));
+        Assert.assertArrayEquals(new byte[0], entries.get("empty.txt"));
+    }
+
+    @Test
+    public void testSplitArchiveIsExtracted() throws Exception {
+
+        File folder = temporaryFolder.newFolder("results");
+        byte[] data = new byte[300_000];
+        new Random(1).nextBytes(data);
+        Files.write(new File(folder, "data.zst").toPath(), data);
+        File zipArchive = new File(temporaryFolder.newFolder("zip"), "1_result.zip");
+
+        File zipDir = CommonFileUtils.compressAndSplit(folder, zipArchive, 65536L, "");
+
+        Assert.assertTrue(zipDir.listFiles().length > 1);
+        File extracted = temporaryFolder.newFolder("extracted");
+        CommonFileUtils.unzipFiles(zipArchive, extracted);
+        Assert.assertArrayEquals(data, Files.readAllBytes(new File(extracted, "data.zst").toPath()));
+    }
+
+    private static Map<String, byte[]> readEntries(File zipArchive) throws IOException {
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ZipInputStream in = new ZipInputStream(new FileInputStream(zipArchive))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                ByteArrayOutputStream content = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    content.write(buffer, 0, read);
+                }
+                entries.put(entry.getName(), content.toByteArray());
+            }
+        }
+        return entries;
+    }
+}
@@ -55,6 +55,7 @@ import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -126,6 +127,14 @@ public class AnalysisController {
         }
     }
 
+    @ApiOperation(value = "Cancel analysis")
+    @RequestMapping(value = REST_API_ANALYZE + "/{id}", method = RequestMethod.DELETE)
+    public ResponseEntity<Void> cancel(@PathVariable("id") Long id) {
+
+        log.info("Request [{}] cancellation received", id);
+        return analysisService.cancel(id) ? ResponseEntity.accepted().build() : ResponseEntity.notFound().build();
+    }
+
     @ApiOperation(value = "Execute analysis synchronously")
     @RequestMapping(value = "/analyze/sync",
             method = RequestMethod.POST,
@@ -0,0 +1,35 @@
+package com.odysseusinc.arachne.executionengine.config.properties;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "sql.parallel")
+@Component
+public class SqlParallelProperties {
+
+    // Connections used by a single analysis at most, 1 runs SQL files one after another. Analyses sharing a data source
+    // get fewer when its pool has no connections to spare, see connectionpool.capacity.max
+    private int maxParallelism;
+    // Analyses opt in by shipping this file next to their SQL files
+    private String manifest;
+
+    public int getMaxParallelism() {
+
+        return maxParallelism;
+    }
+
+    public void setMaxParallelism(int maxParallelism) {
+
+        this.maxParallelism = maxParallelism;
+    }
+
+    public String getManifest() {
+
+        return manifest;
+    }
+
+    public void setManifest(String manifest) {
+
+        this.manifest = manifest;
+    }
+}
@@ -0,0 +1,68 @@
+package com.odysseusinc.arachne.executionengine.config.properties;
+
+import com.odysseusinc.arachne.commons.types.DBMSType;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@ConfigurationProperties(prefix = "sql.streaming")
+@Component
+public class SqlStreamingProperties {
+
+    // Drivers fetching rows with a cursor only within a transaction, the whole result is read into memory otherwise
+    private static final Set<DBMSType> CURSOR_IN_TRANSACTION = EnumSet.of(DBMSType.POSTGRESQL, DBMSType.REDSHIFT);
+
+    private boolean enabled;
+    // Rows fetched per round trip, 0 leaves the driver default
+    private int fetchSize;
+    private Map<DBMSType, Integer> fetchSizes = new EnumMap<>(DBMSType.class);
+
+    public boolean isEnabled() {
+
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+
+        this.enabled = enabled;
+    }
+
+    public int getFetchSize() {
+
+        return fetchSize;
+    }
+
+    public void setFetchSize(int fetchSize) {
+
+        this.fetchSize = fetchSize;
+    }
+
+    public Map<DBMSType, Integer> getFetchSizes() {
+
+        return fetchSizes;
+    }
+
+    public void setFetchSizes(Map<DBMSType, Integer> fetchSizes) {
+
+        this.fetchSizes = fetchSizes;
+    }
+
+    /**
+     * @return rows fetched per round trip for the DBMS, 0 if streaming is disabled or the driver default is used
+     */
+    public int getFetchSize(DBMSType type) {
+
+        return enabled ? fetchSizes.getOrDefault(type, fetchSize) : 0;
+    }
+
+    /**
+     * @return whether queries have to run one at a time with autocommit off for their results to be streamed
+     */
+    public boolean requiresTransaction(DBMSType type) {
+
+        return getFetchSize(type) > 0 && CURSOR_IN_TRANSACTION.contains(type);
+    }
+}
@@ -16,6 +16,42 @@ public class RIsolatedRuntimeProperties {
     private String archiveFolder;
     // Flag for showing difference between dependencies
     private boolean applyRuntimeDependenciesComparisonLogic;
+    // Path to folder keeping extracted runtime environments, cache is disabled if empty
+    private String bundleCacheFolder;
+    // Disk budget for extracted runtime environments
+    private long bundleCacheMaxSizeMb = 20480;
+    // Path to folder keeping prepared jails, pool is disabled if empty
+    private String jailPoolFolder;
+    // Maximum number of prepared jails
+    private int jailPoolMaxSize = 4;
+    // Maximum number of prepared jails of the same runtime environment
+    private int jailPoolMaxPerDescriptor = 2;
+    // Period of recent requests used to decide which environments to keep prepared
+    private int jailPoolDemandWindowMinutes = 60;
+    // Path to cgroup v2 group holding analysis groups, limits are disabled if empty
+    private String cgroupRoot;
+    // Default CPU limit of an analysis in cores, 0 means no limit
+    private double cgroupCpus;
+    // Default memory limit of an analysis, 0 means no limit
+    private long cgroupMemoryMb;
+    // Default IO weight of an analysis, 1-10000
+    private int cgroupIoWeight = 100;
+    // Path to folder keeping jails waiting for removal, same file system as the jails keeps moves cheap
+    private String reaperFolder;
+    // Number of jails removed in parallel, jails are removed before results are reported if 0
+    private int reaperThreads = 2;
+    // Number of threads decompressing bundles with pigz or zstd, 0 means all cores
+    private int extractThreads;
+    // Start an R worker with the runtime loaded in every prepared jail, requires the jail pool
+    private boolean warmSessions;
+    // Bind-mount the host driver directory of the data source read-only into the jail instead of copying drivers
+    private boolean mountDrivers;
+    // Path to local CRAN-like package mirror environments are built from when no descriptor matches, builder is disabled if empty
+    private String envBuilderMirror;
+    // Path to folder keeping built environments and their descriptors
+    private String envBuilderFolder;
+    // Disk budget for built environments, least recently used ones are removed first
+    private long envBuilderMaxSizeMb = 20480;
 
     public String[] getRunCmd() {
         return runCmd;
@@ -64,4 +100,148 @@ public class RIsolatedRuntimeProperties {
     public void setApplyRuntimeDependenciesComparisonLogic(boolean applyRuntimeDependenciesComparisonLogic) {
         this.applyRuntimeDependenciesComparisonLogic = applyRuntimeDependenciesComparisonLogic;
     }
+
+    public String getBundleCacheFolder() {
+        return bundleCacheFolder;
+    }
+
+    public void setBundleCacheFolder(String bundleCacheFolder) {
+        this.bundleCacheFolder = bundleCacheFolder;
+    }
+
+    public long getBundleCacheMaxSizeMb() {
+        return bundleCacheMaxSizeMb;
+    }
+
+    public void setBundleCacheMaxSizeMb(long bundleCacheMaxSizeMb) {
+        this.bundleCacheMaxSizeMb = bundleCacheMaxSizeMb;
+    }
+
+    public String getJailPoolFolder() {
+        return jailPoolFolder;
+    }
+
+    public void setJailPoolFolder(String jailPoolFolder) {
+        this.jailPoolFolder = jailPoolFolder;
+    }
+
+    public int getJailPoolMaxSize() {
+        return jailPoolMaxSize;
+    }
+
+    public void setJailPoolMaxSize(int jailPoolMaxSize) {
+        this.jailPoolMaxSize = jailPoolMaxSize;
+    }
+
+    public int getJailPoolMaxPerDescriptor() {
+        return jailPoolMaxPerDescriptor;
+    }
+
+    public void setJailPoolMaxPerDescriptor(int jailPoolMaxPerDescriptor) {
+        this.jailPoolMaxPerDescriptor = jailPoolMaxPerDescriptor;
+    }
+
+    public int getJailPoolDemandWindowMinutes() {
+        return jailPoolDemandWindowMinutes;
+    }
+
+    public void setJailPoolDemandWindowMinutes(int jailPoolDemandWindowMinutes) {
+        this.jailPoolDemandWindowMinutes = jailPoolDemandWindowMinutes;
+    }
+
+    public String getCgroupRoot() {
+        return cgroupRoot;
+    }
+
+    public void setCgroupRoot(String cgroupRoot) {
+        this.cgroupRoot = cgroupRoot;
+    }
+
+    public double getCgroupCpus() {
+        return cgroupCpus;
+    }
+
+    public void setCgroupCpus(double cgroupCpus) {
+        this.cgroupCpus = cgroupCpus;
+    }
+
+    public long getCgroupMemoryMb() {
+        return cgroupMemoryMb;
+    }
+
+    public void setCgroupMemoryMb(long cgroupMemoryMb) {
+        this.cgroupMemoryMb = cgroupMemoryMb;
+    }
+
+    public int getCgroupIoWeight() {
+        return cgroupIoWeight;
+    }
+
+    public void setCgroupIoWeight(int cgroupIoWeight) {
+        this.cgroupIoWeight = cgroupIoWeight;
+    }
+
+    public String getReaperFolder() {
+        return reaperFolder;
+    }
+
+    public void setReaperFolder(String reaperFolder) {
+        this.reaperFolder = reaperFolder;
+    }
+
+    public int getReaperThreads() {
+        return reaperThreads;
+    }
+
+    public void setReaperThreads(int reaperThreads) {
+        this.reaperThreads = reaperThreads;
+    }
+
+    public int getExtractThreads() {
+        return extractThreads;
+    }
+
+    public void setExtractThreads(int extractThreads) {
+        this.extractThreads = extractThreads;
+    }
+
+    public boolean isWarmSessions() {
+        return warmSessions;
+    }
+
+    public void setWarmSessions(boolean warmSessions) {
+        this.warmSessions = warmSessions;
+    }
+
+    public boolean isMountDrivers() {
+        return mountDrivers;
+    }
+
+    public void setMountDrivers(boolean mountDrivers) {
+        this.mountDrivers = mountDrivers;
+    }
+
+    public String getEnvBuilderMirror() {
+        return envBuilderMirror;
+    }
+
+    public void setEnvBuilderMirror(String envBuilderMirror) {
+        this.envBuilderMirror = envBuilderMirror;
+    }
+
+    public String getEnvBuilderFolder() {
+        return envBuilderFolder;
+    }
+
+    public void setEnvBuilderFolder(String envBuilderFolder) {
+        this.envBuilderFolder = envBuilderFolder;
+    }
+
+    public long getEnvBuilderMaxSizeMb() {
+        return envBuilderMaxSizeMb;
+    }
+
+    public void setEnvBuilderMaxSizeMb(long envBuilderMaxSizeMb) {
+        this.envBuilderMaxSizeMb = envBuilderMaxSizeMb;
+    }
 }
@@ -0,0 +1,43 @@
+package com.odysseusinc.arachne.executionengine.model.descriptor;
+
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Compression of a runtime environment bundle, recognized by the archive extension (see jail.sh).
+ */
+public enum BundleFormat {
+    GZIP(".tar.gz", ".tgz"),
+    ZSTD(".tar.zst", ".tzst");
+
+    private final List<String> extensions;
+
+    BundleFormat(String... extensions) {
+        this.extensions = Arrays.asList(extensions);
+    }
+
+    public String getExtension() {
+        return extensions.get(0);
+    }
+
+    /**
+     * @return format of the archive, bundles with unknown extensions are gzip compressed as before
+     */
+    public static BundleFormat of(String path) {
+        return Arrays.stream(values())
+                .filter(format -> format.extensions.stream().anyMatch(ext -> StringUtils.endsWithIgnoreCase(path, ext)))
+                .findFirst()
+                .orElse(GZIP);
+    }
+
+    /**
+     * @return path of the same bundle in this format
+     */
+    public String convertPath(String path) {
+        BundleFormat current = of(path);
+        String extension = current.extensions.stream().filter(ext -> StringUtils.endsWithIgnoreCase(path, ext))
+                .findFirst().orElse("");
+        return path.substring(0, path.length() - extension.length()) + getExtension();
+    }
+}
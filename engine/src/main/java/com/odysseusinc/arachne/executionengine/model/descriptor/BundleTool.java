@@ -0,0 +1,63 @@
+package com.odysseusinc.arachne.executionengine.model.descriptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import org.apache.commons.io.IOUtils;
+
+// Re-packs gzip runtime environment bundles to zstd, which is decompressed several times faster in jail.sh.
+// Requires zstd on the path. Usage: BundleTool <bundle.tar.gz> [descriptor.json ...]
+// Descriptors given are updated to refer to the new bundle, the original bundle is kept.
+// Only for developers
+public class BundleTool {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length == 0) {
+            System.err.println("Usage: BundleTool <bundle.tar.gz> [descriptor.json ...]");
+            System.exit(1);
+        }
+        File source = new File(args[0]);
+        File target = new File(BundleFormat.ZSTD.convertPath(source.getPath()));
+        long started = System.currentTimeMillis();
+        convert(source, target);
+        System.out.printf("Converted [%s] to [%s] in %d ms, %d MB -> %d MB%n", source, target,
+                System.currentTimeMillis() - started, source.length() >> 20, target.length() >> 20);
+        ObjectMapper mapper = new ObjectMapper();
+        for (int i = 1; i < args.length; i++) {
+            File file = new File(args[i]);
+            Descriptor descriptor = mapper.readValue(file, Descriptor.class);
+            descriptor.setBundleName(BundleFormat.ZSTD.convertPath(descriptor.getBundleName()));
+            mapper.writerWithDefaultPrettyPrinter().writeValue(file, descriptor);
+            System.out.printf("Descriptor [%s] now refers to [%s]%n", file, descriptor.getBundleName());
+        }
+    }
+
+    /**
+     * Decompresses the gzip bundle and streams the tar into a zstd process using all cores.
+     */
+    public static void convert(File source, File target) throws IOException, InterruptedException {
+        if (BundleFormat.of(source.getName()) != BundleFormat.GZIP) {
+            throw new IllegalArgumentException("Not a gzip bundle: " + source);
+        }
+        Process zstd = new ProcessBuilder("zstd", "-T0", "-q", "-f", "-o", target.getAbsolutePath())
+                .redirectError(ProcessBuilder.Redirect.INHERIT)
+                .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+                .start();
+        try (InputStream is = new GZIPInputStream(new BufferedInputStream(new FileInputStream(source)), 1 << 16);
+             OutputStream os = zstd.getOutputStream()) {
+            IOUtils.copy(is, os, 1 << 16);
+        } catch (IOException e) {
+            zstd.destroyForcibly();
+            throw e;
+        }
+        int exitCode = zstd.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("zstd finished with exit code " + exitCode);
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.odysseusinc.arachne.executionengine.model.descriptor;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResourcesDTO;
 import com.odysseusinc.arachne.execution_engine_common.descriptor.RuntimeType;
 import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
 import com.odysseusinc.arachne.executionengine.model.descriptor.r.RDependency;
@@ -30,6 +31,8 @@ public class Descriptor {
     private List<String> osLibraries = new ArrayList<>();
     @JsonProperty
     private List<ExecutionRuntime> executionRuntimes = new ArrayList<>();
+    @JsonProperty
+    private AnalysisResourcesDTO resources;
 
     public String getId() {
         return id;
@@ -70,4 +73,12 @@ public class Descriptor {
     public void setExecutionRuntimes(List<ExecutionRuntime> executionRuntimes) {
         this.executionRuntimes = executionRuntimes;
     }
+
+    public AnalysisResourcesDTO getResources() {
+        return resources;
+    }
+
+    public void setResources(AnalysisResourcesDTO resources) {
+        this.resources = resources;
+    }
 }
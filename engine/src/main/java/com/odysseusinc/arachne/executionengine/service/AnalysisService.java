@@ -37,4 +37,6 @@ public interface AnalysisService {
     AnalysisRequestStatusDTO analyze(AnalysisRequestDTO analysis, File analysisDir, Boolean compressedResult, Boolean attachCdmMetadata, Long chunkSize);
 
     int activeTasks();
+
+    boolean cancel(Long id);
 }
@@ -36,4 +36,11 @@ public interface RuntimeService {
                    StdoutHandlerParams stdoutHandlerParams, AnalysisCallback callback, KrbConfig krbConfig);
 
     RuntimeServiceMode getRuntimeServiceMode();
+
+    /**
+     * Terminates the analysis, its result is sent with CANCELLED status.
+     *
+     * @return false if there is no such analysis running or waiting to run
+     */
+    boolean cancel(Long id);
 }
@@ -30,4 +30,11 @@ import java.util.concurrent.Future;
 
 public interface SQLService {
     Future analyze(AnalysisSyncRequestDTO analysis, File file, StdoutHandlerParams stdoutHandlerParams, AnalysisCallback callback);
+
+    /**
+     * Cancels the statement being executed and skips the remaining files, the result is sent with CANCELLED status.
+     *
+     * @return false if there is no such analysis running or waiting to run
+     */
+    boolean cancel(Long id);
 }
@@ -37,6 +37,7 @@ import com.odysseusinc.arachne.executionengine.service.DescriptorService;
 import com.odysseusinc.arachne.executionengine.service.RuntimeService;
 import com.odysseusinc.arachne.executionengine.service.SQLService;
 import com.odysseusinc.arachne.executionengine.util.AnalysisCallback;
+import com.odysseusinc.arachne.executionengine.util.exception.PreflightException;
 import com.odysseusinc.datasourcemanager.jdbc.auth.BigQueryAuthResolver;
 import com.odysseusinc.datasourcemanager.jdbc.auth.DataSourceAuthResolver;
 import com.odysseusinc.datasourcemanager.jdbc.auth.KerberosAuthResolver;
@@ -74,6 +75,8 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
     private final CallbackService callbackService;
     private final KerberosService kerberosService;
     private final DescriptorService descriptorService;
+    private final ProcessSupervisor processSupervisor;
+    private final PreflightValidator preflightValidator;
     @Value("${drivers.location.impala}")
     private String impalaDriversLocation;
     @Value("${drivers.location.bq}")
@@ -106,7 +109,9 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
                                CdmMetadataService cdmMetadataService,
                                CallbackService callbackService,
                                KerberosService kerberosService,
-                               DescriptorService descriptorService) {
+                               DescriptorService descriptorService,
+                               ProcessSupervisor processSupervisor,
+                               PreflightValidator preflightValidator) {
 
         this.sqlService = sqlService;
         this.runtimeService = runtimeService;
@@ -115,6 +120,8 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
         this.callbackService = callbackService;
         this.kerberosService = kerberosService;
         this.descriptorService = descriptorService;
+        this.processSupervisor = processSupervisor;
+        this.preflightValidator = preflightValidator;
         initAuthResolvers();
     }
 
@@ -133,6 +140,14 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
         Future executionFuture = null;
         String actualDescriptorId = null;
         try {
+            String executableFileName = analysis.getExecutableFileName();
+            String fileExtension = Files.getFileExtension(executableFileName).toLowerCase();
+            // R syntax is checked for the R version of the environment the analysis is going to run in
+            DescriptorBundle descriptorBundle = "r".equals(fileExtension)
+                    ? descriptorService.getDescriptorBundle(analysisDir, analysis.getId(), analysis.getRequestedDescriptorId())
+                    : null;
+            // Rejected before any environment is prepared for it
+            preflightValidator.validate(analysis, analysisDir, descriptorBundle);
             File keystoreDir = new File(analysisDir, "keys");
             keystoreDir.mkdirs();
 
@@ -148,9 +163,6 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
                 }
             }
 
-            String executableFileName = analysis.getExecutableFileName();
-            String fileExtension = Files.getFileExtension(executableFileName).toLowerCase();
-
             analysis.setResultExclusions(Stream.of(analysis.getResultExclusions(), driverPathExclusions)
                     .filter(StringUtils::isNotBlank).collect(Collectors.joining(",")));
 
@@ -171,8 +183,6 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
                 }
 
                 case "r": {
-                    DescriptorBundle descriptorBundle = descriptorService.getDescriptorBundle(analysisDir,
-                            analysis.getId(), analysis.getRequestedDescriptorId());
                     executionFuture = runtimeService.analyze(analysis, analysisDir, descriptorBundle, stdoutHandlerParams, logCleanupCallback, krbConfig);
                     status = AnalysisRequestTypeDTO.R;
                     actualDescriptorId = descriptorBundle.getDescriptor().getId();
@@ -185,6 +195,9 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
                     status = AnalysisRequestTypeDTO.NOT_RECOGNIZED;
                 }
             }
+        } catch (PreflightException e) {
+            logger.info("analysis with id={} rejected: {}", analysis.getId(), e.getMessage());
+            resultCallback.execute(null, null, analysisDir, e);
         } catch (Throwable e) {
             logger.error("analysis with id={} failed to execute", analysis.getId(), e);
             resultCallback.execute(null, null, analysisDir, e);
@@ -220,7 +233,16 @@ public class AnalysisServiceImpl implements AnalysisService, InitializingBean {
     @Override
     public int activeTasks() {
 
-        return threadPoolTaskExecutor.getActiveCount();
+        // R processes run without holding a worker thread
+        return threadPoolTaskExecutor.getActiveCount() + processSupervisor.getWatched();
+    }
+
+    @Override
+    public boolean cancel(Long id) {
+
+        boolean cancelled = runtimeService.cancel(id) || sqlService.cancel(id);
+        logger.info("Cancellation of analysis id={} {}", id, cancelled ? "requested" : "skipped, analysis is not running");
+        return cancelled;
     }
 
     private void saveMetadata(AnalysisSyncRequestDTO analysis, File toDir) {
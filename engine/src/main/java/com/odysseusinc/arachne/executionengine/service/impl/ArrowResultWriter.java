@@ -0,0 +1,212 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.dictionary.DictionaryProvider;
+import org.apache.arrow.vector.ipc.ArrowFileWriter;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Writes a result set as an Arrow IPC file. The schema is built from the metadata, all fields are nullable. Rows
+ * are copied into the column vectors of a batch, which is written as a record batch once full, so memory stays
+ * bounded by the batch size whatever the size of the result.
+ */
+public class ArrowResultWriter implements ResultWriter {
+
+    static final int BATCH_ROWS = 16384;
+
+    private final FileChannel channel;
+
+    /**
+     * Replaces the file if it exists.
+     */
+    public ArrowResultWriter(Path file) throws IOException {
+
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Writes the file, a writer takes a single result set.
+     */
+    @Override
+    public long write(ResultSet resultSet) throws SQLException, IOException {
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        String[] labels = ColumnKind.labels(metaData);
+        ColumnKind[] kinds = new ColumnKind[labels.length];
+        int[] scales = new int[labels.length];
+        List<Field> fields = new ArrayList<>(labels.length);
+        for (int column = 1; column <= labels.length; column++) {
+            kinds[column - 1] = ColumnKind.of(metaData, column);
+            scales[column - 1] = metaData.getScale(column);
+            ArrowType type = type(kinds[column - 1], metaData.getPrecision(column), metaData.getScale(column));
+            fields.add(new Field(labels[column - 1], FieldType.nullable(type), null));
+        }
+
+        long rows = 0;
+        try (BufferAllocator allocator = new RootAllocator();
+             VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields), allocator);
+             ArrowFileWriter writer = new ArrowFileWriter(root, new DictionaryProvider.MapDictionaryProvider(), channel)) {
+            writer.start();
+            List<FieldVector> vectors = root.getFieldVectors();
+            int batch = 0;
+            while (resultSet.next()) {
+                for (int index = 0; index < kinds.length; index++) {
+                    setValue(resultSet, index, kinds[index], scales[index], vectors.get(index), batch);
+                }
+                if (++batch == BATCH_ROWS) {
+                    writeBatch(root, writer, batch);
+                    rows += batch;
+                    batch = 0;
+                }
+            }
+            if (batch > 0) {
+                writeBatch(root, writer, batch);
+                rows += batch;
+            }
+            writer.end();
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        channel.close();
+    }
+
+    private static ArrowType type(ColumnKind kind, int precision, int scale) {
+
+        switch (kind) {
+            case LONG:
+                return new ArrowType.Int(64, true);
+            case DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case FLOAT:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case BOOLEAN:
+                return ArrowType.Bool.INSTANCE;
+            case DECIMAL:
+                return new ArrowType.Decimal(precision, scale, 128);
+            case DATE:
+                return new ArrowType.Date(DateUnit.DAY);
+            case TIMESTAMP:
+                return new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    private static void writeBatch(VectorSchemaRoot root, ArrowFileWriter writer, int rows) throws IOException {
+
+        root.setRowCount(rows);
+        writer.writeBatch();
+        // Keeps the buffers allocated for the next batch
+        for (FieldVector vector : root.getFieldVectors()) {
+            vector.reset();
+        }
+    }
+
+    private static void setValue(ResultSet resultSet, int index, ColumnKind kind, int scale, FieldVector vector, int row)
+            throws SQLException {
+
+        int column = index + 1;
+        switch (kind) {
+            case LONG:
+                long longValue = resultSet.getLong(column);
+                if (resultSet.wasNull()) {
+                    ((BigIntVector) vector).setNull(row);
+                } else {
+                    ((BigIntVector) vector).setSafe(row, longValue);
+                }
+                break;
+            case DOUBLE:
+                double doubleValue = resultSet.getDouble(column);
+                if (resultSet.wasNull()) {
+                    ((Float8Vector) vector).setNull(row);
+                } else {
+                    ((Float8Vector) vector).setSafe(row, doubleValue);
+                }
+                break;
+            case FLOAT:
+                float floatValue = resultSet.getFloat(column);
+                if (resultSet.wasNull()) {
+                    ((Float4Vector) vector).setNull(row);
+                } else {
+                    ((Float4Vector) vector).setSafe(row, floatValue);
+                }
+                break;
+            case BOOLEAN:
+                boolean booleanValue = resultSet.getBoolean(column);
+                if (resultSet.wasNull()) {
+                    ((BitVector) vector).setNull(row);
+                } else {
+                    ((BitVector) vector).setSafe(row, booleanValue ? 1 : 0);
+                }
+                break;
+            case DECIMAL:
+                BigDecimal decimal = resultSet.getBigDecimal(column);
+                if (decimal == null) {
+                    ((DecimalVector) vector).setNull(row);
+                } else {
+                    ((DecimalVector) vector).setSafe(row, decimal.setScale(scale, RoundingMode.HALF_UP));
+                }
+                break;
+            case DATE:
+                Date date = resultSet.getDate(column);
+                if (date == null) {
+                    ((DateDayVector) vector).setNull(row);
+                } else {
+                    ((DateDayVector) vector).setSafe(row, ColumnKind.epochDay(date));
+                }
+                break;
+            case TIMESTAMP:
+                Timestamp timestamp = resultSet.getTimestamp(column);
+                if (timestamp == null) {
+                    ((TimeStampMicroVector) vector).setNull(row);
+                } else {
+                    ((TimeStampMicroVector) vector).setSafe(row, ColumnKind.epochMicros(timestamp));
+                }
+                break;
+            default:
+                String text = resultSet.getString(column);
+                if (text == null) {
+                    ((VarCharVector) vector).setNull(row);
+                } else {
+                    ((VarCharVector) vector).setSafe(row, text.getBytes(StandardCharsets.UTF_8));
+                }
+                break;
+        }
+    }
+}
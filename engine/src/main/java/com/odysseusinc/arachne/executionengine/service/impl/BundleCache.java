@@ -0,0 +1,401 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import com.google.common.hash.Hashing;
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.model.descriptor.BundleFormat;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps one read-only extracted tree per runtime environment bundle, so that jails can be
+ * materialized from it (see jail.sh) instead of extracting the archive for every analysis.
+ * Entries are keyed by bundle path plus archive checksum and evicted in LRU order once the
+ * disk budget is exceeded. Entries leased by running analyses are never evicted.
+ */
+@Component
+@ManagedResource
+public class BundleCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BundleCache.class);
+
+    private static final String READY_SUFFIX = ".ready";
+    private static final String SCRIPT_RESOURCE = "classpath:/bundle-cache.sh";
+
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final ResourceLoader resourceLoader;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, Object> extractionLocks = new ConcurrentHashMap<>();
+    private final Map<String, Checksum> checksums = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong extractionMillis = new AtomicLong();
+    private final Map<BundleFormat, AtomicLong> formatExtractions = new EnumMap<>(BundleFormat.class);
+    private final Map<BundleFormat, AtomicLong> formatExtractionMillis = new EnumMap<>(BundleFormat.class);
+
+    private File folder;
+    private File script;
+
+    public BundleCache(RIsolatedRuntimeProperties rIsolatedRuntimeProps, ResourceLoader resourceLoader) {
+
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+        this.resourceLoader = resourceLoader;
+        for (BundleFormat format : BundleFormat.values()) {
+            formatExtractions.put(format, new AtomicLong());
+            formatExtractionMillis.put(format, new AtomicLong());
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (StringUtils.isBlank(rIsolatedRuntimeProps.getBundleCacheFolder())
+                || StringUtils.isBlank(rIsolatedRuntimeProps.getArchive())) {
+            LOGGER.info("Runtime environment bundle cache is disabled");
+            return;
+        }
+        folder = new File(rIsolatedRuntimeProps.getBundleCacheFolder());
+        FileUtils.forceMkdir(folder);
+        script = FileResourceUtils.extractResourceToTempFile(resourceLoader, SCRIPT_RESOURCE, "ee", ".sh");
+        restoreEntries();
+        LOGGER.info("Runtime environment bundle cache at [{}] holds {} entries, {} MB of {} MB",
+                folder, entries.size(), getSizeBytes() / FileUtils.ONE_MB, rIsolatedRuntimeProps.getBundleCacheMaxSizeMb());
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        FileUtils.deleteQuietly(script);
+    }
+
+    public boolean isEnabled() {
+
+        return folder != null;
+    }
+
+    /**
+     * Returns extracted tree for the bundle, extracting it on first use. Caller must close the lease once
+     * the jail built on top of the tree is cleaned up.
+     */
+    public Optional<Lease> acquire(DescriptorBundle bundle) throws IOException, InterruptedException {
+
+        if (!isEnabled() || bundle == null || StringUtils.isBlank(bundle.getPath())) {
+            return Optional.empty();
+        }
+        File archive = new File(bundle.getPath());
+        if (!archive.isFile()) {
+            LOGGER.warn("Bundle [{}] not found, cache is not used", archive);
+            return Optional.empty();
+        }
+        String key = keyOf(archive);
+        Lease lease = lease(key);
+        if (lease != null) {
+            hits.incrementAndGet();
+            return Optional.of(lease);
+        }
+        synchronized (extractionLocks.computeIfAbsent(key, k -> new Object())) {
+            lease = lease(key);
+            if (lease != null) {
+                hits.incrementAndGet();
+                return Optional.of(lease);
+            }
+            misses.incrementAndGet();
+            Entry entry = extract(key, archive);
+            synchronized (entries) {
+                entries.put(key, entry);
+            }
+            lease = lease(key);
+            evict();
+            return Optional.ofNullable(lease);
+        }
+    }
+
+    private Lease lease(String key) {
+
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            entry.leases++;
+            entry.lastAccess = System.currentTimeMillis();
+            return new Lease(entry);
+        }
+    }
+
+    private void release(Entry entry) {
+
+        synchronized (entries) {
+            entry.leases--;
+            entry.lastAccess = System.currentTimeMillis();
+        }
+        evict();
+    }
+
+    private Entry extract(String key, File archive) throws IOException, InterruptedException {
+
+        File target = new File(folder, key);
+        File ready = new File(folder, key + READY_SUFFIX);
+        long started = System.currentTimeMillis();
+        LOGGER.info("Extracting bundle [{}] into cache [{}]", archive, target);
+        // Leftovers of an interrupted extraction
+        run("remove", target);
+        if (exec("extract", target, archive.getAbsolutePath()) != 0) {
+            failures.incrementAndGet();
+            run("remove", target);
+            throw new IOException("Failed to extract bundle [" + archive + "] into [" + target + "]");
+        }
+        long size = size(target);
+        FileUtils.writeStringToFile(ready, Long.toString(size), StandardCharsets.UTF_8);
+        long elapsed = System.currentTimeMillis() - started;
+        extractionMillis.addAndGet(elapsed);
+        BundleFormat format = BundleFormat.of(archive.getName());
+        formatExtractions.get(format).incrementAndGet();
+        formatExtractionMillis.get(format).addAndGet(elapsed);
+        LOGGER.info("Bundle [{}] extracted into cache in {} ms, {} MB", archive, elapsed, size / FileUtils.ONE_MB);
+        return new Entry(key, target, size);
+    }
+
+    private void evict() {
+
+        long budget = rIsolatedRuntimeProps.getBundleCacheMaxSizeMb() * FileUtils.ONE_MB;
+        while (true) {
+            Entry victim;
+            synchronized (entries) {
+                if (getSizeBytes() <= budget) {
+                    return;
+                }
+                victim = entries.values().stream()
+                        .filter(entry -> entry.leases == 0)
+                        .min(Comparator.comparingLong(entry -> entry.lastAccess))
+                        .orElse(null);
+                if (victim == null) {
+                    LOGGER.warn("Bundle cache exceeds budget of {} MB, but all entries are in use", budget / FileUtils.ONE_MB);
+                    return;
+                }
+                entries.remove(victim.key);
+            }
+            LOGGER.info("Evicting bundle [{}] from cache, {} MB", victim.key, victim.size / FileUtils.ONE_MB);
+            evictions.incrementAndGet();
+            synchronized (extractionLocks.computeIfAbsent(victim.key, k -> new Object())) {
+                FileUtils.deleteQuietly(new File(folder, victim.key + READY_SUFFIX));
+                run("remove", victim.dir);
+            }
+        }
+    }
+
+    private void restoreEntries() {
+
+        File[] markers = folder.listFiles((dir, name) -> name.endsWith(READY_SUFFIX));
+        for (File marker : ArrayUtils.nullToEmpty(markers, File[].class)) {
+            String key = StringUtils.removeEnd(marker.getName(), READY_SUFFIX);
+            File dir = new File(folder, key);
+            try {
+                long size = Long.parseLong(FileUtils.readFileToString(marker, StandardCharsets.UTF_8).trim());
+                if (dir.isDirectory()) {
+                    entries.put(key, new Entry(key, dir, size));
+                    continue;
+                }
+            } catch (IOException | NumberFormatException e) {
+                LOGGER.warn("Discarding broken bundle cache entry [{}]: {}", key, e.getMessage());
+            }
+            FileUtils.deleteQuietly(marker);
+        }
+    }
+
+    private String keyOf(File archive) throws IOException {
+
+        String path = archive.getAbsolutePath();
+        Checksum known = checksums.get(path);
+        if (known == null || known.length != archive.length() || known.modified != archive.lastModified()) {
+            long length = archive.length();
+            long modified = archive.lastModified();
+            String sha = com.google.common.io.Files.asByteSource(archive).hash(Hashing.sha256()).toString();
+            known = new Checksum(length, modified, sha);
+            checksums.put(path, known);
+        }
+        String hash = Hashing.sha256().hashString(path + ":" + known.sha, StandardCharsets.UTF_8).toString();
+        String name = archive.getName().replaceAll("[^A-Za-z0-9_.-]", "_");
+        return name + "-" + hash.substring(0, 16);
+    }
+
+    private long size(File target) throws IOException, InterruptedException {
+
+        String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), script.getAbsolutePath(), "size", target.getAbsolutePath());
+        Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+        try (InputStream is = process.getInputStream()) {
+            String out = IOUtils.toString(is, StandardCharsets.UTF_8).trim();
+            process.waitFor();
+            return NumberUtils.toLong(out);
+        } finally {
+            closeQuietly(process.getOutputStream());
+        }
+    }
+
+    private void run(String action, File target) {
+
+        try {
+            if (exec(action, target) != 0) {
+                LOGGER.warn("Bundle cache action [{}] failed for [{}]", action, target);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Bundle cache action [{}] failed for [{}]: {}", action, target, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int exec(String action, File target, String... args) throws IOException, InterruptedException {
+
+        String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), script.getAbsolutePath(), action, target.getAbsolutePath());
+        ProcessBuilder pb = new ProcessBuilder(ArrayUtils.addAll(command, args)).inheritIO();
+        if (rIsolatedRuntimeProps.getExtractThreads() > 0) {
+            pb.environment().put(RuntimeServiceImpl.RUNTIME_EXTRACT_THREADS, Integer.toString(rIsolatedRuntimeProps.getExtractThreads()));
+        }
+        return pb.start().waitFor();
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+
+        return evictions.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+
+    @ManagedAttribute
+    public long getExtractionMillis() {
+
+        return extractionMillis.get();
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getAvgExtractionMillisByFormat() {
+
+        Map<String, Long> result = new HashMap<>();
+        formatExtractions.forEach((format, count) -> {
+            if (count.get() > 0) {
+                result.put(format.name(), formatExtractionMillis.get(format).get() / count.get());
+            }
+        });
+        return result;
+    }
+
+    @ManagedAttribute
+    public int getEntryCount() {
+
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    @ManagedAttribute
+    public long getSizeBytes() {
+
+        synchronized (entries) {
+            return entries.values().stream().mapToLong(entry -> entry.size).sum();
+        }
+    }
+
+    public class Lease implements Closeable {
+
+        private final Entry entry;
+        private boolean closed;
+
+        private Lease(Entry entry) {
+
+            this.entry = entry;
+        }
+
+        public File getDir() {
+
+            return entry.dir;
+        }
+
+        @Override
+        public synchronized void close() {
+
+            if (!closed) {
+                closed = true;
+                release(entry);
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String key;
+        private final File dir;
+        private final long size;
+        private int leases;
+        private long lastAccess = System.currentTimeMillis();
+
+        private Entry(String key, File dir, long size) {
+
+            this.key = key;
+            this.dir = dir;
+            this.size = size;
+        }
+    }
+
+    private static class Checksum {
+
+        private final long length;
+        private final long modified;
+        private final String sha;
+
+        private Checksum(long length, long modified, String sha) {
+
+            this.length = length;
+            this.modified = modified;
+            this.sha = Objects.requireNonNull(sha);
+        }
+    }
+}
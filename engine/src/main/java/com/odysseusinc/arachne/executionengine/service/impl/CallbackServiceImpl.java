@@ -65,13 +65,19 @@ import java.util.concurrent.ConcurrentHashMap;
 public class CallbackServiceImpl implements CallbackService {
     private static final Logger log = LoggerFactory.getLogger(CallbackServiceImpl.class);
     private final Map<Long, Date> outSented = new ConcurrentHashMap<>();
+    // Output received while updates are throttled, sent with the next update. Only its end is kept, as much as
+    // the tail of the stdout window, the rest is counted.
+    private final Map<Long, StdoutWindow> outPending = new ConcurrentHashMap<>();
     @Value("${submission.update.interval}")
     private Long submissionUpdateInterval;
+    @Value("${submission.stdout.tailSize}")
+    private int stdoutTailSize;
     @Value("${submission.cleanupResults}")
     private boolean cleanupResults;
     private final RestTemplate nodeRestTemplate;
     private final RetryTemplate successfulRetryTemplate;
     private final RetryTemplate failureRetryTemplate;
+    private final DiskQuotaMonitor diskQuotaMonitor;
     private static final String SENDING_STDOUT_TO_CENTRAL_LOG =
             "Sending stdout to callback for analysis with id='{}'";
     private static final String UPDATE_STATUS_FAILED_LOG = "Update analysis status id={} failed";
@@ -79,15 +85,19 @@ public class CallbackServiceImpl implements CallbackService {
     private static final String SEND_ERROR_RESULT_FAILED_LOG = "Send error analysis result id={} failed";
     private static final String EXECUTION_RESULT_FILES_COUNT_LOG = "Execution id={} produced {} result files";
     private static final String DELETE_DIR_ERROR_LOG = "Can't delete analysis directory: '{}'";
+    private static final String PENDING_STDOUT_SKIPPED_LOG = "Skipped {} characters of stdout update for analysis with id='{}'";
+    private static final String PENDING_STDOUT_SOURCE = "the analysis result";
 
     @Autowired
     public CallbackServiceImpl(@Qualifier("nodeRestTemplate") RestTemplate nodeRestTemplate,
                                @Qualifier("successCallbackRetryTemplate") RetryTemplate successfulRetryTemplate,
-                               @Qualifier("failureCallbackRetryTemplate") RetryTemplate failureRetryTemplate) {
+                               @Qualifier("failureCallbackRetryTemplate") RetryTemplate failureRetryTemplate,
+                               DiskQuotaMonitor diskQuotaMonitor) {
 
         this.nodeRestTemplate = nodeRestTemplate;
         this.successfulRetryTemplate = successfulRetryTemplate;
         this.failureRetryTemplate = failureRetryTemplate;
+        this.diskQuotaMonitor = diskQuotaMonitor;
     }
 
     @Override
@@ -101,9 +111,23 @@ public class CallbackServiceImpl implements CallbackService {
             sentedAt = new Date(current.getTime() - submissionUpdateInterval - 1);
             outSented.put(submissionId, current);
         }
+        // Appended within compute, so that nothing is added to a window once it is taken for sending
+        outPending.compute(submissionId, (id, pending) -> {
+            StdoutWindow window = pending == null ? new StdoutWindow(0, stdoutTailSize, PENDING_STDOUT_SOURCE) : pending;
+            if (out != null) {
+                window.append(out.toCharArray(), 0, out.length());
+            }
+            return window;
+        });
         if ((sentedAt.getTime() + submissionUpdateInterval) < current.getTime()) {
             log.info(SENDING_STDOUT_TO_CENTRAL_LOG, submissionId);
-            AnalysisExecutionStatusDTO status = new AnalysisExecutionStatusDTO(submissionId, out, current);
+            StdoutWindow pending = outPending.remove(submissionId);
+            String pendingOut = pending == null ? "" : pending.toString();
+            if (pending != null && pending.getSkipped() > 0) {
+                log.debug(PENDING_STDOUT_SKIPPED_LOG, pending.getSkipped(), submissionId);
+            }
+            AnalysisExecutionStatusDTO status = new AnalysisExecutionStatusDTO(submissionId, pendingOut, current);
+            status.setBytesWritten(diskQuotaMonitor.getBytesWritten(submissionId).orElse(null));
             HttpEntity<AnalysisExecutionStatusDTO> entity = new HttpEntity<>(status);
             try {
                 nodeRestTemplate.exchange(
@@ -131,6 +155,7 @@ public class CallbackServiceImpl implements CallbackService {
             Long chunkSize
     ) throws ZipException {
 
+        forgetStatusUpdates(analysis.getId());
         final File zipDir = Files.createTempDir();
         try {
             AnalysisResultDTO result = new AnalysisResultDTO();
@@ -142,8 +167,10 @@ public class CallbackServiceImpl implements CallbackService {
             int resultFilesCnt = AnalisysUtils.getDirectoryItems(resultDir).size();
             log.info(EXECUTION_RESULT_FILES_COUNT_LOG, analysis.getId(), resultFilesCnt);
 
+            long packagingStarted = System.currentTimeMillis();
             final List<FileSystemResource> resultFSResources
                     = AnalisysUtils.getFileSystemResources(analysis, resultDir, compressedResult, chunkSize, zipDir);
+            log.info("Results of analysis id={} packaged in {} ms", analysis.getId(), System.currentTimeMillis() - packagingStarted);
 
             sendAnalysisResult(analysis, result, resultFSResources, chunkSize);
         } catch (ZipException ex) {
@@ -182,6 +209,7 @@ public class CallbackServiceImpl implements CallbackService {
     @FileDescriptorCount
     public ResponseEntity<String> sendFailedResult(AnalysisRequestDTO analysis, Throwable e, File analysisDir,
                                                    Boolean compressedResult, Long chunkSize) {
+        forgetStatusUpdates(analysis.getId());
         final String stdout = getErrorStackTrace(e);
         return failureRetryTemplate.execute(retryContext -> {
             AnalysisResultDTO result = new AnalysisResultDTO();
@@ -204,6 +232,13 @@ public class CallbackServiceImpl implements CallbackService {
         });
     }
     
+    private void forgetStatusUpdates(Long submissionId) {
+
+        // Final result carries the head and tail of stdout, the whole of it is in stdout.log
+        outSented.remove(submissionId);
+        outPending.remove(submissionId);
+    }
+
     private String getErrorStackTrace(Throwable e) {
         if (Objects.nonNull(e)) {
             return ExceptionUtils.getStackTrace(e);
@@ -0,0 +1,209 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResourcesDTO;
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.ObjectUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Creates a cgroup v2 group per analysis (see cgroup.sh) limiting CPU, memory and IO weight of its process tree.
+ * Peak memory usage of the group is recorded per runtime environment on removal, so that memory reservations
+ * can be tuned from observed usage.
+ */
+@Component
+@ManagedResource
+public class CgroupManager {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CgroupManager.class);
+
+    private static final String SCRIPT_RESOURCE = "classpath:/cgroup.sh";
+    private static final long CPU_PERIOD_MICROS = 100_000;
+    private static final String UNLIMITED = "max";
+
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final ResourceLoader resourceLoader;
+
+    private final Map<String, Long> maxPeakMemoryMb = new ConcurrentHashMap<>();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private File root;
+    private File script;
+
+    public CgroupManager(RIsolatedRuntimeProperties rIsolatedRuntimeProps, ResourceLoader resourceLoader) {
+
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (StringUtils.isBlank(rIsolatedRuntimeProps.getCgroupRoot())) {
+            LOGGER.info("Analysis resource limits are disabled");
+            return;
+        }
+        root = new File(rIsolatedRuntimeProps.getCgroupRoot());
+        script = FileResourceUtils.extractResourceToTempFile(resourceLoader, SCRIPT_RESOURCE, "ee", ".sh");
+        LOGGER.info("Analysis resource limits are applied in cgroup [{}]", root);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        FileUtils.deleteQuietly(script);
+    }
+
+    public boolean isEnabled() {
+
+        return root != null;
+    }
+
+    /**
+     * Combines limits of the request with the ones of the runtime environment, configured defaults apply to the rest.
+     */
+    public AnalysisResourcesDTO resolve(AnalysisResourcesDTO requested, AnalysisResourcesDTO descriptor) {
+
+        AnalysisResourcesDTO request = ObjectUtils.defaultIfNull(requested, new AnalysisResourcesDTO());
+        AnalysisResourcesDTO defaults = ObjectUtils.defaultIfNull(descriptor, new AnalysisResourcesDTO());
+        return new AnalysisResourcesDTO(
+                ObjectUtils.firstNonNull(request.getCpus(), defaults.getCpus(), rIsolatedRuntimeProps.getCgroupCpus()),
+                ObjectUtils.firstNonNull(request.getMemoryMb(), defaults.getMemoryMb(), rIsolatedRuntimeProps.getCgroupMemoryMb()),
+                ObjectUtils.firstNonNull(request.getIoWeight(), defaults.getIoWeight(), rIsolatedRuntimeProps.getCgroupIoWeight())
+        );
+    }
+
+    /**
+     * @return group the analysis process tree should be moved to, empty if limits are disabled or cannot be applied
+     */
+    public Optional<File> create(Long analysisId, AnalysisResourcesDTO limits) {
+
+        if (!isEnabled()) {
+            return Optional.empty();
+        }
+        File group = new File(root, "analysis-" + analysisId);
+        if (group.exists()) {
+            // Left over by a previous run of the same analysis
+            run("remove", group);
+        }
+        int exitCode = run("create", group, cpuMax(limits.getCpus()), memoryMax(limits.getMemoryMb()),
+                String.valueOf(limits.getIoWeight()));
+        if (exitCode != 0) {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to create cgroup [{}], analysis id={} runs without resource limits", group, analysisId);
+            return Optional.empty();
+        }
+        created.incrementAndGet();
+        return Optional.of(group);
+    }
+
+    /**
+     * Moves processes started before the group was created into it.
+     */
+    public void attach(File group, Collection<Long> pids) {
+
+        if (run("attach", group, pids.stream().map(String::valueOf).toArray(String[]::new)) != 0) {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to move processes {} to cgroup [{}]", pids, group);
+        }
+    }
+
+    /**
+     * Removes the group once its processes are gone.
+     *
+     * @return peak memory usage of the group in MB or -1 if it is not known
+     */
+    public long remove(File group, String descriptorId) {
+
+        long peakMb = readPeakMemoryMb(group);
+        if (peakMb >= 0 && descriptorId != null) {
+            maxPeakMemoryMb.merge(descriptorId, peakMb, Math::max);
+        }
+        if (run("remove", group) != 0) {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to remove cgroup [{}]", group);
+        }
+        return peakMb;
+    }
+
+    private long readPeakMemoryMb(File group) {
+
+        File peak = new File(group, "memory.peak");
+        if (!peak.isFile()) {
+            // memory.peak is available since Linux 5.19
+            return -1;
+        }
+        try {
+            String value = new String(Files.readAllBytes(peak.toPath()), StandardCharsets.UTF_8).trim();
+            return Long.parseLong(value) / FileUtils.ONE_MB;
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.warn("Failed to read peak memory of cgroup [{}]: {}", group, e.getMessage());
+            return -1;
+        }
+    }
+
+    private static String cpuMax(Double cpus) {
+
+        String quota = cpus == null || cpus <= 0 ? UNLIMITED : String.valueOf(Math.round(cpus * CPU_PERIOD_MICROS));
+        return quota + " " + CPU_PERIOD_MICROS;
+    }
+
+    private static String memoryMax(Long memoryMb) {
+
+        return memoryMb == null || memoryMb <= 0 ? UNLIMITED : String.valueOf(memoryMb * FileUtils.ONE_MB);
+    }
+
+    private int run(String action, File group, String... args) {
+
+        String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), script.getAbsolutePath(), action, group.getAbsolutePath());
+        try {
+            Process process = new ProcessBuilder(ArrayUtils.addAll(command, args)).inheritIO().start();
+            return process.waitFor();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to {} cgroup [{}]: {}", action, group, e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @ManagedAttribute
+    public Map<String, Long> getMaxPeakMemoryMb() {
+
+        return new HashMap<>(maxPeakMemoryMb);
+    }
+
+    @ManagedAttribute
+    public long getCreated() {
+
+        return created.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+}
@@ -0,0 +1,99 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.sql.Date;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Physical kind of a result column in the columnar formats, resolved from the metadata the same way
+ * {@link CsvResultWriter} picks its getters. Decimals without a usable precision, e.g. unbounded PostgreSQL
+ * NUMERIC, and types without a columnar counterpart are kept as text.
+ */
+enum ColumnKind {
+    LONG, DOUBLE, FLOAT, BOOLEAN, DECIMAL, DATE, TIMESTAMP, STRING;
+
+    // Widest decimal of Arrow 128 bit vectors, Parquet files use the same bound
+    static final int MAX_DECIMAL_PRECISION = 38;
+    private static final long MICROS_PER_SECOND = 1_000_000L;
+    private static final int NANOS_PER_MICRO = 1_000;
+
+    static ColumnKind of(ResultSetMetaData metaData, int column) throws SQLException {
+
+        switch (metaData.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return LONG;
+            case Types.BIGINT:
+                // Unsigned BIGINT does not fit into long
+                return metaData.isSigned(column) ? LONG : decimal(metaData, column);
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                int precision = metaData.getPrecision(column);
+                return metaData.getScale(column) == 0 && precision > 0 && precision <= 18 ? LONG : decimal(metaData, column);
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return DOUBLE;
+            case Types.REAL:
+                return FLOAT;
+            case Types.BOOLEAN:
+                return BOOLEAN;
+            case Types.DATE:
+                return DATE;
+            case Types.TIMESTAMP:
+                return TIMESTAMP;
+            default:
+                return STRING;
+        }
+    }
+
+    /**
+     * Column labels made unique and non-empty, as columnar schemas address columns by name.
+     */
+    static String[] labels(ResultSetMetaData metaData) throws SQLException {
+
+        int count = metaData.getColumnCount();
+        String[] labels = new String[count];
+        Set<String> used = new HashSet<>();
+        for (int column = 1; column <= count; column++) {
+            String label = metaData.getColumnLabel(column);
+            if (label == null || label.isEmpty()) {
+                label = "column_" + column;
+            }
+            String unique = label;
+            for (int suffix = 2; !used.add(unique); suffix++) {
+                unique = label + "_" + suffix;
+            }
+            labels[column - 1] = unique;
+        }
+        return labels;
+    }
+
+    static int epochDay(Date value) {
+
+        return Math.toIntExact(value.toLocalDate().toEpochDay());
+    }
+
+    /**
+     * Microseconds since the epoch of the wall clock time, the zone is not applied.
+     */
+    static long epochMicros(Timestamp value) {
+
+        LocalDateTime dateTime = value.toLocalDateTime();
+        return Math.addExact(Math.multiplyExact(dateTime.toEpochSecond(ZoneOffset.UTC), MICROS_PER_SECOND),
+                dateTime.getNano() / NANOS_PER_MICRO);
+    }
+
+    private static ColumnKind decimal(ResultSetMetaData metaData, int column) throws SQLException {
+
+        int precision = metaData.getPrecision(column);
+        int scale = metaData.getScale(column);
+        return precision > 0 && precision <= MAX_DECIMAL_PRECISION && scale >= 0 && scale <= precision ? DECIMAL : STRING;
+    }
+}
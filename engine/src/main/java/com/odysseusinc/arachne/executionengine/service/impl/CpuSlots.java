@@ -0,0 +1,261 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import javax.annotation.PostConstruct;
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Splits the host cores into slots: each analysis is pinned to its own set of cores (taskset) and told to use as
+ * many threads as it has cores (OpenMP, BLAS, R parallel). Slots never block admission, which is up to
+ * {@link ExecutionSlots}; once every core is taken, the least used cores are shared.
+ */
+@Component
+@ManagedResource
+public class CpuSlots {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CpuSlots.class);
+
+    static final List<String> THREAD_VARIABLES = Arrays.asList(
+            "OMP_NUM_THREADS", "OPENBLAS_NUM_THREADS", "MKL_NUM_THREADS", "MC_CORES");
+
+    private final boolean enabled;
+    private final int cores;
+    private final int defaultSlotCores;
+
+    // Guarded by this, number of slots using each core
+    private final int[] usage;
+    private final AtomicLong allocated = new AtomicLong();
+    private final AtomicLong shared = new AtomicLong();
+    private boolean pinning;
+
+    public CpuSlots(@Value("${runtime.cpuSlots}") boolean enabled,
+                    @Value("${runtime.maxProcesses}") int maxRunning) {
+
+        this(enabled, Runtime.getRuntime().availableProcessors(), maxRunning);
+    }
+
+    CpuSlots(boolean enabled, int cores, int maxRunning) {
+
+        this.enabled = enabled;
+        this.cores = cores;
+        this.defaultSlotCores = Math.max(1, cores / Math.max(1, maxRunning));
+        this.usage = new int[cores];
+    }
+
+    @PostConstruct
+    public void init() {
+
+        if (!enabled) {
+            LOGGER.info("CPU slots are disabled");
+            return;
+        }
+        pinning = isTasksetAvailable();
+        LOGGER.info("CPU slots of {} cores out of {} by default, pinning is {}",
+                defaultSlotCores, cores, pinning ? "enabled" : "not available");
+    }
+
+    /**
+     * @param cpus cores requested for the analysis, default slot size if not positive
+     * @return slot to be given back with {@link #release(Slot)}, empty if slots are disabled
+     */
+    public Optional<Slot> allocate(Double cpus) {
+
+        if (!enabled) {
+            return Optional.empty();
+        }
+        int size = cpus == null || cpus <= 0 ? defaultSlotCores : Math.min(cores, (int) Math.ceil(cpus));
+        int[] taken;
+        boolean oversubscribed;
+        synchronized (this) {
+            taken = IntStream.range(0, cores).boxed()
+                    .sorted(Comparator.comparingInt((Integer core) -> usage[core]).thenComparingInt(core -> core))
+                    .limit(size)
+                    .mapToInt(Integer::intValue)
+                    .sorted()
+                    .toArray();
+            oversubscribed = Arrays.stream(taken).anyMatch(core -> usage[core] > 0);
+            Arrays.stream(taken).forEach(core -> usage[core]++);
+        }
+        allocated.incrementAndGet();
+        if (oversubscribed) {
+            shared.incrementAndGet();
+        }
+        return Optional.of(new Slot(taken));
+    }
+
+    public synchronized void release(Slot slot) {
+
+        Arrays.stream(slot.cores).forEach(core -> usage[core]--);
+    }
+
+    /**
+     * @return command running on the cores of the slot only
+     */
+    public String[] pin(String[] command, Slot slot) {
+
+        return pinning ? ArrayUtils.addAll(new String[]{"taskset", "-c", slot.getCpuList()}, command) : command;
+    }
+
+    /**
+     * Moves running processes, all their threads included, to the cores of the slot.
+     *
+     * @param privileged whether the processes run as another user, e.g. in a jail
+     * @return whether every process still running was moved, false if pinning is not available
+     */
+    public boolean pin(Collection<Long> pids, Slot slot, boolean privileged) {
+
+        if (!pinning) {
+            return false;
+        }
+        boolean pinned = true;
+        for (Long pid : pids) {
+            List<String> command = new ArrayList<>();
+            if (privileged) {
+                command.add("sudo");
+            }
+            command.addAll(Arrays.asList("taskset", "-a", "-p", "-c", slot.getCpuList(), pid.toString()));
+            try {
+                // Prints a couple of lines at most, left unread in the pipe
+                Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+                boolean finished = process.waitFor(10, TimeUnit.SECONDS);
+                if (!finished) {
+                    process.destroyForcibly();
+                }
+                boolean moved = finished && process.exitValue() == 0;
+                // A process exiting meanwhile has nothing left to move
+                if (!moved && ProcessTree.isAlive(pid)) {
+                    LOGGER.warn("Failed to pin process {} to cores {}", pid, slot.getCpuList());
+                    pinned = false;
+                }
+            } catch (IOException e) {
+                LOGGER.warn("Failed to pin process {} to cores {}: {}", pid, slot.getCpuList(), e.getMessage());
+                pinned = false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return pinned;
+    }
+
+    /**
+     * Thread count hints for an analysis of the default slot size, for processes started before their slot is
+     * known, e.g. warm sessions.
+     *
+     * @return number of threads set, 0 if slots are disabled
+     */
+    public int putDefaultThreadVariables(Map<String, String> envp) {
+
+        if (!enabled) {
+            return 0;
+        }
+        putThreadVariables(envp, defaultSlotCores);
+        return defaultSlotCores;
+    }
+
+    private static void putThreadVariables(Map<String, String> envp, int threads) {
+
+        THREAD_VARIABLES.forEach(name -> envp.put(name, Integer.toString(threads)));
+    }
+
+    private boolean isTasksetAvailable() {
+
+        try {
+            Process process = new ProcessBuilder("taskset", "-c", "0", "true").inheritIO().start();
+            return process.waitFor(10, TimeUnit.SECONDS) && process.exitValue() == 0;
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @ManagedAttribute
+    public int getCores() {
+
+        return cores;
+    }
+
+    @ManagedAttribute
+    public int getDefaultSlotCores() {
+
+        return defaultSlotCores;
+    }
+
+    @ManagedAttribute
+    public synchronized int getBusyCores() {
+
+        return (int) Arrays.stream(usage).filter(count -> count > 0).count();
+    }
+
+    @ManagedAttribute
+    public synchronized String getCoreUsage() {
+
+        return Arrays.toString(usage);
+    }
+
+    @ManagedAttribute
+    public long getAllocated() {
+
+        return allocated.get();
+    }
+
+    @ManagedAttribute
+    public long getShared() {
+
+        return shared.get();
+    }
+
+    public static class Slot {
+
+        private final int[] cores;
+
+        Slot(int[] cores) {
+
+            this.cores = cores;
+        }
+
+        public int size() {
+
+            return cores.length;
+        }
+
+        public String getCpuList() {
+
+            return Arrays.stream(cores).mapToObj(Integer::toString).collect(Collectors.joining(","));
+        }
+
+        /**
+         * Adds thread count hints for the libraries used by the analysis.
+         */
+        public void putThreadVariables(Map<String, String> envp) {
+
+            CpuSlots.putThreadVariables(envp, cores.length);
+        }
+
+        @Override
+        public String toString() {
+
+            return getCpuList();
+        }
+    }
+}
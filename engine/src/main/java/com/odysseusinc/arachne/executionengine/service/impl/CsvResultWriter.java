@@ -0,0 +1,366 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Writes result sets as RFC 4180 CSV in UTF-8: fields holding the separator, quotes or line breaks are quoted,
+ * NULL is an empty field. The getter of each column is resolved once from the metadata, integers, dates and
+ * timestamps are formatted straight into the output buffer, the same way their toString() does.
+ */
+public class CsvResultWriter implements ResultWriter {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Longest UTF-8 sequence
+    private static final int MAX_CHAR_BYTES = 4;
+    // Double.toString() switches to scientific notation from here on
+    private static final double PLAIN_LIMIT = 1e7;
+
+    private final WritableByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private final byte[] digits = new byte[20];
+    private final char separator;
+
+    /**
+     * Appends to the file if it exists.
+     *
+     * @param separator ASCII character other than quote and line breaks
+     */
+    public CsvResultWriter(Path file, char separator) throws IOException {
+
+        this(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND), separator);
+    }
+
+    /**
+     * Writes to the channel, e.g. a compressing one, closed along with the writer.
+     *
+     * @param separator ASCII character other than quote and line breaks
+     */
+    public CsvResultWriter(WritableByteChannel channel, char separator) {
+
+        if (separator >= 0x80 || separator == '"' || separator == '\r' || separator == '\n') {
+            throw new IllegalArgumentException("Unsupported CSV separator: " + separator);
+        }
+        this.separator = separator;
+        this.channel = channel;
+    }
+
+    /**
+     * Can be called repeatedly, each result set starts with its own header line.
+     */
+    @Override
+    public long write(ResultSet resultSet) throws SQLException, IOException {
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        int count = metaData.getColumnCount();
+        Column[] columns = new Column[count];
+        for (int column = 1; column <= count; column++) {
+            if (column > 1) {
+                putAscii(separator);
+            }
+            putText(metaData.getColumnLabel(column));
+            columns[column - 1] = resolve(metaData, column);
+        }
+        putLineBreak();
+        long rows = 0;
+        while (resultSet.next()) {
+            for (int column = 1; column <= count; column++) {
+                if (column > 1) {
+                    putAscii(separator);
+                }
+                columns[column - 1].write(resultSet, column);
+            }
+            putLineBreak();
+            rows++;
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private Column resolve(ResultSetMetaData metaData, int column) throws SQLException {
+
+        switch (metaData.getColumnType(column)) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return this::writeLong;
+            case Types.BIGINT:
+                // Unsigned BIGINT does not fit into long
+                return metaData.isSigned(column) ? this::writeLong : this::writeDecimal;
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                int precision = metaData.getPrecision(column);
+                return metaData.getScale(column) == 0 && precision > 0 && precision <= 18 ? this::writeLong : this::writeDecimal;
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return this::writeDouble;
+            case Types.REAL:
+                return this::writeFloat;
+            case Types.BOOLEAN:
+                return this::writeBoolean;
+            case Types.DATE:
+                return this::writeDate;
+            case Types.TIMESTAMP:
+                return this::writeTimestamp;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+                return this::writeString;
+            default:
+                return this::writeObject;
+        }
+    }
+
+    private void writeLong(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        long value = resultSet.getLong(column);
+        if (!resultSet.wasNull()) {
+            putLong(value);
+        }
+    }
+
+    private void writeDouble(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        double value = resultSet.getDouble(column);
+        if (resultSet.wasNull()) {
+            return;
+        }
+        if (value == Math.rint(value) && Math.abs(value) < PLAIN_LIMIT && Double.doubleToRawLongBits(value) != Long.MIN_VALUE) {
+            putLong((long) value);
+            putAscii('.');
+            putAscii('0');
+        } else {
+            putText(Double.toString(value));
+        }
+    }
+
+    private void writeFloat(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        float value = resultSet.getFloat(column);
+        if (resultSet.wasNull()) {
+            return;
+        }
+        if (value == Math.rint(value) && Math.abs(value) < PLAIN_LIMIT && Float.floatToRawIntBits(value) != Integer.MIN_VALUE) {
+            putLong((long) value);
+            putAscii('.');
+            putAscii('0');
+        } else {
+            putText(Float.toString(value));
+        }
+    }
+
+    private void writeBoolean(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        boolean value = resultSet.getBoolean(column);
+        if (!resultSet.wasNull()) {
+            putText(value ? "true" : "false");
+        }
+    }
+
+    private void writeDecimal(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        BigDecimal value = resultSet.getBigDecimal(column);
+        if (value != null) {
+            putText(value.toString());
+        }
+    }
+
+    private void writeDate(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        Date value = resultSet.getDate(column);
+        if (value != null) {
+            putDate(value.toLocalDate());
+        }
+    }
+
+    private void writeTimestamp(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        Timestamp value = resultSet.getTimestamp(column);
+        if (value == null) {
+            return;
+        }
+        LocalDateTime dateTime = value.toLocalDateTime();
+        putDate(dateTime.toLocalDate());
+        putAscii(' ');
+        putPadded(dateTime.getHour(), 2);
+        putAscii(':');
+        putPadded(dateTime.getMinute(), 2);
+        putAscii(':');
+        putPadded(dateTime.getSecond(), 2);
+        putAscii('.');
+        // As Timestamp.toString(): fraction without trailing zeros
+        int nanos = value.getNanos();
+        int width = 9;
+        while (nanos != 0 && nanos % 10 == 0) {
+            nanos /= 10;
+            width--;
+        }
+        putPadded(nanos, nanos == 0 ? 1 : width);
+    }
+
+    private void writeString(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        String value = resultSet.getString(column);
+        if (value != null) {
+            putText(value);
+        }
+    }
+
+    private void writeObject(ResultSet resultSet, int column) throws SQLException, IOException {
+
+        Object value = resultSet.getObject(column);
+        if (value != null) {
+            putText(value.toString());
+        }
+    }
+
+    private void putDate(LocalDate date) throws IOException {
+
+        putPadded(date.getYear(), 4);
+        putAscii('-');
+        putPadded(date.getMonthValue(), 2);
+        putAscii('-');
+        putPadded(date.getDayOfMonth(), 2);
+    }
+
+    private void putLong(long value) throws IOException {
+
+        ensure(digits.length);
+        int start = digits.length;
+        // Negative range covers Long.MIN_VALUE
+        long rest = value < 0 ? value : -value;
+        do {
+            digits[--start] = (byte) ('0' - rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        if (value < 0) {
+            digits[--start] = '-';
+        }
+        putDigits(start);
+    }
+
+    private void putPadded(int value, int width) throws IOException {
+
+        ensure(Math.max(width, digits.length));
+        int start = digits.length;
+        int rest = value;
+        do {
+            digits[--start] = (byte) ('0' + rest % 10);
+            rest /= 10;
+        } while (rest != 0);
+        while (digits.length - start < width) {
+            digits[--start] = '0';
+        }
+        putDigits(start);
+    }
+
+    private void putDigits(int start) {
+
+        int length = digits.length - start;
+        System.arraycopy(digits, start, buffer, position, length);
+        position += length;
+    }
+
+    private void putText(String value) throws IOException {
+
+        boolean quoted = false;
+        for (int i = 0; i < value.length() && !quoted; i++) {
+            char c = value.charAt(i);
+            quoted = c == separator || c == '"' || c == '\r' || c == '\n';
+        }
+        if (quoted) {
+            putAscii('"');
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            ensure(MAX_CHAR_BYTES + 1);
+            if (c < 0x80) {
+                if (c == '"') {
+                    buffer[position++] = (byte) '"';
+                }
+                buffer[position++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | c >> 6);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[position++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[position++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | codePoint & 0x3F);
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogate, replaced as String.getBytes() does
+                buffer[position++] = (byte) '?';
+            } else {
+                buffer[position++] = (byte) (0xE0 | c >> 12);
+                buffer[position++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[position++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        if (quoted) {
+            putAscii('"');
+        }
+    }
+
+    private void putAscii(char c) throws IOException {
+
+        ensure(1);
+        buffer[position++] = (byte) c;
+    }
+
+    private void putLineBreak() throws IOException {
+
+        putAscii('\r');
+        putAscii('\n');
+    }
+
+    private void ensure(int bytes) throws IOException {
+
+        if (buffer.length - position < bytes) {
+            flush();
+        }
+    }
+
+    private void flush() throws IOException {
+
+        ByteBuffer pending = ByteBuffer.wrap(buffer, 0, position);
+        while (pending.hasRemaining()) {
+            channel.write(pending);
+        }
+        position = 0;
+    }
+
+    @FunctionalInterface
+    private interface Column {
+
+        void write(ResultSet resultSet, int column) throws SQLException, IOException;
+    }
+}
@@ -27,6 +27,7 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,26 +41,35 @@ public class DescriptorServiceImpl implements DescriptorService {
             new REnvParseStrategy()
     );
     private static final String DESCRIPTOR_PREFIX = "descriptor";
+    private static final String RENV_LOCK = "renv.lock";
 
     private final ObjectMapper mapper = new ObjectMapper();
 
     private final DescriptorBundle defaultDescriptorBundle;
     private final Optional<Path> archiveFolder;
     private final boolean dependencyMatching;
+    private final Optional<EnvironmentBuilder> environmentBuilder;
 
     @Autowired
-    public DescriptorServiceImpl(RIsolatedRuntimeProperties rIsolatedRuntimeProps) {
+    public DescriptorServiceImpl(RIsolatedRuntimeProperties rIsolatedRuntimeProps, EnvironmentBuilder environmentBuilder) {
         this(
                 new DescriptorBundle(rIsolatedRuntimeProps.getArchive(), new DefaultDescriptor()),
                 Optional.ofNullable(rIsolatedRuntimeProps.getArchiveFolder()).map(name -> new File(name).toPath()),
-                rIsolatedRuntimeProps.isApplyRuntimeDependenciesComparisonLogic()
+                rIsolatedRuntimeProps.isApplyRuntimeDependenciesComparisonLogic(),
+                Optional.of(environmentBuilder)
         );
     }
 
     public DescriptorServiceImpl(DescriptorBundle defaultDescriptorBundle, Optional<Path> archiveFolder, boolean dependencyMatching) {
+        this(defaultDescriptorBundle, archiveFolder, dependencyMatching, Optional.empty());
+    }
+
+    public DescriptorServiceImpl(DescriptorBundle defaultDescriptorBundle, Optional<Path> archiveFolder, boolean dependencyMatching,
+                                 Optional<EnvironmentBuilder> environmentBuilder) {
         this.defaultDescriptorBundle = defaultDescriptorBundle;
         this.archiveFolder = archiveFolder;
         this.dependencyMatching = dependencyMatching;
+        this.environmentBuilder = environmentBuilder.filter(EnvironmentBuilder::isEnabled);
     }
 
     @Override
@@ -126,7 +136,7 @@ public class DescriptorServiceImpl implements DescriptorService {
     }
 
     private DescriptorBundle findMatchingDescriptor(File dir, Long analysisId, List<Descriptor> available) {
-        return getRuntime(dir).flatMap(runtime -> {
+        return getRuntime(dir).map(runtime -> {
             Map<Boolean, List<Map.Entry<Descriptor, String>>> results = available.stream().flatMap(descriptor ->
                     descriptor.getExecutionRuntimes().stream().<Map.Entry<Descriptor, String>>map(runtime1 ->
                             new AbstractMap.SimpleEntry<>(descriptor, runtime1.getMismatches(runtime))
@@ -140,7 +150,9 @@ public class DescriptorServiceImpl implements DescriptorService {
                 notMatched.forEach(mismatch -> {
                     LOGGER.info("Descriptor [{}] not matched: {}", mismatch.getKey().getLabel(), mismatch.getValue());
                 });
-                return Optional.empty();
+                return environmentBuilder.flatMap(builder ->
+                        readLock(dir).flatMap(lock -> builder.getBundle(lock, runtime, analysisId))
+                ).orElse(defaultDescriptorBundle);
             } else {
                 return matched.stream().reduce((a, b) -> {
                     LOGGER.info("For analysis [{}] multiple descriptors matched. Discarded extra [{}]", analysisId, b.getKey().getBundleName());
@@ -148,9 +160,40 @@ public class DescriptorServiceImpl implements DescriptorService {
                 }).map(match -> {
                     LOGGER.info("For analysis [{}] using matched descriptor [{}]", analysisId, match.getKey().getBundleName());
                     return match;
-                });
+                }).map(Map.Entry::getKey).map(this::toBundle).orElse(defaultDescriptorBundle);
             }
-        }).map(Map.Entry::getKey).map(this::toBundle).orElse(defaultDescriptorBundle);
+        }).orElse(defaultDescriptorBundle);
+    }
+
+    private Optional<byte[]> readLock(File dir) {
+        try (Stream<Path> paths = Files.walk(dir.toPath())) {
+            return paths.map(Path::toFile).filter(File::isFile).map(file -> {
+                try {
+                    return file.getName().endsWith(".zip") ? extractLock(file) : isLock(file.getName()) ? Files.readAllBytes(file.toPath()) : null;
+                } catch (IOException e) {
+                    throw new RuntimeException("Error reading file [" + file.getName() + "]", e);
+                }
+            }).filter(Objects::nonNull).findFirst();
+        } catch (IOException e) {
+            LOGGER.warn("Error reading renv.lock from [{}]: {}", dir.getPath(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    private byte[] extractLock(File zip) throws IOException {
+        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(zip))) {
+            ZipEntry entry;
+            while ((entry = zis.getNextEntry()) != null) {
+                if (isLock(entry.getName())) {
+                    return IOUtils.toByteArray(zis);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean isLock(String name) {
+        return name.equals(RENV_LOCK) || name.endsWith("/" + RENV_LOCK);
     }
 
     private DescriptorBundle toBundle(Descriptor descriptor) {
@@ -0,0 +1,407 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps track of the size of analysis output as it is written, from inotify events (WatchService) on the analysis
+ * directory and its scratch directory. The runtime environment at the root of a jail is not watched. An analysis
+ * exceeding its disk quota, or the one with the largest output once running analyses exceed the node quota,
+ * is reported to be terminated.
+ */
+@Component
+@ManagedResource
+public class DiskQuotaMonitor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskQuotaMonitor.class);
+
+    // Runtime environment and mounts at the root of a jail, see cleanup.sh
+    static final Set<String> ENVIRONMENT_DIRS = new HashSet<>(Arrays.asList(
+            ".overlay", ".ee-staging", "bin", "bigquery", "boot", "dev", "etc", "home", "hive", "impala", "lib", "lib32",
+            "libx32", "lib64", "libs.r", "media", "mnt", "mssql", "netezza", "opt", "oracle", "postgresql", "snowflake",
+            "proc", "redshift", "root", "run", "sbin", "scratch", "srv", "sys", "tmp", "usr", "var"));
+
+    private final boolean enabled;
+    private final long analysisQuotaBytes;
+    private final long nodeQuotaBytes;
+
+    private final Map<Long, Watch> watches = new ConcurrentHashMap<>();
+    private final Map<WatchKey, Directory> directories = new ConcurrentHashMap<>();
+    private final AtomicLong terminated = new AtomicLong();
+    private final AtomicLong overflows = new AtomicLong();
+    private final AtomicLong unwatched = new AtomicLong();
+
+    private WatchService watchService;
+    private ExecutorService loop;
+
+    public DiskQuotaMonitor(@Value("${runtime.diskMonitor}") boolean enabled,
+                            @Value("${runtime.diskQuotaMb}") long analysisQuotaMb,
+                            @Value("${runtime.nodeDiskQuotaMb}") long nodeQuotaMb) {
+
+        this.enabled = enabled;
+        this.analysisQuotaBytes = analysisQuotaMb * FileUtils.ONE_MB;
+        this.nodeQuotaBytes = nodeQuotaMb * FileUtils.ONE_MB;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (!enabled) {
+            LOGGER.info("Disk monitor is disabled");
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        loop = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "disk-monitor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        loop.execute(this::run);
+        LOGGER.info("Disk monitor with quota {} MB per analysis, {} MB per node (0 is unlimited)",
+                analysisQuotaBytes / FileUtils.ONE_MB, nodeQuotaBytes / FileUtils.ONE_MB);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (loop != null) {
+            loop.shutdownNow();
+            IOUtils.closeQuietly(watchService);
+        }
+    }
+
+    /**
+     * Starts tracking files written to the analysis directory and its scratch directory.
+     *
+     * @param onExceeded called once with the reason if the analysis is to be terminated for exceeding a quota
+     * @return watch to be given back with {@link #release(Watch)}, empty if the monitor is disabled
+     */
+    public Optional<Watch> watch(Long analysisId, File workDir, Optional<File> scratch, Consumer<String> onExceeded) {
+
+        if (!enabled) {
+            return Optional.empty();
+        }
+        Watch watch = new Watch(analysisId, workDir.toPath(), scratch.map(File::toPath), onExceeded);
+        watches.put(analysisId, watch);
+        synchronized (watch) {
+            scan(watch);
+        }
+        enforce(watch);
+        return Optional.of(watch);
+    }
+
+    public void release(Watch watch) {
+
+        watches.remove(watch.analysisId, watch);
+        synchronized (watch) {
+            watch.released = true;
+            cancel(watch);
+        }
+    }
+
+    /**
+     * @return current size of the analysis output, empty if the analysis is not watched
+     */
+    public Optional<Long> getBytesWritten(Long analysisId) {
+
+        return Optional.ofNullable(watches.get(analysisId)).map(Watch::getBytes);
+    }
+
+    private void run() {
+
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                WatchKey key = watchService.take();
+                Directory directory = directories.get(key);
+                try {
+                    if (directory != null) {
+                        synchronized (directory.watch) {
+                            if (!directory.watch.released) {
+                                handle(directory, key);
+                            }
+                        }
+                        enforce(directory.watch);
+                    } else {
+                        key.pollEvents();
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.warn("Failed to handle events of [{}]", key.watchable(), e);
+                }
+                if (!key.reset()) {
+                    directories.remove(key);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOGGER.debug("Disk monitor stopped");
+        }
+    }
+
+    private void handle(Directory directory, WatchKey key) {
+
+        Watch watch = directory.watch;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // Events were lost, sizes have to be collected again
+                overflows.incrementAndGet();
+                cancel(watch);
+                scan(watch);
+                return;
+            }
+            Path path = directory.path.resolve((Path) event.context());
+            if (event.kind() == ENTRY_DELETE) {
+                watch.removeUnder(path);
+            } else if (event.kind() == ENTRY_CREATE && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                register(watch, path);
+            } else {
+                account(watch, path);
+            }
+        }
+    }
+
+    private void scan(Watch watch) {
+
+        watch.removeUnder(watch.workDir);
+        watch.scratch.ifPresent(watch::removeUnder);
+        register(watch, watch.workDir);
+        watch.scratch.ifPresent(scratch -> register(watch, scratch));
+    }
+
+    private void register(Watch watch, Path start) {
+
+        try {
+            Files.walkFileTree(start, new SimpleFileVisitor<Path>() {
+
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+
+                    if (watch.workDir.equals(dir.getParent()) && ENVIRONMENT_DIRS.contains(dir.getFileName().toString())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    try {
+                        WatchKey key = dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+                        directories.put(key, new Directory(watch, dir));
+                        watch.keys.add(key);
+                    } catch (IOException e) {
+                        // Typically out of inotify watches, files are still counted by the next scan
+                        if (unwatched.getAndIncrement() == 0) {
+                            LOGGER.warn("Cannot watch [{}]: {}", dir, e.getMessage());
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+
+                    if (attrs.isRegularFile()) {
+                        watch.put(file, attrs.size());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.warn("Failed to scan [{}]: {}", start, e.getMessage());
+        }
+    }
+
+    private void account(Watch watch, Path file) {
+
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            if (attrs.isRegularFile()) {
+                watch.put(file, attrs.size());
+            }
+        } catch (IOException e) {
+            // Removed meanwhile, the delete event follows
+            watch.removeUnder(file);
+        }
+    }
+
+    private void cancel(Watch watch) {
+
+        watch.keys.forEach(key -> {
+            key.cancel();
+            directories.remove(key);
+        });
+        watch.keys.clear();
+    }
+
+    private void enforce(Watch watch) {
+
+        if (analysisQuotaBytes > 0 && watch.getBytes() > analysisQuotaBytes) {
+            exceed(watch, String.format("Analysis output of %d MB exceeded the disk quota of %d MB",
+                    watch.getBytes() / FileUtils.ONE_MB, analysisQuotaBytes / FileUtils.ONE_MB));
+        }
+        if (nodeQuotaBytes > 0) {
+            long total = getBytesWritten();
+            if (total > nodeQuotaBytes) {
+                watches.values().stream()
+                        .filter(w -> !w.exceeded)
+                        .max((a, b) -> Long.compare(a.getBytes(), b.getBytes()))
+                        .ifPresent(largest -> exceed(largest, String.format(
+                                "Output of running analyses of %d MB exceeded the node disk quota of %d MB, analysis output of %d MB is the largest",
+                                total / FileUtils.ONE_MB, nodeQuotaBytes / FileUtils.ONE_MB, largest.getBytes() / FileUtils.ONE_MB)));
+            }
+        }
+    }
+
+    private void exceed(Watch watch, String reason) {
+
+        synchronized (watch) {
+            if (watch.exceeded || watch.released) {
+                return;
+            }
+            watch.exceeded = true;
+        }
+        terminated.incrementAndGet();
+        LOGGER.warn("Execution id={} is terminated: {}", watch.analysisId, reason);
+        watch.onExceeded.accept(reason);
+    }
+
+    @ManagedAttribute
+    public int getWatched() {
+
+        return watches.size();
+    }
+
+    @ManagedAttribute
+    public int getWatchedDirectories() {
+
+        return directories.size();
+    }
+
+    @ManagedAttribute
+    public long getBytesWritten() {
+
+        return watches.values().stream().mapToLong(Watch::getBytes).sum();
+    }
+
+    @ManagedAttribute
+    public long getTerminated() {
+
+        return terminated.get();
+    }
+
+    @ManagedAttribute
+    public long getOverflows() {
+
+        return overflows.get();
+    }
+
+    @ManagedAttribute
+    public long getUnwatched() {
+
+        return unwatched.get();
+    }
+
+    public static class Watch {
+
+        private final Long analysisId;
+        private final Path workDir;
+        private final Optional<Path> scratch;
+        private final Consumer<String> onExceeded;
+        // Guarded by this
+        private final Map<Path, Long> sizes = new HashMap<>();
+        private final Set<WatchKey> keys = new HashSet<>();
+        private boolean exceeded;
+        private boolean released;
+        private volatile long bytes;
+        private volatile long peakBytes;
+
+        private Watch(Long analysisId, Path workDir, Optional<Path> scratch, Consumer<String> onExceeded) {
+
+            this.analysisId = analysisId;
+            this.workDir = workDir;
+            this.scratch = scratch;
+            this.onExceeded = onExceeded;
+        }
+
+        private void put(Path file, long size) {
+
+            Long previous = sizes.put(file, size);
+            add(size - (previous == null ? 0 : previous));
+        }
+
+        private void removeUnder(Path path) {
+
+            sizes.entrySet().removeIf(entry -> {
+                if (entry.getKey().startsWith(path)) {
+                    add(-entry.getValue());
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        private void add(long delta) {
+
+            bytes += delta;
+            peakBytes = Math.max(peakBytes, bytes);
+        }
+
+        public long getBytes() {
+
+            return bytes;
+        }
+
+        public long getPeakBytes() {
+
+            return peakBytes;
+        }
+    }
+
+    private static class Directory {
+
+        private final Watch watch;
+        private final Path path;
+
+        private Directory(Watch watch, Path path) {
+
+            this.watch = watch;
+            this.path = path;
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hashing;
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.model.descriptor.Descriptor;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.model.descriptor.ExecutionRuntime;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Builds a runtime environment for a renv.lock no descriptor matches: the packages are restored from a local mirror
+ * into a library layered over the default bundle (see env-build.sh). Builds run one at a time in the background, the
+ * analysis that requested it runs on the default bundle, later ones with the same lock file get the built bundle.
+ * Built bundles are registered as descriptors keyed by the lock file hash and evicted in LRU order once the disk
+ * budget is exceeded.
+ */
+@Component
+@ManagedResource
+public class EnvironmentBuilder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(EnvironmentBuilder.class);
+
+    private static final String SCRIPT_RESOURCE = "classpath:/env-build.sh";
+    private static final String DESCRIPTOR_PREFIX = "descriptor_env_";
+    private static final String BUNDLE_PREFIX = "bundle_env_";
+    private static final String BUNDLE_SUFFIX = ".tar.gz";
+
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final ResourceLoader resourceLoader;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private final Map<String, Descriptor> built = new ConcurrentHashMap<>();
+    private final Set<String> building = ConcurrentHashMap.newKeySet();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong builds = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong buildMillis = new AtomicLong();
+
+    private File folder;
+    private File script;
+    private ExecutorService executor;
+
+    public EnvironmentBuilder(RIsolatedRuntimeProperties rIsolatedRuntimeProps, ResourceLoader resourceLoader) {
+
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+        this.resourceLoader = resourceLoader;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (StringUtils.isAnyBlank(rIsolatedRuntimeProps.getEnvBuilderMirror(), rIsolatedRuntimeProps.getEnvBuilderFolder(),
+                rIsolatedRuntimeProps.getArchive())) {
+            LOGGER.info("Environment builder is disabled");
+            return;
+        }
+        folder = new File(rIsolatedRuntimeProps.getEnvBuilderFolder());
+        FileUtils.forceMkdir(folder);
+        script = FileResourceUtils.extractResourceToTempFile(resourceLoader, SCRIPT_RESOURCE, "ee", ".sh");
+        for (File file : ArrayUtils.nullToEmpty(folder.listFiles(), File[].class)) {
+            if (file.getName().startsWith(DESCRIPTOR_PREFIX)) {
+                try {
+                    Descriptor descriptor = mapper.readValue(file, Descriptor.class);
+                    built.put(StringUtils.removeStart(descriptor.getId(), DESCRIPTOR_PREFIX), descriptor);
+                } catch (IOException e) {
+                    LOGGER.warn("Skipping unreadable descriptor [{}]: {}", file, e.getMessage());
+                }
+            } else if (!file.getName().startsWith(BUNDLE_PREFIX)) {
+                // Left by a build interrupted by the previous shutdown
+                FileUtils.deleteQuietly(file);
+            }
+        }
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "env-builder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("Environment builder at [{}] from mirror [{}], {} environments built before",
+                folder, rIsolatedRuntimeProps.getEnvBuilderMirror(), built.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        FileUtils.deleteQuietly(script);
+    }
+
+    public boolean isEnabled() {
+
+        return folder != null;
+    }
+
+    /**
+     * @return bundle built for the lock file, empty if it is not built yet, in which case the build is scheduled
+     */
+    public Optional<DescriptorBundle> getBundle(byte[] lock, ExecutionRuntime runtime, Long analysisId) {
+
+        String hash = Hashing.sha256().hashBytes(lock).toString();
+        Descriptor descriptor = built.get(hash);
+        File bundle = descriptor == null ? null : new File(folder, descriptor.getBundleName());
+        if (bundle != null && bundle.isFile()) {
+            hits.incrementAndGet();
+            // Recently used bundles are evicted last
+            bundle.setLastModified(System.currentTimeMillis());
+            LOGGER.info("For analysis [{}] using environment [{}] built for its renv.lock", analysisId, descriptor.getId());
+            return Optional.of(new DescriptorBundle(bundle.getPath(), descriptor));
+        }
+        if (building.add(hash)) {
+            LOGGER.info("For analysis [{}] building environment for renv.lock {}", analysisId, hash);
+            executor.execute(() -> {
+                try {
+                    build(hash, lock, runtime);
+                } finally {
+                    building.remove(hash);
+                }
+            });
+        }
+        return Optional.empty();
+    }
+
+    private void build(String hash, byte[] lock, ExecutionRuntime runtime) {
+
+        long started = System.currentTimeMillis();
+        String bundleName = BUNDLE_PREFIX + hash + BUNDLE_SUFFIX;
+        File lockFile = new File(folder, hash + ".lock");
+        File output = new File(folder, hash + ".part");
+        try {
+            FileUtils.writeByteArrayToFile(lockFile, lock);
+            String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), script.getAbsolutePath(),
+                    new File(folder, hash + ".work").getAbsolutePath(), rIsolatedRuntimeProps.getArchive(),
+                    lockFile.getAbsolutePath(), rIsolatedRuntimeProps.getEnvBuilderMirror(), output.getAbsolutePath());
+            int exitCode = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exitCode != 0) {
+                throw new IOException("env-build.sh finished with exit code " + exitCode);
+            }
+            FileUtils.moveFile(output, new File(folder, bundleName));
+            Descriptor descriptor = new Descriptor();
+            descriptor.setId(DESCRIPTOR_PREFIX + hash);
+            descriptor.setLabel("Built for renv.lock " + StringUtils.left(hash, 12));
+            descriptor.setBundleName(bundleName);
+            descriptor.getExecutionRuntimes().add(runtime);
+            mapper.writerWithDefaultPrettyPrinter().writeValue(new File(folder, DESCRIPTOR_PREFIX + hash + ".json"), descriptor);
+            built.put(hash, descriptor);
+            builds.incrementAndGet();
+            long elapsed = System.currentTimeMillis() - started;
+            buildMillis.addAndGet(elapsed);
+            LOGGER.info("Built environment [{}] in {} ms", descriptor.getId(), elapsed);
+            evict(hash);
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to build environment for renv.lock {}: {}", hash, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            FileUtils.deleteQuietly(lockFile);
+            FileUtils.deleteQuietly(output);
+        }
+    }
+
+    private void evict(String keep) {
+
+        long budget = rIsolatedRuntimeProps.getEnvBuilderMaxSizeMb() * FileUtils.ONE_MB;
+        File[] bundles = ArrayUtils.nullToEmpty(folder.listFiles((dir, name) -> name.startsWith(BUNDLE_PREFIX)), File[].class);
+        long total = Arrays.stream(bundles).mapToLong(File::length).sum();
+        Arrays.sort(bundles, Comparator.comparingLong(File::lastModified));
+        for (File bundle : bundles) {
+            if (total <= budget) {
+                break;
+            }
+            String hash = StringUtils.removeEnd(StringUtils.removeStart(bundle.getName(), BUNDLE_PREFIX), BUNDLE_SUFFIX);
+            if (hash.equals(keep)) {
+                continue;
+            }
+            built.remove(hash);
+            total -= bundle.length();
+            FileUtils.deleteQuietly(new File(folder, DESCRIPTOR_PREFIX + hash + ".json"));
+            FileUtils.deleteQuietly(bundle);
+            evictions.incrementAndGet();
+            LOGGER.info("Evicted environment [{}{}]", DESCRIPTOR_PREFIX, hash);
+        }
+    }
+
+    @ManagedAttribute
+    public int getBuilt() {
+
+        return built.size();
+    }
+
+    @ManagedAttribute
+    public int getBuilding() {
+
+        return building.size();
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getBuilds() {
+
+        return builds.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+
+    @ManagedAttribute
+    public long getEvictions() {
+
+        return evictions.get();
+    }
+
+    @ManagedAttribute
+    public long getAvgBuildMillis() {
+
+        long count = builds.get();
+        return count == 0 ? 0 : buildMillis.get() / count;
+    }
+}
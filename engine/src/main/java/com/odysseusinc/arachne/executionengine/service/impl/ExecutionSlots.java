@@ -0,0 +1,143 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Limits the number of analysis processes running at the same time and the memory reserved by them.
+ * Analyses over the limits wait in FIFO order without holding a worker thread. An analysis is always admitted
+ * when nothing else is running, so that a reservation above the budget does not wait forever.
+ */
+@Component
+@ManagedResource
+public class ExecutionSlots {
+
+    private final int maxRunning;
+    private final long memoryBudgetMb;
+
+    // Guarded by this
+    private final Deque<Request> waiting = new ArrayDeque<>();
+    private int running;
+    private long reservedMb;
+
+    public ExecutionSlots(@Value("${runtime.maxProcesses}") int maxRunning,
+                          @Value("${runtime.memoryBudgetMb}") long memoryBudgetMb) {
+
+        this.maxRunning = maxRunning;
+        this.memoryBudgetMb = memoryBudgetMb;
+    }
+
+    /**
+     * @param memoryMb memory reserved for the analysis, 0 if not limited
+     * @return future completed once a slot is granted, the slot must then be given back with {@link #release(long)}
+     */
+    public CompletableFuture<Void> acquire(long memoryMb) {
+
+        Request request = new Request(memoryMb);
+        List<Request> admitted;
+        synchronized (this) {
+            waiting.addLast(request);
+            admitted = admit();
+        }
+        admitted.forEach(r -> r.slot.complete(null));
+        return request.slot;
+    }
+
+    public void release(long memoryMb) {
+
+        List<Request> admitted;
+        synchronized (this) {
+            running--;
+            reservedMb -= memoryMb;
+            admitted = admit();
+        }
+        admitted.forEach(r -> r.slot.complete(null));
+    }
+
+    /**
+     * Takes back a request that is still waiting for a slot.
+     *
+     * @return false if the slot is already granted
+     */
+    public boolean withdraw(CompletableFuture<Void> slot) {
+
+        List<Request> admitted;
+        synchronized (this) {
+            if (!waiting.removeIf(r -> r.slot == slot)) {
+                return false;
+            }
+            // Withdrawn request might have been the one holding back the queue
+            admitted = admit();
+        }
+        admitted.forEach(r -> r.slot.complete(null));
+        return true;
+    }
+
+    private List<Request> admit() {
+
+        List<Request> admitted = new ArrayList<>();
+        while (!waiting.isEmpty() && fits(waiting.peekFirst())) {
+            Request request = waiting.pollFirst();
+            running++;
+            reservedMb += request.memoryMb;
+            admitted.add(request);
+        }
+        return admitted;
+    }
+
+    private boolean fits(Request request) {
+
+        if (running == 0) {
+            return true;
+        }
+        return running < maxRunning && (memoryBudgetMb <= 0 || reservedMb + request.memoryMb <= memoryBudgetMb);
+    }
+
+    @ManagedAttribute
+    public int getMaxRunning() {
+
+        return maxRunning;
+    }
+
+    @ManagedAttribute
+    public synchronized int getRunning() {
+
+        return running;
+    }
+
+    @ManagedAttribute
+    public synchronized int getWaiting() {
+
+        return waiting.size();
+    }
+
+    @ManagedAttribute
+    public long getMemoryBudgetMb() {
+
+        return memoryBudgetMb;
+    }
+
+    @ManagedAttribute
+    public synchronized long getReservedMb() {
+
+        return reservedMb;
+    }
+
+    private static class Request {
+
+        private final long memoryMb;
+        private final CompletableFuture<Void> slot = new CompletableFuture<>();
+
+        private Request(long memoryMb) {
+
+            this.memoryMb = memoryMb;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.apache.commons.io.IOUtils.closeQuietly;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs cleanup.sh (or the configured external cleanup script) against a jail directory.
+ */
+@Component
+public class JailCleanup {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JailCleanup.class);
+
+    private static final String CLEANUP_PHASE = "CLEANUP_PHASE";
+
+    private final ResourceLoader resourceLoader;
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+
+    public JailCleanup(ResourceLoader resourceLoader, RIsolatedRuntimeProperties rIsolatedRuntimeProps) {
+
+        this.resourceLoader = resourceLoader;
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+    }
+
+    /**
+     * Removes runtime environment from the jail.
+     *
+     * @param directory jail directory
+     * @param target    if not null, files left in the jail are moved there and the jail directory is removed
+     * @return true if cleanup script succeeded
+     */
+    public boolean cleanup(File directory, File target) throws IOException {
+
+        return target == null
+                ? run(null, directory)
+                : run(null, directory, target);
+    }
+
+    /**
+     * Unmounts the jail and moves the runtime environment to the graveyard directory, which is much faster than
+     * removing it. The graveyard must then be removed with {@link #reap(File)}.
+     *
+     * @param target if not null, files left in the jail are moved there and the jail directory is removed
+     */
+    public boolean harvest(File directory, File target, File graveyard) throws IOException {
+
+        return run("harvest", directory, target, graveyard);
+    }
+
+    /**
+     * Removes the directory along with anything still mounted inside.
+     */
+    public boolean reap(File directory) throws IOException {
+
+        return run("reap", directory);
+    }
+
+    /**
+     * @return false if an external cleanup script is configured, it is run as a whole then
+     */
+    public boolean supportsPhases() {
+
+        return !new File(rIsolatedRuntimeProps.getCleanupSh()).exists();
+    }
+
+    private boolean run(String phase, File directory, File... files) throws IOException {
+
+        File cleanupScript = new File(rIsolatedRuntimeProps.getCleanupSh());
+        boolean isExternal = true;
+
+        if (!cleanupScript.exists()) {
+            cleanupScript = FileResourceUtils.extractResourceToTempFile(resourceLoader, "classpath:/cleanup.sh", "ee", ".sh");
+            isExternal = false;
+        }
+        String[] args = new String[]{cleanupScript.getAbsolutePath(), directory.getAbsolutePath()};
+        for (File file : files) {
+            args = ArrayUtils.add(args, file == null ? "" : file.getAbsolutePath());
+        }
+        Process p = null;
+        try {
+            ProcessBuilder pb = new ProcessBuilder((String[]) ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), args));
+            if (phase != null) {
+                pb.environment().put(CLEANUP_PHASE, phase);
+            }
+            p = pb.start();
+            int exitCode = p.waitFor();
+            if (exitCode != 0) {
+                LOGGER.warn("Cleanup of [{}] finished with exit code {}", directory, exitCode);
+            }
+            return exitCode == 0;
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            if (!isExternal) {
+                FileUtils.deleteQuietly(cleanupScript);
+            }
+            if (Objects.nonNull(p)) {
+                closeQuietly(p.getOutputStream());
+                closeQuietly(p.getInputStream());
+                closeQuietly(p.getErrorStream());
+            }
+        }
+    }
+}
@@ -0,0 +1,623 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps jails with the runtime environment already materialized (jail.sh JAIL_PHASE=prepare) for the
+ * most requested bundles, so that an analysis only has to move its files in and start Rscript.
+ * Number of ready jails per bundle follows the recent request rate times the time it takes to provision
+ * a jail, capped per bundle and in total. Jails are provisioned and discarded on a dedicated thread.
+ * With warm sessions enabled every prepared jail also runs an R worker (jail.sh JAIL_PHASE=worker) which has
+ * the runtime loaded already and waits for a single analysis. Output of a worker is read on the shared stream
+ * threads from the moment it starts, so that it never blocks on a full pipe before an analysis takes it.
+ */
+@Component
+@ManagedResource
+public class JailPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JailPool.class);
+
+    private static final String JAIL_PREFIX = "jail-";
+    private static final long REFILL_PERIOD_SEC = 30;
+    static final String WORKER_SCRIPT = ".ee-worker.R";
+    private static final long WORKER_STOP_SEC = 10;
+
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final ResourceLoader resourceLoader;
+    private final BundleCache bundleCache;
+    private final JailCleanup jailCleanup;
+    private final CpuSlots cpuSlots;
+    private final ProcessStreamExecutor processStreamExecutor;
+
+    // Guarded by this
+    private final Map<String, Deque<PooledJail>> ready = new HashMap<>();
+    private final Map<String, Deque<Long>> demand = new HashMap<>();
+    private final Map<String, DescriptorBundle> bundles = new HashMap<>();
+
+    private final AtomicBoolean refillPending = new AtomicBoolean();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong provisioned = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong provisionMillis = new AtomicLong();
+    private final AtomicLong workersStarted = new AtomicLong();
+    private final AtomicLong workersLost = new AtomicLong();
+
+    private File folder;
+    private File script;
+    private ScheduledExecutorService executor;
+
+    public JailPool(RIsolatedRuntimeProperties rIsolatedRuntimeProps, ResourceLoader resourceLoader,
+                    BundleCache bundleCache, JailCleanup jailCleanup, CpuSlots cpuSlots,
+                    ProcessStreamExecutor processStreamExecutor) {
+
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+        this.resourceLoader = resourceLoader;
+        this.bundleCache = bundleCache;
+        this.jailCleanup = jailCleanup;
+        this.cpuSlots = cpuSlots;
+        this.processStreamExecutor = processStreamExecutor;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (StringUtils.isBlank(rIsolatedRuntimeProps.getJailPoolFolder())
+                || StringUtils.isBlank(rIsolatedRuntimeProps.getArchive())
+                || rIsolatedRuntimeProps.getJailPoolMaxSize() <= 0
+                || new File(rIsolatedRuntimeProps.getJailSh()).isFile()) {
+            LOGGER.info("Pool of prepared jails is disabled");
+            return;
+        }
+        folder = new File(rIsolatedRuntimeProps.getJailPoolFolder());
+        FileUtils.forceMkdir(folder);
+        script = FileResourceUtils.extractResourceToTempFile(resourceLoader, "classpath:/jail.sh", "ee", ".sh");
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "jail-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Jails left by a previous run may still have the cached trees mounted
+        File[] leftovers = folder.listFiles((dir, name) -> name.startsWith(JAIL_PREFIX));
+        for (File leftover : ArrayUtils.nullToEmpty(leftovers, File[].class)) {
+            executor.execute(() -> remove(leftover));
+        }
+        executor.scheduleWithFixedDelay(this::refill, REFILL_PERIOD_SEC, REFILL_PERIOD_SEC, TimeUnit.SECONDS);
+        LOGGER.info("Pool of prepared jails at [{}], up to {} jails", folder, rIsolatedRuntimeProps.getJailPoolMaxSize());
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (!isEnabled()) {
+            return;
+        }
+        executor.shutdownNow();
+        synchronized (this) {
+            ready.values().forEach(jails -> jails.forEach(this::remove));
+            ready.clear();
+        }
+        FileUtils.deleteQuietly(script);
+    }
+
+    public boolean isEnabled() {
+
+        return folder != null;
+    }
+
+    /**
+     * Hands out a prepared jail for the bundle, if any. The jail is owned by the caller from now on: it must be
+     * cleaned up (see cleanup.sh) and closed afterwards. Every call counts as demand for the bundle.
+     */
+    public Optional<PooledJail> acquire(DescriptorBundle bundle) {
+
+        if (!isEnabled() || bundle == null || StringUtils.isBlank(bundle.getPath())) {
+            return Optional.empty();
+        }
+        String path = bundle.getPath();
+        long archiveModified = new File(path).lastModified();
+        PooledJail jail;
+        PooledJail stale = null;
+        synchronized (this) {
+            demand.computeIfAbsent(path, p -> new ArrayDeque<>()).addLast(System.currentTimeMillis());
+            bundles.put(path, bundle);
+            Deque<PooledJail> jails = ready.getOrDefault(path, new ArrayDeque<>());
+            jail = jails.pollFirst();
+            if (jail != null && jail.archiveModified != archiveModified) {
+                stale = jail;
+                jail = null;
+            }
+        }
+        if (stale != null) {
+            discard(stale);
+        }
+        triggerRefill();
+        if (jail == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        if (jail.worker != null && !jail.worker.isAlive()) {
+            workersLost.incrementAndGet();
+            LOGGER.warn("Warm session in jail [{}] exited with code {} while idle", jail.dir, jail.worker.exitValue());
+            jail.worker = null;
+        }
+        LOGGER.debug("Using prepared jail [{}] for bundle [{}]", jail.dir, path);
+        return Optional.of(jail);
+    }
+
+    /**
+     * Cleans up a jail that was acquired but not used.
+     */
+    public void discard(PooledJail jail) {
+
+        discarded.incrementAndGet();
+        executor.execute(() -> remove(jail));
+    }
+
+    private void triggerRefill() {
+
+        if (refillPending.compareAndSet(false, true)) {
+            executor.execute(this::refill);
+        }
+    }
+
+    private void refill() {
+
+        refillPending.set(false);
+        try {
+            Map<String, Integer> targets = targets();
+            discardUnwanted(targets);
+            for (Map.Entry<String, Integer> target : targets.entrySet()) {
+                while (!Thread.currentThread().isInterrupted() && readyCount(target.getKey()) < target.getValue()) {
+                    if (!provision(target.getKey())) {
+                        break;
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to refill jail pool", e);
+        }
+    }
+
+    /**
+     * Desired number of ready jails per bundle, most demanded bundles first.
+     */
+    private synchronized Map<String, Integer> targets() {
+
+        long windowMillis = TimeUnit.MINUTES.toMillis(rIsolatedRuntimeProps.getJailPoolDemandWindowMinutes());
+        long since = System.currentTimeMillis() - windowMillis;
+        demand.values().forEach(requests -> {
+            while (!requests.isEmpty() && requests.peekFirst() < since) {
+                requests.pollFirst();
+            }
+        });
+        demand.values().removeIf(Deque::isEmpty);
+        bundles.keySet().retainAll(demand.keySet());
+
+        long avgProvisionMillis = getAvgProvisionMillis();
+        int budget = rIsolatedRuntimeProps.getJailPoolMaxSize();
+        Map<String, Integer> targets = new LinkedHashMap<>();
+        demand.entrySet().stream()
+                .sorted(Comparator.comparingInt((Map.Entry<String, Deque<Long>> e) -> e.getValue().size()).reversed())
+                .forEach(e -> {
+                    // Requests expected to arrive while a jail is being provisioned
+                    double expected = (double) e.getValue().size() * avgProvisionMillis / windowMillis;
+                    int wanted = Math.min(rIsolatedRuntimeProps.getJailPoolMaxPerDescriptor(), Math.max(1, (int) Math.ceil(expected)));
+                    int granted = Math.min(wanted, budget - targets.values().stream().mapToInt(Integer::intValue).sum());
+                    if (granted > 0) {
+                        targets.put(e.getKey(), granted);
+                    }
+                });
+        return targets;
+    }
+
+    private void discardUnwanted(Map<String, Integer> targets) {
+
+        Deque<PooledJail> unwanted = new ArrayDeque<>();
+        synchronized (this) {
+            ready.forEach((path, jails) -> {
+                int target = targets.getOrDefault(path, 0);
+                while (jails.size() > target) {
+                    unwanted.add(jails.pollLast());
+                }
+            });
+            ready.values().removeIf(Deque::isEmpty);
+        }
+        unwanted.forEach(jail -> {
+            discarded.incrementAndGet();
+            remove(jail);
+        });
+    }
+
+    private boolean provision(String path) {
+
+        DescriptorBundle bundle;
+        synchronized (this) {
+            bundle = bundles.get(path);
+        }
+        if (bundle == null) {
+            return false;
+        }
+        long started = System.currentTimeMillis();
+        File dir = new File(folder, JAIL_PREFIX + UUID.randomUUID());
+        Optional<BundleCache.Lease> lease = Optional.empty();
+        try {
+            FileUtils.forceMkdir(dir);
+            lease = bundleCache.acquire(bundle);
+            String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(),
+                    script.getAbsolutePath(), dir.getAbsolutePath(), "", path);
+            ProcessBuilder pb = new ProcessBuilder(command).inheritIO();
+            pb.environment().put(RuntimeServiceImpl.RUNTIME_JAIL_PHASE, "prepare");
+            if (rIsolatedRuntimeProps.getExtractThreads() > 0) {
+                pb.environment().put(RuntimeServiceImpl.RUNTIME_EXTRACT_THREADS, Integer.toString(rIsolatedRuntimeProps.getExtractThreads()));
+            }
+            lease.ifPresent(l -> pb.environment().put(RuntimeServiceImpl.RUNTIME_DIST_TREE, l.getDir().getAbsolutePath()));
+            if (rIsolatedRuntimeProps.isMountDrivers()) {
+                pb.environment().put(RuntimeServiceImpl.RUNTIME_MOUNT_DRIVERS, Boolean.TRUE.toString());
+            }
+            int exitCode = pb.start().waitFor();
+            if (exitCode != 0) {
+                throw new IOException("jail.sh finished with exit code " + exitCode);
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to prepare jail for bundle [{}]: {}", path, e.getMessage());
+            remove(new PooledJail(dir, lease.orElse(null), 0));
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            remove(new PooledJail(dir, lease.orElse(null), 0));
+            return false;
+        }
+        long elapsed = System.currentTimeMillis() - started;
+        provisioned.incrementAndGet();
+        provisionMillis.addAndGet(elapsed);
+        LOGGER.info("Prepared jail [{}] for bundle [{}] in {} ms", dir, path, elapsed);
+        PooledJail jail = new PooledJail(dir, lease.orElse(null), new File(path).lastModified());
+        if (rIsolatedRuntimeProps.isWarmSessions()) {
+            startWorker(jail);
+        }
+        synchronized (this) {
+            ready.computeIfAbsent(path, p -> new ArrayDeque<>()).addLast(jail);
+        }
+        return true;
+    }
+
+    private void startWorker(PooledJail jail) {
+
+        try {
+            copyResource("classpath:/worker.R", new File(jail.dir, WORKER_SCRIPT));
+            copyResource("classpath:/Rprofile", new File(jail.dir, ".Rprofile"));
+            String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(),
+                    script.getAbsolutePath(), jail.dir.getAbsolutePath(), "", "");
+            ProcessBuilder pb = new ProcessBuilder(OrphanReaper.inNewSession(command)).directory(jail.dir).redirectErrorStream(true);
+            pb.environment().put(RuntimeServiceImpl.RUNTIME_JAIL_PHASE, "worker");
+            // Libraries size their thread pools when loaded, so the hints have to be there from the start
+            jail.workerThreads = cpuSlots.putDefaultThreadVariables(pb.environment());
+            Process worker = pb.start();
+            WorkerOutput output = new WorkerOutput(worker.getInputStream(), jail.dir);
+            try {
+                processStreamExecutor.submit(output);
+            } catch (RejectedExecutionException e) {
+                LOGGER.warn("No thread to read warm session in jail [{}], stopping it", jail.dir);
+                stopWorker(worker);
+                return;
+            }
+            jail.output = output;
+            jail.worker = worker;
+            workersStarted.incrementAndGet();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to start warm session in jail [{}]: {}", jail.dir, e.getMessage());
+        }
+    }
+
+    /**
+     * Kills the warm session along with the processes it started.
+     */
+    public static void stopWorker(Process worker) {
+
+        long pid = ProcessTree.pidOf(worker);
+        if (pid > 0) {
+            ProcessTree.signal(ProcessTree.withDescendants(pid), "KILL", true);
+        }
+        worker.destroyForcibly();
+        try {
+            worker.waitFor(WORKER_STOP_SEC, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void copyResource(String resource, File target) throws IOException {
+
+        try (InputStream is = resourceLoader.getResource(resource).getInputStream()) {
+            FileUtils.copyInputStreamToFile(is, target);
+        }
+    }
+
+    private void remove(PooledJail jail) {
+
+        jail.stopWorker();
+        remove(jail.dir);
+        jail.close();
+    }
+
+    private void remove(File dir) {
+
+        try {
+            if (jailCleanup.cleanup(dir, null)) {
+                FileUtils.deleteDirectory(dir);
+            } else {
+                LOGGER.warn("Jail [{}] was not cleaned up", dir);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to remove jail [{}]: {}", dir, e.getMessage());
+        }
+    }
+
+    private synchronized int readyCount(String path) {
+
+        Deque<PooledJail> jails = ready.get(path);
+        return jails == null ? 0 : jails.size();
+    }
+
+    @ManagedAttribute
+    public long getWorkersStarted() {
+
+        return workersStarted.get();
+    }
+
+    @ManagedAttribute
+    public long getWorkersLost() {
+
+        return workersLost.get();
+    }
+
+    @ManagedAttribute
+    public synchronized int getWarmCount() {
+
+        return (int) ready.values().stream().flatMap(Deque::stream)
+                .filter(jail -> jail.worker != null && jail.worker.isAlive())
+                .count();
+    }
+
+    @ManagedAttribute
+    public long getHits() {
+
+        return hits.get();
+    }
+
+    @ManagedAttribute
+    public long getMisses() {
+
+        return misses.get();
+    }
+
+    @ManagedAttribute
+    public long getProvisioned() {
+
+        return provisioned.get();
+    }
+
+    @ManagedAttribute
+    public long getDiscarded() {
+
+        return discarded.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+
+    @ManagedAttribute
+    public long getAvgProvisionMillis() {
+
+        long count = provisioned.get();
+        return count == 0 ? 0 : provisionMillis.get() / count;
+    }
+
+    @ManagedAttribute
+    public synchronized int getReadyCount() {
+
+        return ready.values().stream().mapToInt(Deque::size).sum();
+    }
+
+    public static class PooledJail implements Closeable {
+
+        private final File dir;
+        private final BundleCache.Lease lease;
+        private final long archiveModified;
+        private volatile Process worker;
+        private volatile WorkerOutput output;
+        // Thread count hints the warm session was started with, 0 if none
+        private volatile int workerThreads;
+
+        private PooledJail(File dir, BundleCache.Lease lease, long archiveModified) {
+
+            this.dir = dir;
+            this.lease = lease;
+            this.archiveModified = archiveModified;
+        }
+
+        public File getDir() {
+
+            return dir;
+        }
+
+        /**
+         * @return warm session running in the jail, the caller owns it from now on and has to read its output
+         * from {@link #takeOutput(Process)}
+         */
+        public synchronized Optional<Process> takeWorker() {
+
+            Process taken = worker;
+            worker = null;
+            return Optional.ofNullable(taken);
+        }
+
+        /**
+         * @return output the taken worker prints from now on, read on the thread which has been reading it
+         * since the worker started
+         */
+        public InputStream takeOutput(Process worker) throws IOException {
+
+            WorkerOutput taken = output;
+            output = null;
+            return taken == null ? worker.getInputStream() : taken.attach();
+        }
+
+        public int getWorkerThreads() {
+
+            return workerThreads;
+        }
+
+        /**
+         * Kills the warm session not used by an analysis, so that the jail can run Rscript or be cleaned up.
+         */
+        public void stopWorker() {
+
+            takeWorker().ifPresent(JailPool::stopWorker);
+        }
+
+        /**
+         * Releases the cached tree the jail is built on. Must be called once the jail is cleaned up.
+         */
+        @Override
+        public void close() {
+
+            if (lease != null) {
+                lease.close();
+            }
+        }
+    }
+
+    /**
+     * Reads output of a warm session for its whole life. Until an analysis takes the worker the output goes to the
+     * debug log, after that it is passed on through a pipe the size of the one of a process.
+     */
+    static class WorkerOutput implements Runnable {
+
+        private static final int BUFFER_SIZE = 8192;
+        private static final int PIPE_SIZE = 65536;
+
+        private final InputStream source;
+        private final File dir;
+        // Guarded by this
+        private PipedOutputStream target;
+        private boolean finished;
+
+        WorkerOutput(InputStream source, File dir) {
+
+            this.source = source;
+            this.dir = dir;
+        }
+
+        @Override
+        public void run() {
+
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try {
+                int read;
+                while ((read = source.read(buffer)) >= 0) {
+                    forward(buffer, read);
+                }
+            } catch (IOException e) {
+                LOGGER.debug("Failed to read warm session in jail [{}]: {}", dir, e.getMessage());
+            } finally {
+                finish();
+            }
+        }
+
+        /**
+         * @return stream of the output printed from now on, ends when the worker closes its output
+         */
+        synchronized InputStream attach() throws IOException {
+
+            PipedInputStream input = new PipedInputStream(PIPE_SIZE);
+            PipedOutputStream output = new PipedOutputStream(input);
+            if (finished) {
+                output.close();
+            } else {
+                target = output;
+            }
+            return input;
+        }
+
+        private synchronized void forward(byte[] buffer, int length) {
+
+            if (target == null) {
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Warm session in jail [{}]: {}", dir, new String(buffer, 0, length, StandardCharsets.UTF_8).trim());
+                }
+                return;
+            }
+            try {
+                target.write(buffer, 0, length);
+                // Wakes up the reader, it would otherwise poll the pipe once a second
+                target.flush();
+            } catch (IOException e) {
+                // Nobody reads the analysis output any longer, the rest is only drained
+                LOGGER.debug("Output of warm session in jail [{}] is not read: {}", dir, e.getMessage());
+                close(target);
+                target = null;
+            }
+        }
+
+        private synchronized void finish() {
+
+            finished = true;
+            if (target != null) {
+                close(target);
+                target = null;
+            }
+        }
+
+        private void close(PipedOutputStream output) {
+
+            try {
+                output.close();
+            } catch (IOException e) {
+                LOGGER.debug("Failed to close output of warm session in jail [{}]: {}", dir, e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the files jail.sh would otherwise produce with a sudo call each (R-with-krb.sh, resolv.conf, Kerberos and
+ * BigQuery credentials) into a staging directory of the jail, which jail.sh then copies into place with a single
+ * privileged call. If staging fails the jail is provisioned by jail.sh as before.
+ */
+@Component
+@ManagedResource
+public class JailProvisioner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JailProvisioner.class);
+
+    static final String STAGING_DIR = ".ee-staging";
+    static final String ENVIRONMENT_SCRIPT = "etc/R-with-krb.sh";
+
+    private static final String SCRIPT_TEMPLATE = "/etc/R-with-krb.sh";
+    private static final String RESOLV_CONF = "/etc/resolv.conf";
+    private static final String KRB_CONF = "KRB_CONF";
+    private static final String KRB_KEYTAB = "KRB_KEYTAB";
+    private static final String BQ_KEYFILE = "BQ_KEYFILE";
+
+    private final AtomicLong staged = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong stageMillis = new AtomicLong();
+
+    /**
+     * @param variables names of the variables exported to the analysis, in order
+     * @return true if jail.sh finds the staging directory, false if it has to provision the jail itself
+     */
+    public boolean stage(File jail, Map<String, String> envp, List<String> variables) {
+
+        long started = System.currentTimeMillis();
+        File staging = new File(jail, STAGING_DIR);
+        try {
+            // Holds credentials until jail.sh moves them into the jail
+            Files.createDirectory(staging.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            String template = new String(Files.readAllBytes(Paths.get(SCRIPT_TEMPLATE)), StandardCharsets.UTF_8);
+            File script = new File(staging, ENVIRONMENT_SCRIPT);
+            FileUtils.writeStringToFile(script, buildEnvironmentScript(envp, variables, template), StandardCharsets.UTF_8);
+            if (!script.setExecutable(true)) {
+                throw new IOException("Cannot make " + script + " executable");
+            }
+            copyIfExists(RESOLV_CONF, new File(staging, "etc/resolv.conf"));
+            copyIfExists(envp.get(KRB_CONF), new File(staging, "etc/krb5.conf"));
+            copyIfExists(envp.get(KRB_KEYTAB), new File(staging, "etc/krb.keytab"));
+            String keyFile = envp.get(BQ_KEYFILE);
+            if (StringUtils.isNotBlank(keyFile)) {
+                copyIfExists(keyFile, new File(staging, StringUtils.removeStart(keyFile, "/")));
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to stage jail files in [{}], jail.sh provisions them: {}", jail, e.getMessage());
+            FileUtils.deleteQuietly(staging);
+            return false;
+        }
+        staged.incrementAndGet();
+        stageMillis.addAndGet(System.currentTimeMillis() - started);
+        return true;
+    }
+
+    /**
+     * Removes files left staged if jail.sh did not get to copy them.
+     */
+    public void discard(File jail) {
+
+        FileUtils.deleteQuietly(new File(jail, STAGING_DIR));
+    }
+
+    /**
+     * Exports the variables that are set and appends the template without its shebang line, as jail.sh does.
+     */
+    static String buildEnvironmentScript(Map<String, String> envp, List<String> variables, String template) {
+
+        StringBuilder script = new StringBuilder("#!/usr/bin/env bash\n");
+        for (String name : variables) {
+            String value = envp.get(name);
+            if (value != null) {
+                script.append("export ").append(name).append('=').append(quote(value)).append('\n');
+            }
+        }
+        int body = template.indexOf('\n');
+        return script.append(body < 0 ? "" : template.substring(body + 1)).toString();
+    }
+
+    static String quote(String value) {
+
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private static void copyIfExists(String source, File target) throws IOException {
+
+        if (StringUtils.isBlank(source) || !new File(source).isFile()) {
+            return;
+        }
+        Path copy = target.toPath();
+        Files.createDirectories(copy.getParent());
+        Files.copy(Paths.get(source), copy);
+    }
+
+    @ManagedAttribute
+    public long getStaged() {
+
+        return staged.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+
+    @ManagedAttribute
+    public long getAvgStageMillis() {
+
+        long count = staged.get();
+        return count == 0 ? 0 : stageMillis.get() / count;
+    }
+}
@@ -0,0 +1,199 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes runtime environments moved out of the jails (see cleanup.sh harvest phase) in the background, so that
+ * analysis results are reported without waiting for the removal. Failed removals are retried with a growing delay,
+ * directories left by a previous run of the engine are removed on startup. Jails that failed to clean up are retried
+ * the same way.
+ */
+@Component
+@ManagedResource
+public class JailReaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JailReaper.class);
+
+    private static final String DEFAULT_FOLDER = "ee-reaper";
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_DELAY_SEC = 30;
+
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final JailCleanup jailCleanup;
+
+    private final Set<File> backlog = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger counter = new AtomicInteger();
+    private final AtomicLong reaped = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong reapMillis = new AtomicLong();
+
+    private File folder;
+    private ScheduledThreadPoolExecutor executor;
+
+    public JailReaper(RIsolatedRuntimeProperties rIsolatedRuntimeProps, JailCleanup jailCleanup) {
+
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+        this.jailCleanup = jailCleanup;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (rIsolatedRuntimeProps.getReaperThreads() <= 0 || !jailCleanup.supportsPhases()) {
+            LOGGER.info("Jail reaper is disabled, jails are removed before results are reported");
+            return;
+        }
+        folder = StringUtils.isBlank(rIsolatedRuntimeProps.getReaperFolder())
+                ? new File(FileUtils.getTempDirectory(), DEFAULT_FOLDER)
+                : new File(rIsolatedRuntimeProps.getReaperFolder());
+        FileUtils.forceMkdir(folder);
+        executor = new ScheduledThreadPoolExecutor(rIsolatedRuntimeProps.getReaperThreads(), r -> {
+            Thread thread = new Thread(r, "jail-reaper-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Left by a previous run killed before the removal completed
+        File[] orphans = folder.listFiles();
+        for (File orphan : ArrayUtils.nullToEmpty(orphans, File[].class)) {
+            reap(orphan);
+        }
+        LOGGER.info("Jail reaper at [{}] with {} threads, {} directories left by previous run",
+                folder, rIsolatedRuntimeProps.getReaperThreads(), ArrayUtils.getLength(orphans));
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (executor != null) {
+            // Whatever is left is picked up on the next start
+            executor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+
+        return folder != null;
+    }
+
+    /**
+     * @return new directory to move the environment of the jail to before it is passed to {@link #reap(File)}
+     */
+    public File allocate(String name) throws IOException {
+
+        return Files.createTempDirectory(folder.toPath(), name + "-").toFile();
+    }
+
+    public void reap(File directory) {
+
+        backlog.add(directory);
+        executor.execute(() -> attempt(directory, () -> jailCleanup.reap(directory) && !directory.exists(), () -> {
+        }, 1));
+    }
+
+    /**
+     * Retries cleanup of a jail which might still have the runtime environment mounted. Whatever the mounts rely
+     * on must only be released by the callback, which runs once the cleanup succeeds. If the reaper is disabled or
+     * gives up, the jail is left as is.
+     */
+    public void retryCleanup(File jailDir, Runnable onCleaned) {
+
+        if (!isEnabled()) {
+            failures.incrementAndGet();
+            LOGGER.error("Jail [{}] was not cleaned up, it is left as is", jailDir);
+            return;
+        }
+        backlog.add(jailDir);
+        retries.incrementAndGet();
+        executor.schedule(() -> attempt(jailDir, () -> jailCleanup.cleanup(jailDir, null), onCleaned, 1),
+                RETRY_DELAY_SEC, TimeUnit.SECONDS);
+    }
+
+    private void attempt(File directory, Removal removal, Runnable onRemoved, int attempt) {
+
+        long started = System.currentTimeMillis();
+        boolean removed;
+        try {
+            removed = removal.remove();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Failed to remove [{}]: {}", directory, e.getMessage());
+            removed = false;
+        }
+        if (removed) {
+            backlog.remove(directory);
+            reaped.incrementAndGet();
+            reapMillis.addAndGet(System.currentTimeMillis() - started);
+            onRemoved.run();
+        } else if (attempt < MAX_ATTEMPTS) {
+            retries.incrementAndGet();
+            long delay = RETRY_DELAY_SEC << (attempt - 1);
+            LOGGER.info("Removal of [{}] will be retried in {} seconds", directory, delay);
+            executor.schedule(() -> attempt(directory, removal, onRemoved, attempt + 1), delay, TimeUnit.SECONDS);
+        } else {
+            backlog.remove(directory);
+            failures.incrementAndGet();
+            LOGGER.error("Gave up removing [{}] after {} attempts, it is retried on the next start", directory, attempt);
+        }
+    }
+
+    @ManagedAttribute
+    public int getBacklog() {
+
+        return backlog.size();
+    }
+
+    @ManagedAttribute
+    public int getActive() {
+
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    @ManagedAttribute
+    public long getReaped() {
+
+        return reaped.get();
+    }
+
+    @ManagedAttribute
+    public long getRetries() {
+
+        return retries.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+
+    @ManagedAttribute
+    public long getAvgReapMillis() {
+
+        long count = reaped.get();
+        return count == 0 ? 0 : reapMillis.get() / count;
+    }
+
+    private interface Removal {
+
+        boolean remove() throws IOException;
+    }
+}
@@ -0,0 +1,351 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Kills analysis processes that outlive their analysis: descendants that got reparented (daemons, processes left
+ * in the PID namespace of the jail) escape the process tree signalled by {@link ProcessSupervisor}. A process forking
+ * and detaching between two sweeps is never seen in the tree, so processes are also matched by what they inherit
+ * regardless of their parent: the session the analysis was started in (see setsid) and the PID namespaces found in
+ * its tree. Every process matched is recorded by pid and start time in a ledger persisted on disk, so that the ones
+ * left by a previous run of the engine are killed on startup as well.
+ */
+@Component
+@ManagedResource
+public class OrphanReaper {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OrphanReaper.class);
+
+    private static final String DEFAULT_LEDGER = "ee-pid-ledger.json";
+    private static final String SETSID = "setsid";
+
+    private final long intervalSec;
+    private final String ledgerPath;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    // Guarded by this, by analysis id
+    private final Map<Long, Tracked> tracked = new HashMap<>();
+    private final AtomicLong reaped = new AtomicLong();
+    private final AtomicLong reclaimedRssMb = new AtomicLong();
+    private final AtomicLong reapedAnalyses = new AtomicLong();
+
+    private File ledger;
+    private ScheduledExecutorService timer;
+    private long ownNamespace;
+
+    public OrphanReaper(@Value("${runtime.orphanReaperIntervalSec}") long intervalSec,
+                        @Value("${runtime.pidLedgerFile}") String ledgerPath) {
+
+        this.intervalSec = intervalSec;
+        this.ledgerPath = ledgerPath;
+    }
+
+    @PostConstruct
+    public void init() {
+
+        if (intervalSec <= 0) {
+            LOGGER.info("Orphan process reaper is disabled");
+            return;
+        }
+        ownNamespace = ProcessTree.ownPidNamespace();
+        ledger = StringUtils.isBlank(ledgerPath) ? new File(FileUtils.getTempDirectory(), DEFAULT_LEDGER) : new File(ledgerPath);
+        if (ledger.isFile()) {
+            try {
+                Map<Long, Tracked> previous = mapper.readValue(ledger, new TypeReference<Map<Long, Tracked>>() {
+                });
+                // Analyses of the previous run are gone along with it
+                previous.values().forEach(t -> t.finished = true);
+                tracked.putAll(previous);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to read pid ledger [{}]: {}", ledger, e.getMessage());
+            }
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "orphan-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sweep, 0, intervalSec, TimeUnit.SECONDS);
+        LOGGER.info("Orphan process reaper with ledger [{}], {} analyses left by previous run", ledger, tracked.size());
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the command run in a session of its own, which its descendants stay in even once they detach
+     */
+    public static String[] inNewSession(String[] command) {
+
+        return ArrayUtils.addAll(new String[]{SETSID}, command);
+    }
+
+    /**
+     * Starts recording the process tree of the analysis.
+     *
+     * @param privileged whether the processes run as root and have to be killed with sudo
+     */
+    public void track(Long analysisId, Process process, boolean privileged) {
+
+        long pid = ProcessTree.pidOf(process);
+        if (timer == null || pid <= 0) {
+            return;
+        }
+        Tracked analysis = new Tracked(pid, privileged);
+        ProcessStats.read(pid).ifPresent(stats -> analysis.pids.put(pid, stats.getStartTime()));
+        // Started by setsid, its session is not the one of the engine
+        if (ProcessTree.sessionOf(pid) == pid) {
+            analysis.session = pid;
+        }
+        synchronized (this) {
+            tracked.put(analysisId, analysis);
+            persist();
+        }
+    }
+
+    /**
+     * Marks the analysis completed, whatever is left of its processes is killed right away.
+     */
+    public void release(Long analysisId) {
+
+        if (timer == null) {
+            return;
+        }
+        synchronized (this) {
+            Tracked analysis = tracked.get(analysisId);
+            if (analysis == null) {
+                return;
+            }
+            analysis.finished = true;
+        }
+        timer.execute(this::sweep);
+    }
+
+    synchronized void sweep() {
+
+        try {
+            Map<Long, List<Long>> children = ProcessTree.children();
+            Map<Long, List<Long>> sessions = ProcessTree.sessions();
+            Map<Long, Long> namespaces = tracked.isEmpty() ? Collections.emptyMap()
+                    : ProcessTree.pidNamespaces(tracked.values().stream().anyMatch(t -> t.privileged));
+            boolean changed = false;
+            for (Map.Entry<Long, Tracked> entry : new ArrayList<>(tracked.entrySet())) {
+                Tracked analysis = entry.getValue();
+                if (!analysis.finished) {
+                    changed |= analysis.pids.keySet().removeIf(pid -> !ProcessTree.isAlive(pid));
+                    Set<Long> tree = ProcessTree.withDescendants(analysis.root, children);
+                    changed |= recordNamespaces(analysis, tree, namespaces);
+                    changed |= record(analysis, tree);
+                }
+                changed |= record(analysis, members(analysis, sessions, namespaces));
+                if (!analysis.finished) {
+                    continue;
+                }
+                List<ProcessStats> survivors = survivors(analysis);
+                if (survivors.isEmpty()) {
+                    tracked.remove(entry.getKey());
+                    changed = true;
+                    continue;
+                }
+                long rssMb = survivors.stream().mapToLong(ProcessStats::getRssKb).sum() / 1024;
+                LOGGER.warn("Killing {} processes left by analysis id={}, {} MB resident", survivors.size(), entry.getKey(), rssMb);
+                List<Long> pids = new ArrayList<>();
+                survivors.forEach(stats -> pids.add(stats.getPid()));
+                ProcessTree.signal(pids, "KILL", analysis.privileged);
+                if (!analysis.reaped) {
+                    analysis.reaped = true;
+                    reapedAnalyses.incrementAndGet();
+                }
+                reaped.addAndGet(survivors.size());
+                reclaimedRssMb.addAndGet(rssMb);
+                // Dropped from the ledger by the next sweep once the processes are gone
+                analysis.pids.keySet().retainAll(pids);
+                changed = true;
+            }
+            if (changed) {
+                persist();
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to reap orphan processes", e);
+        }
+    }
+
+    /**
+     * Records the PID namespaces entered by the tree, each with its topmost process in the tree, which is its init:
+     * the namespace and everything in it is gone along with the init.
+     */
+    private boolean recordNamespaces(Tracked analysis, Set<Long> tree, Map<Long, Long> namespaces) {
+
+        boolean changed = false;
+        for (Long pid : tree) {
+            Long namespace = namespaces.get(pid);
+            if (namespace != null && namespace != ownNamespace && !analysis.namespaces.containsKey(namespace)) {
+                analysis.namespaces.put(namespace, pid);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return processes in the session or in the namespaces of the analysis, no matter whether they are still
+     * in its tree. Session id and namespace inode can be reused once they are gone, so they are forgotten then.
+     */
+    private static List<Long> members(Tracked analysis, Map<Long, List<Long>> sessions, Map<Long, Long> namespaces) {
+
+        List<Long> members = new ArrayList<>();
+        if (analysis.session > 0) {
+            Long leaderStartTime = analysis.pids.get(analysis.session);
+            boolean reused = ProcessStats.read(analysis.session)
+                    .filter(stats -> leaderStartTime == null || stats.getStartTime() != leaderStartTime)
+                    .isPresent();
+            if (reused || !sessions.containsKey(analysis.session)) {
+                analysis.session = 0;
+            } else {
+                members.addAll(sessions.get(analysis.session));
+            }
+        }
+        analysis.namespaces.values().removeIf(init -> !ProcessStats.read(init)
+                .filter(stats -> Long.valueOf(stats.getStartTime()).equals(analysis.pids.get(init)))
+                .isPresent());
+        namespaces.forEach((pid, namespace) -> {
+            if (analysis.namespaces.containsKey(namespace)) {
+                members.add(pid);
+            }
+        });
+        return members;
+    }
+
+    private static boolean record(Tracked analysis, Collection<Long> pids) {
+
+        boolean changed = false;
+        for (Long pid : pids) {
+            if (!analysis.pids.containsKey(pid)) {
+                Optional<ProcessStats> stats = ProcessStats.read(pid);
+                if (stats.isPresent()) {
+                    analysis.pids.put(pid, stats.get().getStartTime());
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return recorded processes still running, a pid reused by another process has a different start time and
+     * zombies are left to whoever reaps them
+     */
+    private static List<ProcessStats> survivors(Tracked analysis) {
+
+        List<ProcessStats> survivors = new ArrayList<>();
+        analysis.pids.forEach((pid, startTime) -> ProcessStats.read(pid)
+                .filter(stats -> stats.getStartTime() == startTime && !stats.isZombie())
+                .ifPresent(survivors::add));
+        return survivors;
+    }
+
+    private void persist() {
+
+        File temp = new File(ledger.getPath() + ".tmp");
+        try {
+            mapper.writeValue(temp, tracked);
+            Files.move(temp.toPath(), ledger.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write pid ledger [{}]: {}", ledger, e.getMessage());
+        }
+    }
+
+    @ManagedAttribute
+    public synchronized int getTrackedAnalyses() {
+
+        return tracked.size();
+    }
+
+    @ManagedAttribute
+    public synchronized int getTrackedProcesses() {
+
+        return tracked.values().stream().mapToInt(t -> t.pids.size()).sum();
+    }
+
+    @ManagedAttribute
+    public long getReaped() {
+
+        return reaped.get();
+    }
+
+    @ManagedAttribute
+    public long getReapedAnalyses() {
+
+        return reapedAnalyses.get();
+    }
+
+    @ManagedAttribute
+    public long getReclaimedRssMb() {
+
+        return reclaimedRssMb.get();
+    }
+
+    static class Tracked {
+
+        @JsonProperty
+        private long root;
+        @JsonProperty
+        private boolean privileged;
+        // Start time by pid of every process seen in the tree, session or namespaces
+        @JsonProperty
+        private Map<Long, Long> pids = new HashMap<>();
+        // Id of the session started for the analysis, 0 if none or gone
+        @JsonProperty
+        private long session;
+        // Init process by inode of every PID namespace entered by the tree
+        @JsonProperty
+        private Map<Long, Long> namespaces = new HashMap<>();
+        private boolean finished;
+        private boolean reaped;
+
+        Tracked() {
+        }
+
+        Tracked(long root, boolean privileged) {
+
+            this.root = root;
+            this.privileged = privileged;
+        }
+    }
+}
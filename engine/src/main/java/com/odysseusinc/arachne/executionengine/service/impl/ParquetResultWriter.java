@@ -0,0 +1,364 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.file.Files;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Collections;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Types;
+
+/**
+ * Writes a result set as a zstd compressed Parquet file. The schema is built from the metadata, all columns are
+ * optional, NULL is a missing value. Rows are shredded into column chunks by the Parquet writer and flushed a row
+ * group at a time. Written straight to the local file, without a Hadoop file system.
+ */
+public class ParquetResultWriter implements ResultWriter {
+
+    // ZstandardCodec.PARQUET_COMPRESS_ZSTD_LEVEL
+    private static final String ZSTD_LEVEL = "parquet.compression.codec.zstd.level";
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private final int level;
+
+    /**
+     * Replaces the file if it exists.
+     *
+     * @param level zstd compression level
+     */
+    public ParquetResultWriter(Path file, int level) {
+
+        this.file = file;
+        this.level = level;
+    }
+
+    /**
+     * Writes the file, a writer takes a single result set.
+     */
+    @Override
+    public long write(ResultSet resultSet) throws SQLException, IOException {
+
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        String[] labels = ColumnKind.labels(metaData);
+        ColumnKind[] kinds = new ColumnKind[labels.length];
+        int[] scales = new int[labels.length];
+        Types.MessageTypeBuilder schema = Types.buildMessage();
+        for (int column = 1; column <= labels.length; column++) {
+            ColumnKind kind = ColumnKind.of(metaData, column);
+            kinds[column - 1] = kind;
+            scales[column - 1] = metaData.getScale(column);
+            field(schema, kind, metaData.getPrecision(column), metaData.getScale(column)).named(labels[column - 1]);
+        }
+
+        Configuration conf = new Configuration(false);
+        conf.setInt(ZSTD_LEVEL, level);
+        RowWriteSupport writeSupport = new RowWriteSupport(schema.named("result"), kinds, scales);
+        long rows = 0;
+        try (ParquetWriter<ResultSet> writer = new Builder(new LocalOutputFile(file), writeSupport)
+                .withConf(conf)
+                .withCompressionCodec(CompressionCodecName.ZSTD)
+                .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+                .build()) {
+            while (resultSet.next()) {
+                writer.write(resultSet);
+                rows++;
+            }
+        } catch (RowException e) {
+            throw e.getCause();
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() {
+
+        // The file is complete once write() returns
+    }
+
+    private static Types.PrimitiveBuilder<Types.GroupBuilder<MessageType>> field(Types.GroupBuilder<MessageType> schema,
+                                                                                ColumnKind kind, int precision, int scale) {
+
+        switch (kind) {
+            case LONG:
+                return schema.optional(PrimitiveTypeName.INT64);
+            case DOUBLE:
+                return schema.optional(PrimitiveTypeName.DOUBLE);
+            case FLOAT:
+                return schema.optional(PrimitiveTypeName.FLOAT);
+            case BOOLEAN:
+                return schema.optional(PrimitiveTypeName.BOOLEAN);
+            case DECIMAL:
+                return schema.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.decimalType(scale, precision));
+            case DATE:
+                return schema.optional(PrimitiveTypeName.INT32).as(LogicalTypeAnnotation.dateType());
+            case TIMESTAMP:
+                return schema.optional(PrimitiveTypeName.INT64)
+                        .as(LogicalTypeAnnotation.timestampType(false, LogicalTypeAnnotation.TimeUnit.MICROS));
+            default:
+                return schema.optional(PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType());
+        }
+    }
+
+    /**
+     * Carries a failing getter through the Parquet writer, which takes no checked exceptions but IOException.
+     */
+    private static class RowException extends RuntimeException {
+
+        private RowException(SQLException cause) {
+
+            super(cause);
+        }
+
+        @Override
+        public synchronized SQLException getCause() {
+
+            return (SQLException) super.getCause();
+        }
+    }
+
+    /**
+     * Writes the current row of the result set, the columns in schema order.
+     */
+    private static class RowWriteSupport extends WriteSupport<ResultSet> {
+
+        private final MessageType schema;
+        private final ColumnKind[] kinds;
+        private final int[] scales;
+        private RecordConsumer consumer;
+
+        private RowWriteSupport(MessageType schema, ColumnKind[] kinds, int[] scales) {
+
+            this.schema = schema;
+            this.kinds = kinds;
+            this.scales = scales;
+        }
+
+        @Override
+        public WriteContext init(Configuration configuration) {
+
+            return new WriteContext(schema, Collections.emptyMap());
+        }
+
+        @Override
+        public void prepareForWrite(RecordConsumer recordConsumer) {
+
+            this.consumer = recordConsumer;
+        }
+
+        @Override
+        public void write(ResultSet resultSet) {
+
+            consumer.startMessage();
+            try {
+                for (int index = 0; index < kinds.length; index++) {
+                    writeValue(resultSet, index);
+                }
+            } catch (SQLException e) {
+                throw new RowException(e);
+            }
+            consumer.endMessage();
+        }
+
+        private void writeValue(ResultSet resultSet, int index) throws SQLException {
+
+            int column = index + 1;
+            switch (kinds[index]) {
+                case LONG:
+                    long longValue = resultSet.getLong(column);
+                    if (!resultSet.wasNull()) {
+                        start(index);
+                        consumer.addLong(longValue);
+                        end(index);
+                    }
+                    break;
+                case DOUBLE:
+                    double doubleValue = resultSet.getDouble(column);
+                    if (!resultSet.wasNull()) {
+                        start(index);
+                        consumer.addDouble(doubleValue);
+                        end(index);
+                    }
+                    break;
+                case FLOAT:
+                    float floatValue = resultSet.getFloat(column);
+                    if (!resultSet.wasNull()) {
+                        start(index);
+                        consumer.addFloat(floatValue);
+                        end(index);
+                    }
+                    break;
+                case BOOLEAN:
+                    boolean booleanValue = resultSet.getBoolean(column);
+                    if (!resultSet.wasNull()) {
+                        start(index);
+                        consumer.addBoolean(booleanValue);
+                        end(index);
+                    }
+                    break;
+                case DECIMAL:
+                    BigDecimal decimal = resultSet.getBigDecimal(column);
+                    if (decimal != null) {
+                        start(index);
+                        consumer.addBinary(Binary.fromConstantByteArray(
+                                decimal.setScale(scales[index], RoundingMode.HALF_UP).unscaledValue().toByteArray()));
+                        end(index);
+                    }
+                    break;
+                case DATE:
+                    Date date = resultSet.getDate(column);
+                    if (date != null) {
+                        start(index);
+                        consumer.addInteger(ColumnKind.epochDay(date));
+                        end(index);
+                    }
+                    break;
+                case TIMESTAMP:
+                    Timestamp timestamp = resultSet.getTimestamp(column);
+                    if (timestamp != null) {
+                        start(index);
+                        consumer.addLong(ColumnKind.epochMicros(timestamp));
+                        end(index);
+                    }
+                    break;
+                default:
+                    String text = resultSet.getString(column);
+                    if (text != null) {
+                        start(index);
+                        consumer.addBinary(Binary.fromString(text));
+                        end(index);
+                    }
+                    break;
+            }
+        }
+
+        private void start(int index) {
+
+            consumer.startField(schema.getFieldName(index), index);
+        }
+
+        private void end(int index) {
+
+            consumer.endField(schema.getFieldName(index), index);
+        }
+    }
+
+    private static class Builder extends ParquetWriter.Builder<ResultSet, Builder> {
+
+        private final RowWriteSupport writeSupport;
+
+        private Builder(OutputFile file, RowWriteSupport writeSupport) {
+
+            super(file);
+            this.writeSupport = writeSupport;
+        }
+
+        @Override
+        protected Builder self() {
+
+            return this;
+        }
+
+        @Override
+        protected WriteSupport<ResultSet> getWriteSupport(Configuration conf) {
+
+            return writeSupport;
+        }
+    }
+
+    private static class LocalOutputFile implements OutputFile {
+
+        private final Path file;
+
+        private LocalOutputFile(Path file) {
+
+            this.file = file;
+        }
+
+        @Override
+        public PositionOutputStream create(long blockSizeHint) throws IOException {
+
+            return open(StandardOpenOption.CREATE_NEW);
+        }
+
+        @Override
+        public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+
+            return open(StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+
+        @Override
+        public boolean supportsBlockSize() {
+
+            return false;
+        }
+
+        @Override
+        public long defaultBlockSize() {
+
+            return 0;
+        }
+
+        private PositionOutputStream open(OpenOption... options) throws IOException {
+
+            OutputStream out = new BufferedOutputStream(Files.newOutputStream(file, options), BUFFER_SIZE);
+            return new PositionOutputStream() {
+
+                private long position;
+
+                @Override
+                public long getPos() {
+
+                    return position;
+                }
+
+                @Override
+                public void write(int b) throws IOException {
+
+                    out.write(b);
+                    position++;
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+
+                    out.write(b, off, len);
+                    position += len;
+                }
+
+                @Override
+                public void flush() throws IOException {
+
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+
+                    out.close();
+                }
+            };
+        }
+    }
+}
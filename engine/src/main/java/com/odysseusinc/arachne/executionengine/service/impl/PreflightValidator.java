@@ -0,0 +1,547 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRequestDTO;
+import com.odysseusinc.arachne.executionengine.model.descriptor.DescriptorBundle;
+import com.odysseusinc.arachne.executionengine.model.descriptor.ExecutionRuntime;
+import com.odysseusinc.arachne.executionengine.model.descriptor.r.RExecutionRuntime;
+import com.odysseusinc.arachne.executionengine.util.AnalisysUtils;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import com.odysseusinc.arachne.executionengine.util.exception.PreflightException;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.ohdsi.sql.SqlSplit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Rejects analyses that cannot run before any environment is prepared for them: the entry point has to exist, the
+ * result format has to be known and the R entry point has to parse, which is checked by a pool of warm R processes
+ * (see preflight.R). Checks that can be wrong about a valid analysis only log warnings: SQL files are checked for
+ * unterminated literals, comments and unbalanced parentheses and then split into statements, and the files sourced
+ * by the R script are looked up, although the script might generate them. R parse errors only reject the analysis
+ * when the parser runs the R version of its runtime environment, newer syntax (e.g. |> or \(x)) fails to parse
+ * on an older R. A parser failure does not reject the analysis, the check is skipped then.
+ */
+@Component
+@ManagedResource
+public class PreflightValidator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PreflightValidator.class);
+
+    private static final String SCRIPT_RESOURCE = "classpath:/preflight.R";
+    private static final PathMatcher SQL_MATCHER = FileSystems.getDefault().getPathMatcher("glob:**.sql");
+    // PostgreSQL dollar quoting, e.g. function bodies
+    private static final Pattern DOLLAR_QUOTE = Pattern.compile("\\$\\w*\\$");
+    // Literal paths only, e.g. source("R/functions.R") or sys.source(file = 'x.R')
+    private static final Pattern SOURCE = Pattern.compile("(?<![\\w.])(?:sys\\.)?source\\(\\s*(?:file\\s*=\\s*)?([\"'])([^\"'\\n]+)\\1");
+
+    private final ResourceLoader resourceLoader;
+    private final boolean enabled;
+    private final String rscript;
+    private final long timeoutSec;
+
+    private final AtomicLong validated = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong warned = new AtomicLong();
+    private final AtomicLong latencyMicros = new AtomicLong();
+    private final AtomicLong maxLatencyMicros = new AtomicLong();
+    private final AtomicLong parserStarts = new AtomicLong();
+    private final AtomicLong parserFailures = new AtomicLong();
+
+    private volatile boolean parserAvailable;
+    // Version of R the parsers run, reported by preflight.R on start
+    private volatile String parserVersion;
+    // Guarded by this
+    private File script;
+
+    private final List<Parser> parsers = new ArrayList<>();
+    // Idle parsers, each checks one file at a time
+    private final BlockingQueue<Parser> idleParsers = new LinkedBlockingQueue<>();
+    private final ExecutorService parserReaders = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "preflight-parser");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public PreflightValidator(ResourceLoader resourceLoader,
+                              @Value("${runtime.preflight}") boolean enabled,
+                              @Value("${runtime.preflightRscript}") String rscript,
+                              @Value("${runtime.preflightTimeoutSec}") long timeoutSec,
+                              @Value("${runtime.preflightParsers}") int parserCount) {
+
+        this.resourceLoader = resourceLoader;
+        this.enabled = enabled;
+        this.rscript = rscript;
+        this.timeoutSec = timeoutSec;
+        this.parserAvailable = StringUtils.isNotBlank(rscript);
+        for (int i = 0; i < Math.max(1, parserCount); i++) {
+            parsers.add(new Parser());
+        }
+        idleParsers.addAll(parsers);
+    }
+
+    @PreDestroy
+    public synchronized void destroy() {
+
+        parsers.forEach(Parser::stop);
+        parserReaders.shutdownNow();
+        FileUtils.deleteQuietly(script);
+    }
+
+    public void validate(AnalysisSyncRequestDTO analysis, File analysisDir) throws PreflightException {
+
+        validate(analysis, analysisDir, null);
+    }
+
+    /**
+     * @param descriptorBundle runtime environment the R analysis runs in, null if not known
+     * @throws PreflightException listing the problems found if the analysis is not going to run
+     */
+    public void validate(AnalysisSyncRequestDTO analysis, File analysisDir, DescriptorBundle descriptorBundle) throws PreflightException {
+
+        if (!enabled) {
+            return;
+        }
+        long started = System.nanoTime();
+        String executableFileName = analysis.getExecutableFileName();
+        List<String> problems = new ArrayList<>();
+        List<String> warnings = new ArrayList<>();
+        switch (FilenameUtils.getExtension(executableFileName).toLowerCase()) {
+            case "sql":
+                List<File> files = AnalisysUtils.getDirectoryItemsFiltered(analysisDir, SQL_MATCHER);
+                if (files.isEmpty()) {
+                    problems.add("No SQL files found");
+                }
+                for (File file : files) {
+                    warnings.addAll(checkSql(file.getName(), read(file, problems)));
+                }
+                try {
+                    ResultFormat.of(analysis.getResultFormat());
+                } catch (IllegalArgumentException e) {
+                    problems.add(e.getMessage());
+                }
+                break;
+            case "r":
+                File entryPoint = new File(analysisDir, executableFileName);
+                if (!entryPoint.isFile()) {
+                    problems.add(executableFileName + ": file not found");
+                    break;
+                }
+                Optional<String> parseError = parseR(entryPoint).map(error -> executableFileName + ": "
+                        + error.replace(entryPoint.getAbsolutePath(), executableFileName));
+                Optional<String> runtimeVersion = rVersion(descriptorBundle);
+                if (parseError.isPresent() && runtimeVersion.isPresent() && sameMinor(runtimeVersion.get(), parserVersion)) {
+                    problems.add(parseError.get());
+                } else {
+                    parseError.ifPresent(error -> warnings.add(String.format("%s (parsed by R %s, runtime environment has R %s)",
+                            error, parserVersion, runtimeVersion.orElse("unknown"))));
+                }
+                warnings.addAll(checkSources(analysisDir, entryPoint, read(entryPoint, problems)));
+                break;
+            default:
+                return;
+        }
+        long micros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+        validated.incrementAndGet();
+        latencyMicros.addAndGet(micros);
+        maxLatencyMicros.accumulateAndGet(micros, Math::max);
+        if (!warnings.isEmpty()) {
+            warned.incrementAndGet();
+            LOGGER.warn("Analysis id={} might fail, pre-flight validation found:\n - {}", analysis.getId(),
+                    String.join("\n - ", warnings));
+        }
+        if (!problems.isEmpty()) {
+            rejected.incrementAndGet();
+            throw new PreflightException(executableFileName, problems);
+        }
+        LOGGER.debug("Analysis id={} passed pre-flight validation in {} us", analysis.getId(), micros);
+    }
+
+    /**
+     * @return problems found in the SQL file, ignoring SqlRender markup
+     */
+    static List<String> checkSql(String name, String sql) {
+
+        List<String> problems = new ArrayList<>();
+        int depth = 0;
+        int line = 1;
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            int start = line;
+            if (c == '\'' && isPrefixed(sql, i, "Ee")) {
+                int end = skipEscapeString(sql, i);
+                if (end < 0) {
+                    problems.add(String.format("%s:%d: unterminated string literal", name, start));
+                    return problems;
+                }
+                line += StringUtils.countMatches(sql.substring(i, end), '\n');
+                i = end;
+            } else if (c == '\'' && isPrefixed(sql, i, "Qq") && i + 1 < sql.length()) {
+                // Oracle alternative quoting, e.g. q'[it's]'
+                String close = closingDelimiter(sql.charAt(i + 1)) + "'";
+                int end = sql.indexOf(close, i + 2);
+                if (end < 0) {
+                    problems.add(String.format("%s:%d: unterminated string literal", name, start));
+                    return problems;
+                }
+                line += StringUtils.countMatches(sql.substring(i, end), '\n');
+                i = end + close.length();
+            } else if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                // Quotes are escaped by doubling them
+                while (end >= 0 && end + 1 < sql.length() && sql.charAt(end + 1) == c) {
+                    end = sql.indexOf(c, end + 2);
+                }
+                if (end < 0) {
+                    problems.add(String.format("%s:%d: unterminated %s", name, start, c == '\'' ? "string literal" : "quoted identifier"));
+                    return problems;
+                }
+                line += StringUtils.countMatches(sql.substring(i, end), '\n');
+                i = end + 1;
+            } else if (c == '$' && dollarQuote(sql, i).isPresent()) {
+                String tag = dollarQuote(sql, i).get();
+                int end = sql.indexOf(tag, i + tag.length());
+                if (end < 0) {
+                    problems.add(String.format("%s:%d: unterminated %s quoted string", name, start, tag));
+                    return problems;
+                }
+                line += StringUtils.countMatches(sql.substring(i, end), '\n');
+                i = end + tag.length();
+            } else if (sql.startsWith("--", i)) {
+                int end = sql.indexOf('\n', i);
+                i = end < 0 ? sql.length() : end;
+            } else if (sql.startsWith("/*", i)) {
+                int end = sql.indexOf("*/", i + 2);
+                if (end < 0) {
+                    problems.add(String.format("%s:%d: unterminated comment", name, start));
+                    return problems;
+                }
+                line += StringUtils.countMatches(sql.substring(i, end), '\n');
+                i = end + 2;
+            } else {
+                if (c == '\n') {
+                    line++;
+                } else if (c == '(') {
+                    depth++;
+                } else if (c == ')' && --depth < 0) {
+                    problems.add(String.format("%s:%d: unexpected ')'", name, line));
+                    return problems;
+                }
+                i++;
+            }
+        }
+        if (depth > 0) {
+            problems.add(String.format("%s: %d unclosed '('", name, depth));
+            return problems;
+        }
+        try {
+            String[] statements = SqlSplit.splitSql(sql);
+            boolean empty = true;
+            for (String statement : statements) {
+                empty &= StringUtils.isBlank(statement.replaceAll("(?s)--[^\\n]*|/\\*.*?\\*/", ""));
+            }
+            if (empty) {
+                problems.add(name + ": no statements");
+            }
+        } catch (RuntimeException e) {
+            problems.add(name + ": cannot be split into statements, " + e.getMessage());
+        }
+        return problems;
+    }
+
+    /**
+     * @return whether the quote follows one of the prefix letters standing alone, e.g. E'...' but not TYPE'...'
+     */
+    private static boolean isPrefixed(String sql, int quote, String letters) {
+
+        int prefix = quote - 1;
+        // National character literals, e.g. Nq'[...]'
+        int before = prefix > 0 && (sql.charAt(prefix - 1) == 'N' || sql.charAt(prefix - 1) == 'n') ? prefix - 2 : prefix - 1;
+        return prefix >= 0 && letters.indexOf(sql.charAt(prefix)) >= 0
+                && (before < 0 || !Character.isLetterOrDigit(sql.charAt(before)) && sql.charAt(before) != '_');
+    }
+
+    // PostgreSQL escape string, backslash escapes the next character
+    private static int skipEscapeString(String sql, int quote) {
+
+        int i = quote + 1;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\\') {
+                i += 2;
+            } else if (c == '\'' && !sql.startsWith("'", i + 1)) {
+                return i + 1;
+            } else {
+                i += c == '\'' ? 2 : 1;
+            }
+        }
+        return -1;
+    }
+
+    private static char closingDelimiter(char open) {
+
+        switch (open) {
+            case '[':
+                return ']';
+            case '{':
+                return '}';
+            case '(':
+                return ')';
+            case '<':
+                return '>';
+            default:
+                return open;
+        }
+    }
+
+    private static Optional<String> dollarQuote(String sql, int start) {
+
+        Matcher matcher = DOLLAR_QUOTE.matcher(sql).region(start, sql.length());
+        return matcher.lookingAt() ? Optional.of(matcher.group()) : Optional.empty();
+    }
+
+    /**
+     * @return problems with files sourced by the R script using literal paths
+     */
+    static List<String> checkSources(File analysisDir, File entryPoint, String code) {
+
+        List<String> problems = new ArrayList<>();
+        String[] lines = code.split("\n");
+        for (int i = 0; i < lines.length; i++) {
+            String line = lines[i];
+            int comment = line.indexOf('#');
+            Matcher matcher = SOURCE.matcher(line);
+            while (matcher.find() && (comment < 0 || matcher.start() < comment)) {
+                String path = matcher.group(2);
+                boolean local = !path.startsWith("/") && !path.startsWith("~") && !path.contains("://");
+                if (local && !new File(analysisDir, path).exists() && !new File(entryPoint.getParentFile(), path).exists()) {
+                    problems.add(String.format("%s:%d: sourced file %s not found", entryPoint.getName(), i + 1, path));
+                }
+            }
+        }
+        return problems;
+    }
+
+    private static Optional<String> rVersion(DescriptorBundle descriptorBundle) {
+
+        return Optional.ofNullable(descriptorBundle)
+                .map(DescriptorBundle::getDescriptor)
+                .flatMap(descriptor -> descriptor.getExecutionRuntimes().stream()
+                        .filter(runtime -> runtime instanceof RExecutionRuntime)
+                        .map(ExecutionRuntime::getVersion)
+                        .filter(StringUtils::isNotBlank)
+                        .findFirst());
+    }
+
+    /**
+     * @return whether both versions have the same major and minor version, R syntax does not change in patch releases
+     */
+    static boolean sameMinor(String version, String other) {
+
+        if (version == null || other == null) {
+            return false;
+        }
+        String[] parts = version.trim().split("\\.");
+        String[] otherParts = other.trim().split("\\.");
+        return parts.length >= 2 && otherParts.length >= 2 && parts[0].equals(otherParts[0]) && parts[1].equals(otherParts[1]);
+    }
+
+    private static String read(File file, List<String> problems) {
+
+        try {
+            return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            problems.add(file.getName() + ": cannot be read, " + e.getMessage());
+            return "";
+        }
+    }
+
+    /**
+     * @return parse error, empty if the file parses or there is no parser to check it
+     */
+    private Optional<String> parseR(File file) {
+
+        if (!parserAvailable) {
+            return Optional.empty();
+        }
+        Parser parser;
+        try {
+            parser = idleParsers.poll(timeoutSec, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
+        }
+        if (parser == null) {
+            parserFailures.incrementAndGet();
+            LOGGER.warn("No R parser available, syntax of [{}] is not checked", file);
+            return Optional.empty();
+        }
+        try {
+            return parser.parse(file);
+        } finally {
+            idleParsers.add(parser);
+        }
+    }
+
+    private synchronized File script() throws IOException {
+
+        if (script == null) {
+            script = FileResourceUtils.extractResourceToTempFile(resourceLoader, SCRIPT_RESOURCE, "ee", ".R");
+        }
+        return script;
+    }
+
+    /**
+     * Warm R process answering a line per file: OK, ERROR with the parse error or SKIP if the file was not parsed.
+     */
+    private class Parser {
+
+        // Guarded by this
+        private Process process;
+        private Writer input;
+        private BufferedReader output;
+
+        private synchronized Optional<String> parse(File file) {
+
+            try {
+                if (process == null || !process.isAlive()) {
+                    start();
+                }
+                input.write(file.getAbsolutePath() + "\n");
+                input.flush();
+                String result = readLine();
+                if (result == null) {
+                    throw new IOException("parser exited");
+                }
+                if (result.startsWith("SKIP")) {
+                    LOGGER.warn("R syntax of [{}] is not checked: {}", file, result.substring("SKIP".length()).trim());
+                }
+                return result.startsWith("ERROR") ? Optional.of(result.substring("ERROR".length()).trim()) : Optional.empty();
+            } catch (IOException e) {
+                parserFailures.incrementAndGet();
+                LOGGER.warn("R parser failed, syntax of [{}] is not checked: {}", file, e.getMessage());
+                stop();
+                return Optional.empty();
+            }
+        }
+
+        private void start() throws IOException {
+
+            try {
+                process = new ProcessBuilder(rscript, "--vanilla", script().getAbsolutePath())
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+            } catch (IOException e) {
+                parserAvailable = false;
+                LOGGER.info("R parser [{}] is not available, R syntax is not checked before execution: {}", rscript, e.getMessage());
+                throw e;
+            }
+            parserStarts.incrementAndGet();
+            input = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            String version = readLine();
+            if (version == null || !version.startsWith("VERSION")) {
+                throw new IOException("parser did not report its R version");
+            }
+            parserVersion = version.substring("VERSION".length()).trim();
+        }
+
+        private String readLine() throws IOException {
+
+            BufferedReader reader = output;
+            try {
+                return parserReaders.submit(reader::readLine).get(timeoutSec, TimeUnit.SECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                throw new IOException(e.toString(), e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("interrupted", e);
+            }
+        }
+
+        private void stop() {
+
+            if (process != null) {
+                // Closed streams release the reader thread blocked on the output
+                process.destroyForcibly();
+                process = null;
+            }
+        }
+    }
+
+    @ManagedAttribute
+    public long getValidated() {
+
+        return validated.get();
+    }
+
+    @ManagedAttribute
+    public long getRejected() {
+
+        return rejected.get();
+    }
+
+    /**
+     * Analyses let through with problems found by the heuristic checks.
+     */
+    @ManagedAttribute
+    public long getWarned() {
+
+        return warned.get();
+    }
+
+    @ManagedAttribute
+    public long getAvgLatencyMicros() {
+
+        long count = validated.get();
+        return count == 0 ? 0 : latencyMicros.get() / count;
+    }
+
+    @ManagedAttribute
+    public long getMaxLatencyMicros() {
+
+        return maxLatencyMicros.get();
+    }
+
+    @ManagedAttribute
+    public long getParserStarts() {
+
+        return parserStarts.get();
+    }
+
+    @ManagedAttribute
+    public long getParserFailures() {
+
+        return parserFailures.get();
+    }
+}
@@ -0,0 +1,154 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Threads reading output of the running processes. Every stream occupies a thread while the process is running,
+ * pending output is published by a single shared flusher. Streams are never queued: a stream waiting for a thread
+ * would not be read and its process would block on the full pipe. The pool is sized for every process allowed to
+ * run and every idle warm session (see {@link JailPool}), a stream over the limit is rejected.
+ */
+@Component
+@ManagedResource
+public class ProcessStreamExecutor {
+
+    private static final long KEEP_ALIVE_SEC = 60;
+    // stdout and stderr, when not merged
+    static final int STREAMS_PER_PROCESS = 2;
+    // Streams of processes still being stopped or drained while their successors start
+    static final int HEADROOM_THREADS = 4;
+
+    private final ThreadPoolExecutor readers;
+    private final ScheduledExecutorService flusher;
+    private final Set<StdoutPump> pumps = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param maxThreads limit of reading threads, derived from the number of processes if not positive
+     * @param idleWorkers warm sessions which may be waiting for an analysis at the same time
+     * @throws IllegalArgumentException if the limit does not cover the streams of every process allowed to run
+     */
+    public ProcessStreamExecutor(@Value("${executor.streams.maxThreads:0}") int maxThreads,
+                                 @Value("${runtime.maxProcesses}") int maxProcesses,
+                                 @Value("#{${runtimeservice.dist.warmSessions:false} ? ${runtimeservice.dist.jailPoolMaxSize:0} : 0}") int idleWorkers) {
+
+        int required = requiredThreads(maxProcesses, idleWorkers);
+        if (maxThreads > 0 && maxThreads < required) {
+            throw new IllegalArgumentException(String.format(
+                    "executor.streams.maxThreads=%d is too small for runtime.maxProcesses=%d and %d warm sessions, at least %d are required",
+                    maxThreads, maxProcesses, idleWorkers, required));
+        }
+        int threads = maxThreads > 0 ? maxThreads : required;
+        readers = new ThreadPoolExecutor(0, threads, KEEP_ALIVE_SEC, TimeUnit.SECONDS,
+                new SynchronousQueue<>(), daemonThreads("process-stream-"));
+        flusher = Executors.newSingleThreadScheduledExecutor(daemonThreads("process-stream-flusher-"));
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        flusher.shutdownNow();
+        readers.shutdownNow();
+    }
+
+    /**
+     * Starts reading the stream, pending output is published every flush interval.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if every thread is taken
+     */
+    public Future<String> submit(StdoutPump pump, long flushIntervalMillis) {
+
+        pumps.add(pump);
+        ScheduledFuture<?> ticker = flusher.scheduleWithFixedDelay(pump::tick, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        try {
+            return readers.submit(() -> {
+                try {
+                    return pump.call();
+                } finally {
+                    ticker.cancel(false);
+                    pumps.remove(pump);
+                }
+            });
+        } catch (RuntimeException e) {
+            ticker.cancel(false);
+            pumps.remove(pump);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts reading a stream not published anywhere, such as output of a warm session before an analysis takes it.
+     *
+     * @throws java.util.concurrent.RejectedExecutionException if every thread is taken
+     */
+    public Future<?> submit(Runnable reader) {
+
+        return readers.submit(reader);
+    }
+
+    static int requiredThreads(int maxProcesses, int idleWorkers) {
+
+        // Idle warm session has its stderr merged into stdout
+        return Math.max(1, maxProcesses) * STREAMS_PER_PROCESS + Math.max(0, idleWorkers) + HEADROOM_THREADS;
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+
+        AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    @ManagedAttribute
+    public int getPoolSize() {
+
+        return readers.getPoolSize();
+    }
+
+    @ManagedAttribute
+    public int getLargestPoolSize() {
+
+        return readers.getLargestPoolSize();
+    }
+
+    @ManagedAttribute
+    public int getMaximumPoolSize() {
+
+        return readers.getMaximumPoolSize();
+    }
+
+    @ManagedAttribute
+    public int getActiveStreams() {
+
+        return readers.getActiveCount();
+    }
+
+    @ManagedAttribute
+    public long getPendingChars() {
+
+        return pumps.stream().mapToLong(StdoutPump::getPending).sum();
+    }
+
+    @ManagedAttribute
+    public long getMaxPendingChars() {
+
+        return pumps.stream().mapToLong(StdoutPump::getPending).max().orElse(0);
+    }
+}
@@ -0,0 +1,182 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Watches running processes from a single timer thread: reports their exit and terminates the ones
+ * running longer than their timeout, so that no thread has to block waiting for a process.
+ * Termination signals the whole process tree with TERM and then with KILL after a grace period. Processes of the tree
+ * are recorded with their start time, so that a pid reused by another process meanwhile is not signalled.
+ */
+@Component
+@ManagedResource
+public class ProcessSupervisor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessSupervisor.class);
+
+    private static final long SWEEP_MILLIS = 250;
+    private static final long KILL_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private final AtomicLong timedOut = new AtomicLong();
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    public void init() {
+
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "process-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sweep, SWEEP_MILLIS, SWEEP_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        timer.shutdownNow();
+    }
+
+    /**
+     * @return future completed with the exit code once the process is gone
+     */
+    public CompletableFuture<Integer> watch(Process process, long timeoutSec, Long submissionId, boolean privileged) {
+
+        Watch watch = new Watch(process, submissionId, System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutSec), privileged);
+        watches.add(watch);
+        return watch.exit;
+    }
+
+    /**
+     * Starts termination of the process tree, the future returned by {@link #watch} completes once the process is gone.
+     *
+     * @return false if the process is not watched
+     */
+    public boolean terminate(Process process) {
+
+        for (Watch watch : watches) {
+            if (watch.process == process) {
+                // Picked up by the next sweep
+                watch.deadline = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void sweep() {
+
+        long now = System.currentTimeMillis();
+        for (Watch watch : watches) {
+            try {
+                if (!watch.process.isAlive()) {
+                    watches.remove(watch);
+                    if (watch.tree != null) {
+                        // Descendants ignoring TERM must not outlive the terminated process
+                        ProcessTree.signal(unchanged(watch.tree), "KILL", watch.privileged);
+                    }
+                    watch.exit.complete(watch.process.exitValue());
+                } else if (now >= watch.deadline) {
+                    if (watch.tree == null) {
+                        LOGGER.warn("Execution id={} is being terminated", watch.submissionId);
+                        if (watch.deadline > 0) {
+                            timedOut.incrementAndGet();
+                        }
+                        watch.tree = tree(watch);
+                        ProcessTree.signal(unchanged(watch.tree), "TERM", watch.privileged);
+                        watch.process.destroy();
+                    } else {
+                        LOGGER.warn("Execution id={} did not stop, killing it", watch.submissionId);
+                        // Descendants started meanwhile are killed as well
+                        watch.tree.putAll(tree(watch));
+                        ProcessTree.signal(unchanged(watch.tree), "KILL", watch.privileged);
+                        watch.process.destroyForcibly();
+                    }
+                    watch.deadline = now + KILL_GRACE_MILLIS;
+                }
+            } catch (RuntimeException e) {
+                watches.remove(watch);
+                watch.exit.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * @return start time by pid of the process and its descendants
+     */
+    private static Map<Long, Long> tree(Watch watch) {
+
+        Map<Long, Long> tree = new LinkedHashMap<>();
+        long pid = ProcessTree.pidOf(watch.process);
+        if (pid > 0) {
+            for (Long member : ProcessTree.withDescendants(pid)) {
+                ProcessStats.read(member).ifPresent(stats -> tree.put(member, stats.getStartTime()));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * Drops the processes that are gone or whose pid now belongs to another process.
+     *
+     * @return pids still running the recorded processes
+     */
+    static List<Long> unchanged(Map<Long, Long> tree) {
+
+        tree.entrySet().removeIf(entry -> !ProcessStats.read(entry.getKey())
+                .filter(stats -> stats.getStartTime() == entry.getValue())
+                .isPresent());
+        return new ArrayList<>(tree.keySet());
+    }
+
+    @ManagedAttribute
+    public int getWatched() {
+
+        return watches.size();
+    }
+
+    @ManagedAttribute
+    public long getTimedOut() {
+
+        return timedOut.get();
+    }
+
+    private static class Watch {
+
+        private final Process process;
+        private final Long submissionId;
+        private final boolean privileged;
+        private final CompletableFuture<Integer> exit = new CompletableFuture<>();
+        private volatile long deadline;
+        // Start time by pid of the processes signalled so far, accessed by the timer thread only
+        private Map<Long, Long> tree;
+
+        private Watch(Process process, Long submissionId, long deadline, boolean privileged) {
+
+            this.process = process;
+            this.submissionId = submissionId;
+            this.deadline = deadline;
+            this.privileged = privileged;
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import com.odysseusinc.arachne.executionengine.util.IoCounters;
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Resource usage of an analysis process tree: summary and a time series of samples. Counters of processes that
+ * already exited are added to running totals as last seen. IO is taken from the cgroup of the tree when there is
+ * one and is left out (null) if the counters of some process could not be read. The series is thinned out by half
+ * each time it reaches the size limit, so that long analyses keep a bounded profile covering the whole run.
+ */
+@JsonPropertyOrder({"analysisId", "intervalMillis", "wallMillis", "cpuMillis", "peakRssMb", "readBytes", "writeBytes",
+        "peakProcesses", "samples"})
+public class ResourceProfile {
+
+    static final int MAX_SAMPLES = 720;
+
+    private final Long analysisId;
+    private final long rootPid;
+    private final File group;
+    private final boolean privileged;
+    private final long started;
+    private final long intervalMillis;
+
+    // Guarded by this
+    private Map<String, ProcessStats> running = new HashMap<>();
+    private long exitedCpuMillis;
+    private long exitedReadBytes;
+    private long exitedWriteBytes;
+    private boolean ioUnavailable;
+    private IoCounters groupIo;
+    private final List<Sample> samples = new ArrayList<>();
+    private int stride = 1;
+    private long recorded;
+    private long finished;
+    private long peakRssKb;
+    private int peakProcesses;
+
+    public ResourceProfile(Long analysisId, long rootPid, long started, long intervalMillis) {
+
+        this(analysisId, rootPid, null, false, started, intervalMillis);
+    }
+
+    /**
+     * @param group cgroup of the tree to read IO counters from, null if none
+     * @param privileged whether the processes run as another user, so that their IO counters are read with sudo
+     */
+    public ResourceProfile(Long analysisId, long rootPid, File group, boolean privileged, long started, long intervalMillis) {
+
+        this.analysisId = analysisId;
+        this.rootPid = rootPid;
+        this.group = group;
+        this.privileged = privileged;
+        this.started = started;
+        this.intervalMillis = intervalMillis;
+    }
+
+    public synchronized void record(long time, Collection<ProcessStats> tree) {
+
+        record(time, tree, null);
+    }
+
+    /**
+     * @param groupIo IO counters of the cgroup, null if not read. Process counters are not used for IO once given.
+     */
+    public synchronized void record(long time, Collection<ProcessStats> tree, IoCounters groupIo) {
+
+        long rssKb = 0;
+        Map<String, ProcessStats> current = new HashMap<>();
+        for (ProcessStats stats : tree) {
+            current.put(stats.getPid() + ":" + stats.getStartTime(), stats);
+            rssKb += stats.getRssKb();
+            ioUnavailable |= !stats.hasIo();
+        }
+        running.forEach((key, stats) -> {
+            if (!current.containsKey(key)) {
+                exitedCpuMillis += stats.getCpuMillis();
+                exitedReadBytes += Math.max(0, stats.getReadBytes());
+                exitedWriteBytes += Math.max(0, stats.getWriteBytes());
+            }
+        });
+        running = current;
+        if (groupIo != null) {
+            this.groupIo = groupIo;
+        }
+        peakRssKb = Math.max(peakRssKb, rssKb);
+        peakProcesses = Math.max(peakProcesses, tree.size());
+        if (recorded++ % stride == 0) {
+            samples.add(new Sample(time - started, tree.size(), getCpuMillis(), rssKb / 1024, getReadBytes(), getWriteBytes()));
+            if (samples.size() >= MAX_SAMPLES) {
+                for (int i = samples.size() - 1; i > 0; i -= 2) {
+                    samples.remove(i);
+                }
+                stride *= 2;
+            }
+        }
+    }
+
+    public synchronized void finish(long time) {
+
+        finished = time;
+    }
+
+    public Long getAnalysisId() {
+
+        return analysisId;
+    }
+
+    @JsonIgnore
+    public long getRootPid() {
+
+        return rootPid;
+    }
+
+    @JsonIgnore
+    public Optional<File> getGroup() {
+
+        return Optional.ofNullable(group);
+    }
+
+    @JsonIgnore
+    public boolean isPrivileged() {
+
+        return privileged;
+    }
+
+    public long getIntervalMillis() {
+
+        return intervalMillis;
+    }
+
+    public synchronized long getWallMillis() {
+
+        return (finished > 0 ? finished : System.currentTimeMillis()) - started;
+    }
+
+    public synchronized long getCpuMillis() {
+
+        return exitedCpuMillis + running.values().stream().mapToLong(ProcessStats::getCpuMillis).sum();
+    }
+
+    public synchronized long getPeakRssMb() {
+
+        return peakRssKb / 1024;
+    }
+
+    /**
+     * @return null if not known
+     */
+    public synchronized Long getReadBytes() {
+
+        if (groupIo != null) {
+            return groupIo.getReadBytes();
+        }
+        return ioUnavailable ? null : exitedReadBytes + running.values().stream().mapToLong(ProcessStats::getReadBytes).sum();
+    }
+
+    /**
+     * @return null if not known
+     */
+    public synchronized Long getWriteBytes() {
+
+        if (groupIo != null) {
+            return groupIo.getWriteBytes();
+        }
+        return ioUnavailable ? null : exitedWriteBytes + running.values().stream().mapToLong(ProcessStats::getWriteBytes).sum();
+    }
+
+    public synchronized int getPeakProcesses() {
+
+        return peakProcesses;
+    }
+
+    public synchronized List<Sample> getSamples() {
+
+        return new ArrayList<>(samples);
+    }
+
+    @Override
+    public synchronized String toString() {
+
+        return String.format("wall %d ms, cpu %d ms, peak rss %d MB, read %s bytes, written %s bytes, peak processes %d",
+                getWallMillis(), getCpuMillis(), getPeakRssMb(), Objects.toString(getReadBytes(), "unknown"),
+                Objects.toString(getWriteBytes(), "unknown"), peakProcesses);
+    }
+
+    @JsonPropertyOrder({"offsetMillis", "processes", "cpuMillis", "rssMb", "readBytes", "writeBytes"})
+    public static class Sample {
+
+        private final long offsetMillis;
+        private final int processes;
+        private final long cpuMillis;
+        private final long rssMb;
+        private final Long readBytes;
+        private final Long writeBytes;
+
+        private Sample(long offsetMillis, int processes, long cpuMillis, long rssMb, Long readBytes, Long writeBytes) {
+
+            this.offsetMillis = offsetMillis;
+            this.processes = processes;
+            this.cpuMillis = cpuMillis;
+            this.rssMb = rssMb;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+        }
+
+        public long getOffsetMillis() {
+
+            return offsetMillis;
+        }
+
+        public int getProcesses() {
+
+            return processes;
+        }
+
+        public long getCpuMillis() {
+
+            return cpuMillis;
+        }
+
+        public long getRssMb() {
+
+            return rssMb;
+        }
+
+        public Long getReadBytes() {
+
+            return readBytes;
+        }
+
+        public Long getWriteBytes() {
+
+            return writeBytes;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.odysseusinc.arachne.executionengine.util.IoCounters;
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Samples CPU time, memory and disk IO of running analysis process trees from procfs. All trees are sampled
+ * from a single timer thread with one scan of procfs per interval. Disk IO comes from the cgroup of the analysis
+ * if it has one, otherwise from the processes, with sudo for the ones running as root in a jail.
+ */
+@Component
+@ManagedResource
+public class ResourceSampler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResourceSampler.class);
+
+    public static final String PROFILE_FILE = "resource_profile.json";
+
+    private final long intervalMillis;
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Set<ResourceProfile> profiles = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong cpuMillis = new AtomicLong();
+    private final AtomicLong readBytes = new AtomicLong();
+    private final AtomicLong writeBytes = new AtomicLong();
+    private final AtomicLong maxPeakRssMb = new AtomicLong();
+    private volatile long lastSweepMicros;
+
+    private ScheduledExecutorService timer;
+
+    public ResourceSampler(@Value("${runtime.samplingIntervalMillis}") long intervalMillis) {
+
+        this.intervalMillis = intervalMillis;
+    }
+
+    @PostConstruct
+    public void init() {
+
+        if (intervalMillis <= 0) {
+            LOGGER.info("Analysis resource sampling is disabled");
+            return;
+        }
+        timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "resource-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.scheduleWithFixedDelay(this::sweep, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * @param group cgroup the process tree runs in, if any
+     * @param privileged whether the processes run as another user
+     * @return profile being collected until {@link #stop} is called, empty if sampling is disabled
+     */
+    public Optional<ResourceProfile> start(Process process, Long analysisId, Optional<File> group, boolean privileged) {
+
+        long pid = ProcessTree.pidOf(process);
+        if (timer == null || pid <= 0) {
+            return Optional.empty();
+        }
+        ResourceProfile profile = new ResourceProfile(analysisId, pid, group.orElse(null), privileged,
+                System.currentTimeMillis(), intervalMillis);
+        profiles.add(profile);
+        return Optional.of(profile);
+    }
+
+    public void stop(ResourceProfile profile) {
+
+        if (!profiles.remove(profile)) {
+            return;
+        }
+        profile.finish(System.currentTimeMillis());
+        completed.incrementAndGet();
+        cpuMillis.addAndGet(profile.getCpuMillis());
+        Optional.ofNullable(profile.getReadBytes()).ifPresent(readBytes::addAndGet);
+        Optional.ofNullable(profile.getWriteBytes()).ifPresent(writeBytes::addAndGet);
+        maxPeakRssMb.accumulateAndGet(profile.getPeakRssMb(), Math::max);
+    }
+
+    /**
+     * Writes the profile into the analysis results.
+     */
+    public void write(ResourceProfile profile, File directory) throws IOException {
+
+        mapper.writerWithDefaultPrettyPrinter().writeValue(new File(directory, PROFILE_FILE), profile);
+    }
+
+    private void sweep() {
+
+        if (profiles.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        try {
+            Map<Long, List<Long>> children = ProcessTree.children();
+            long now = System.currentTimeMillis();
+            for (ResourceProfile profile : profiles) {
+                List<ProcessStats> tree = ProcessTree.withDescendants(profile.getRootPid(), children).stream()
+                        .map(ProcessStats::read)
+                        .filter(Optional::isPresent)
+                        .map(Optional::get)
+                        .collect(Collectors.toList());
+                Optional<IoCounters> groupIo = profile.getGroup().flatMap(IoCounters::readCgroup);
+                if (!groupIo.isPresent() && profile.isPrivileged()) {
+                    tree = ProcessStats.withPrivilegedIo(tree);
+                }
+                profile.record(now, tree, groupIo.orElse(null));
+            }
+        } catch (RuntimeException e) {
+            LOGGER.warn("Failed to sample analysis resources", e);
+        }
+        lastSweepMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - started);
+    }
+
+    @ManagedAttribute
+    public long getIntervalMillis() {
+
+        return intervalMillis;
+    }
+
+    @ManagedAttribute
+    public int getActive() {
+
+        return profiles.size();
+    }
+
+    @ManagedAttribute
+    public long getCompleted() {
+
+        return completed.get();
+    }
+
+    @ManagedAttribute
+    public long getCpuMillis() {
+
+        return cpuMillis.get() + profiles.stream().mapToLong(ResourceProfile::getCpuMillis).sum();
+    }
+
+    @ManagedAttribute
+    public long getReadBytes() {
+
+        return readBytes.get() + profiles.stream().map(ResourceProfile::getReadBytes).filter(Objects::nonNull).mapToLong(Long::longValue).sum();
+    }
+
+    @ManagedAttribute
+    public long getWriteBytes() {
+
+        return writeBytes.get() + profiles.stream().map(ResourceProfile::getWriteBytes).filter(Objects::nonNull).mapToLong(Long::longValue).sum();
+    }
+
+    @ManagedAttribute
+    public long getMaxPeakRssMb() {
+
+        return Math.max(maxPeakRssMb.get(), profiles.stream().mapToLong(ResourceProfile::getPeakRssMb).max().orElse(0));
+    }
+
+    @ManagedAttribute
+    public long getLastSweepMicros() {
+
+        return lastSweepMicros;
+    }
+}
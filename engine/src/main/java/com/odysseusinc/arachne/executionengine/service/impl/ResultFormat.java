@@ -0,0 +1,98 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * File format of SQL analysis results, requested by name in the analysis.
+ */
+public enum ResultFormat {
+    CSV("csv"),
+    CSV_GZ("csv.gz"),
+    CSV_ZST("csv.zst"),
+    PARQUET("parquet"),
+    ARROW("arrow");
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String extension;
+
+    ResultFormat(String extension) {
+
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+
+        return extension;
+    }
+
+    /**
+     * Opens a writer of the format. CSV writers append to the file, compressed ones write a frame per writer,
+     * concatenated frames are read back as a single stream. Columnar writers replace the file and take a single
+     * result set.
+     *
+     * @param separator CSV separator, ignored by the columnar formats
+     * @param level     compression level: gzip for csv.gz, zstd for csv.zst and parquet, ignored otherwise
+     */
+    public ResultWriter open(Path file, char separator, int level) throws IOException {
+
+        switch (this) {
+            case CSV:
+                return new CsvResultWriter(file, separator);
+            case CSV_GZ:
+                return new CsvResultWriter(Channels.newChannel(new GZIPOutputStream(append(file), BUFFER_SIZE) {
+                    {
+                        def.setLevel(level);
+                    }
+                }), separator);
+            case CSV_ZST:
+                return new CsvResultWriter(Channels.newChannel(new ZstdOutputStream(append(file), level)), separator);
+            case PARQUET:
+                return new ParquetResultWriter(file, level);
+            case ARROW:
+                return new ArrowResultWriter(file);
+            default:
+                throw new IllegalStateException("No writer for result format " + extension);
+        }
+    }
+
+    /**
+     * Whether the compression level of the format is a zstd one.
+     */
+    public boolean isZstd() {
+
+        return this == CSV_ZST || this == PARQUET;
+    }
+
+    /**
+     * @param name extension of the format, CSV if blank
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public static ResultFormat of(String name) {
+
+        if (StringUtils.isBlank(name)) {
+            return CSV;
+        }
+        String extension = StringUtils.removeStart(name.trim().toLowerCase(), ".");
+        return Arrays.stream(values())
+                .filter(value -> value.extension.equals(extension))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException(String.format("Result format %s is unknown, supported: %s",
+                        name, Arrays.stream(values()).map(ResultFormat::getExtension).collect(Collectors.joining(", ")))));
+    }
+
+    private static OutputStream append(Path file) throws IOException {
+
+        return Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,19 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Writes SQL results to a file in one of the {@link ResultFormat}s.
+ */
+public interface ResultWriter extends Closeable {
+
+    /**
+     * Writes the column labels followed by all remaining rows.
+     *
+     * @return number of rows written
+     */
+    long write(ResultSet resultSet) throws SQLException, IOException;
+}
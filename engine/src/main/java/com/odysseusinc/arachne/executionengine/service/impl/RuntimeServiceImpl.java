@@ -25,6 +25,7 @@ package com.odysseusinc.arachne.executionengine.service.impl;
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
 import com.odysseusinc.arachne.commons.types.DBMSType;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResourcesDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultStatusDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRequestDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.DataSourceUnsecuredDTO;
@@ -40,28 +41,37 @@ import com.odysseusinc.arachne.executionengine.model.descriptor.r.RExecutionRunt
 import com.odysseusinc.arachne.executionengine.service.RuntimeService;
 import com.odysseusinc.arachne.executionengine.util.AnalysisCallback;
 import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
 import com.odysseusinc.datasourcemanager.krblogin.KrbConfig;
 import com.odysseusinc.datasourcemanager.krblogin.RuntimeServiceMode;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.Callable;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.function.Consumer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import javax.annotation.PostConstruct;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
@@ -83,11 +93,13 @@ public class RuntimeServiceImpl implements RuntimeService {
     private static final String EXECUTION_COMMAND = "Rscript";
     private static final String ERROR_BUILDING_COMMAND_LOG = "Error building runtime command";
     private static final String EXECUTING_LOG = "Executing:{}";
-    private static final String DESTROYING_PROCESS_LOG = "timeout exceeded, destroying process";
     private static final String EXECUTION_SUCCESS_LOG = "Execution id={} success, ExitCode='{}'";
     private static final String EXECUTION_FAILURE_LOG = "Execution id={} failure, ExitCode='{}'";
     private static final String STDOUT_LOG = "stdout:\n{}";
-    private static final String STDOUT_LOG_DIFF = "stdout update:\n{}";
+    private static final String STDOUT_LOG_FILE = "stdout.log";
+    private static final String CANCELLED_LOG = "Execution id={} cancelled";
+    private static final String CANCELLED_STDOUT = "\r\nAnalysis was cancelled\r\n";
+    private static final String QUOTA_EXCEEDED_STDOUT = "\r\nAnalysis was terminated: %s\r\n";
 
     private static final String RUNTIME_ENV_DATA_SOURCE_NAME = "DATA_SOURCE_NAME";
     private static final String RUNTIME_ENV_DBMS_USERNAME = "DBMS_USERNAME";
@@ -111,15 +123,54 @@ public class RuntimeServiceImpl implements RuntimeService {
     private static final String RUNTIME_ENV_DRIVER_PATH = "JDBC_DRIVER_PATH";
     private static final String RUNTIME_BQ_KEYFILE = "BQ_KEYFILE";
     private static final String RUNTIME_ANALYSIS_ID = "ANALYSIS_ID";
+    static final String RUNTIME_DIST_TREE = "DIST_TREE";
+    static final String RUNTIME_JAIL_PHASE = "JAIL_PHASE";
+    static final String RUNTIME_EXTRACT_THREADS = "EXTRACT_THREADS";
+    static final String RUNTIME_MOUNT_DRIVERS = "MOUNT_DRIVERS";
+    private static final String RUNTIME_CGROUP = "CGROUP";
+    private static final String RUNTIME_SCRATCH = "SCRATCH";
+    private static final String RUNTIME_ENV_TMPDIR = "TMPDIR";
+    private static final String RUNTIME_ENV_ANDROMEDA_TEMP_FOLDER = "ANDROMEDA_TEMP_FOLDER";
+    // Mount point of the scratch directory in the jail, see jail.sh
+    private static final String JAIL_SCRATCH = "/scratch";
+    private static final String KEYSTORE_DIR = "keys";
+    // Variables jail.sh passes into the jail, see CHROOT_DEF
+    private static final List<String> JAIL_ENV = Stream.concat(Stream.of(RUNTIME_ENV_DATA_SOURCE_NAME, RUNTIME_ENV_DBMS_USERNAME,
+            RUNTIME_ENV_DBMS_PASSWORD, RUNTIME_ENV_DBMS_TYPE, RUNTIME_ENV_CONNECTION_STRING, RUNTIME_ENV_DBMS_SCHEMA,
+            RUNTIME_ENV_TARGET_SCHEMA, RUNTIME_ENV_RESULT_SCHEMA, RUNTIME_ENV_COHORT_TARGET_TABLE, RUNTIME_ANALYSIS_ID,
+            RUNTIME_ENV_PATH_KEY, RUNTIME_ENV_HOME_KEY, RUNTIME_ENV_DRIVER_PATH, RUNTIME_ENV_TMPDIR, RUNTIME_ENV_ANDROMEDA_TEMP_FOLDER),
+            CpuSlots.THREAD_VARIABLES.stream())
+            .collect(Collectors.toList());
+    private static final String RUNTIME_ENV_KINIT_PARAMS = "KINIT_PARAMS";
 
     private final ResourceLoader resourceLoader;
     private final ResultStatusEvaluator resultStatusEvaluator;
     private final ThreadPoolTaskExecutor taskExecutor;
+    private final BundleCache bundleCache;
+    private final JailPool jailPool;
+    private final JailCleanup jailCleanup;
+    private final JailReaper jailReaper;
+    private final ProcessStreamExecutor processStreamExecutor;
+    private final ProcessSupervisor processSupervisor;
+    private final ExecutionSlots executionSlots;
+    private final CgroupManager cgroupManager;
+    private final ResourceSampler resourceSampler;
+    private final JailProvisioner jailProvisioner;
+    private final CpuSlots cpuSlots;
+    private final ScratchVolumes scratchVolumes;
+    private final OrphanReaper orphanReaper;
+    private final DiskQuotaMonitor diskQuotaMonitor;
 
     @Value("${runtime.timeOutSec}")
     private int runtimeTimeOutSec;
     @Value("${submission.update.interval}")
     private int submissionUpdateInterval;
+    @Value("${submission.update.flushSize}")
+    private int stdoutFlushSize;
+    @Value("${submission.stdout.headSize}")
+    private int stdoutHeadSize;
+    @Value("${submission.stdout.tailSize}")
+    private int stdoutTailSize;
     @Value("${drivers.location.impala}")
     private String impalaDriversLocation;
     @Value("${drivers.location.bq}")
@@ -143,6 +194,7 @@ public class RuntimeServiceImpl implements RuntimeService {
     private final HiveBulkLoadProperties hiveBulkLoadProperties;
 
     private RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final Map<Long, Execution> executions = new ConcurrentHashMap<>();
 
 
     @Autowired
@@ -150,13 +202,41 @@ public class RuntimeServiceImpl implements RuntimeService {
                               ResourceLoader resourceLoader,
                               ResultStatusEvaluator resultStatusEvaluator,
                               RIsolatedRuntimeProperties rIsolatedRuntimeProps,
-                              ThreadPoolTaskExecutor taskExecutor) {
+                              ThreadPoolTaskExecutor taskExecutor,
+                              BundleCache bundleCache,
+                              JailPool jailPool,
+                              JailCleanup jailCleanup,
+                              JailReaper jailReaper,
+                              ProcessStreamExecutor processStreamExecutor,
+                              ProcessSupervisor processSupervisor,
+                              ExecutionSlots executionSlots,
+                              CgroupManager cgroupManager,
+                              ResourceSampler resourceSampler,
+                              JailProvisioner jailProvisioner,
+                              CpuSlots cpuSlots,
+                              ScratchVolumes scratchVolumes,
+                              OrphanReaper orphanReaper,
+                              DiskQuotaMonitor diskQuotaMonitor) {
 
         this.hiveBulkLoadProperties = hiveBulkLoadProperties;
         this.resourceLoader = resourceLoader;
         this.resultStatusEvaluator = resultStatusEvaluator;
         this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
         this.taskExecutor = taskExecutor;
+        this.bundleCache = bundleCache;
+        this.jailPool = jailPool;
+        this.jailCleanup = jailCleanup;
+        this.jailReaper = jailReaper;
+        this.processStreamExecutor = processStreamExecutor;
+        this.processSupervisor = processSupervisor;
+        this.executionSlots = executionSlots;
+        this.cgroupManager = cgroupManager;
+        this.resourceSampler = resourceSampler;
+        this.jailProvisioner = jailProvisioner;
+        this.cpuSlots = cpuSlots;
+        this.scratchVolumes = scratchVolumes;
+        this.orphanReaper = orphanReaper;
+        this.diskQuotaMonitor = diskQuotaMonitor;
     }
 
     @PostConstruct
@@ -180,46 +260,28 @@ public class RuntimeServiceImpl implements RuntimeService {
     public Future analyze(AnalysisSyncRequestDTO analysis, File file, DescriptorBundle descriptorBundle,
                           StdoutHandlerParams stdoutHandlerParams, AnalysisCallback analysisCallback, KrbConfig krbConfig) {
 
-        return taskExecutor.submit(() -> {
-            try {
-                Long id = analysis.getId();
-                String executableFileName = analysis.getExecutableFileName();
-                DataSourceUnsecuredDTO dataSource = analysis.getDataSource();
-                RuntimeFinishState finishState;
-                try {
-                    File runFile = prepareEnvironment();
-                    prepareEnvironmentInfoFile(file, descriptorBundle);
-                    prepareRprofile(file);
-                    try {
-                        String[] command = buildRuntimeCommand(runFile, file, executableFileName, descriptorBundle.getPath());
-
-                        final Map<String, String> envp = buildRuntimeEnvVariables(dataSource, krbConfig.getIsolatedRuntimeEnvs());
-                        envp.put(RUNTIME_ANALYSIS_ID, analysis.getId().toString());
-                        finishState = runtime(command, envp, file, runtimeTimeOutSec, id, stdoutHandlerParams);
-                        AnalysisResultStatusDTO resultStatusDTO = resultStatusEvaluator.evaluateResultStatus(finishState);
-                        cleanupEnvironment(file);
-                        analysisCallback.execute(resultStatusDTO, finishState.getStdout(), file, null);
-                    } finally {
-                        if (!isExternalJail()) {
-                            FileUtils.deleteQuietly(runFile);
-                        }
-                        FileUtils.deleteQuietly(krbConfig.getComponents().getKeytabPath().toFile());
-                        if (RuntimeServiceMode.ISOLATED == krbConfig.getMode()) {
-                            FileUtils.deleteQuietly(krbConfig.getConfPath().toFile());
-                        }
-                    }
-                } catch (FileNotFoundException ex) {
-                    LOGGER.error(ERROR_BUILDING_COMMAND_LOG, ex);
-                    throw ex;
-                } catch (InterruptedException | IOException | ExecutionException | TimeoutException ex) {
-                    LOGGER.error("", ex);
-                    throw ex;
-                }
-            } catch (Throwable t) {
-                LOGGER.error("Analysis with id={} failed to execute in Runtime Service", analysis.getId(), t);
-                analysisCallback.execute(null, null, file, t);
-            }
-        });
+        Execution execution = new Execution(analysis, file, descriptorBundle, stdoutHandlerParams, analysisCallback, krbConfig);
+        executions.put(analysis.getId(), execution);
+        // Worker threads only prepare and finalize, the number of running processes is limited by the slots
+        execution.slot = executionSlots.acquire(execution.reservedMemoryMb());
+        execution.slot
+                .thenRunAsync(execution::start, taskExecutor)
+                .exceptionally(t -> {
+                    execution.fail(t);
+                    return null;
+                });
+        return execution.result;
+    }
+
+    @Override
+    public boolean cancel(Long id) {
+
+        Execution execution = executions.get(id);
+        if (execution == null) {
+            return false;
+        }
+        execution.cancel();
+        return true;
     }
 
     private void prepareEnvironmentInfoFile(File workDir, DescriptorBundle descriptorBundle) {
@@ -269,33 +331,107 @@ public class RuntimeServiceImpl implements RuntimeService {
         return new File(rIsolatedRuntimeProps.getJailSh()).isFile();
     }
 
-    private void cleanupEnvironment(File directory) throws IOException {
+    /**
+     * @return false if the jail might still have the runtime environment mounted
+     */
+    private boolean cleanupEnvironment(File jailDir, File analysisDir) throws IOException {
+
+        jailProvisioner.discard(jailDir);
+        // Prepared jail is removed once the results are moved back to the analysis folder
+        File target = Objects.equals(jailDir, analysisDir) ? null : analysisDir;
+        if (jailReaper.isEnabled()) {
+            // Moving the environment out is enough to report results, removal is left to the reaper
+            File graveyard = jailReaper.allocate(jailDir.getName());
+            boolean harvested = jailCleanup.harvest(jailDir, target, graveyard);
+            jailReaper.reap(graveyard);
+            if (harvested) {
+                return true;
+            }
+            LOGGER.warn("Failed to move environment out of [{}], removing it in place", jailDir);
+        }
+        return jailCleanup.cleanup(jailDir, target);
+    }
 
-        File cleanupScript = new File(rIsolatedRuntimeProps.getCleanupSh());
-        boolean isExternal = true;
+    /**
+     * Removes the output of an analysis that exceeded its disk quota, so that it is neither packed nor sent along
+     * with the result on a node already short of space. Only the log is kept.
+     */
+    static void discardOutput(File analysisDir) {
 
-        if (!cleanupScript.exists()) {
-            cleanupScript = FileResourceUtils.extractResourceToTempFile(resourceLoader, "classpath:/cleanup.sh", "ee", ".sh");
-            isExternal = false;
+        File[] files = analysisDir.listFiles((dir, name) -> !STDOUT_LOG_FILE.equals(name));
+        for (File output : ArrayUtils.nullToEmpty(files, File[].class)) {
+            if (!FileUtils.deleteQuietly(output)) {
+                LOGGER.warn("Failed to remove output [{}] of analysis over disk quota", output);
+            }
         }
-        Process p = null;
-        try {
-            ProcessBuilder pb = new ProcessBuilder((String[]) ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), new String[]{cleanupScript.getAbsolutePath(), directory.getAbsolutePath()}));
-            p = pb.start();
-            p.waitFor();
-        } catch (InterruptedException ignored) {
-        } finally {
-            if (!isExternal) {
-                FileUtils.deleteQuietly(cleanupScript);
+    }
+
+    private Optional<JailPool.PooledJail> acquirePooledJail(File analysisDir, DescriptorBundle descriptorBundle) {
+
+        Optional<JailPool.PooledJail> jail = jailPool.acquire(descriptorBundle);
+        if (jail.isPresent()) {
+            String[] names = analysisDir.list();
+            boolean clashes = names != null && Arrays.stream(names).anyMatch(name -> new File(jail.get().getDir(), name).exists());
+            if (clashes) {
+                LOGGER.info("Analysis files clash with the runtime environment, prepared jail is not used");
+                jailPool.discard(jail.get());
+                return Optional.empty();
             }
-            if (Objects.nonNull(p)) {
-                closeQuietly(p.getOutputStream());
-                closeQuietly(p.getInputStream());
-                closeQuietly(p.getErrorStream());
+        }
+        return jail;
+    }
+
+    private void moveAnalysisFiles(File analysisDir, File jailDir) throws IOException {
+
+        File[] files = analysisDir.listFiles((dir, name) -> !KEYSTORE_DIR.equals(name));
+        for (File source : ArrayUtils.nullToEmpty(files, File[].class)) {
+            if (source.isDirectory()) {
+                FileUtils.moveDirectoryToDirectory(source, jailDir, false);
+            } else {
+                FileUtils.moveFileToDirectory(source, jailDir, false);
             }
         }
     }
 
+    private Optional<String> extractThreads(AnalysisResourcesDTO limits) {
+
+        // Bundle is extracted within the analysis cgroup, so it should not use more cores than allotted
+        if (cgroupManager.isEnabled() && limits.getCpus() > 0) {
+            return Optional.of(Long.toString((long) Math.ceil(limits.getCpus())));
+        }
+        return rIsolatedRuntimeProps.getExtractThreads() > 0
+                ? Optional.of(Integer.toString(rIsolatedRuntimeProps.getExtractThreads()))
+                : Optional.empty();
+    }
+
+    /**
+     * Request for the warm session (see worker.R): analysis file name and environment lines up to an empty line.
+     *
+     * @return empty if the analysis needs the environment jail.sh sets up on start
+     */
+    static Optional<String> buildWarmSessionRequest(String fileName, Map<String, String> envp) {
+
+        if (StringUtils.isNotBlank(envp.get(RUNTIME_ENV_KINIT_PARAMS)) || envp.containsKey(RUNTIME_BQ_KEYFILE)) {
+            // Credentials are copied into the jail by jail.sh
+            return Optional.empty();
+        }
+        if (StringUtils.containsAny(fileName, '\n', '\t')) {
+            return Optional.empty();
+        }
+        StringBuilder request = new StringBuilder(fileName).append('\n');
+        for (String name : JAIL_ENV) {
+            String value = envp.get(name);
+            if (value == null) {
+                continue;
+            }
+            if (StringUtils.containsAny(value, '\n', '\t')) {
+                return Optional.empty();
+            }
+            request.append(name).append('\t').append(value).append('\n');
+        }
+        return Optional.of(request.append('\n').toString());
+    }
+
     private String[] buildRuntimeCommand(File runFile, File workingDir, String fileName, String bundlePath)
             throws FileNotFoundException {
 
@@ -402,96 +538,406 @@ public class RuntimeServiceImpl implements RuntimeService {
         }
     }
 
-    private RuntimeFinishState runtime(String[] command,
-                                       Map<String, String> envp,
-                                       File activeDir,
-                                       int timeout,
-                                       Long submissionId,
-                                       StdoutHandlerParams stdoutHandlerParams) throws IOException, InterruptedException, ExecutionException, TimeoutException {
-
-        final ProcessBuilder processBuilder = new ProcessBuilder(command)
-                .directory(activeDir)
-                .redirectErrorStream(true);
-        processBuilder.environment().putAll(envp);
-        Process process = null;
+    private String drainStdout(Future<String> future, StdoutPump stdoutPump, Long submissionId) throws InterruptedException, ExecutionException {
+
         try {
-            process = processBuilder.start();
-            final ExecutorService executorService = Executors.newSingleThreadExecutor();
-            final StdoutHandler stdoutHandler = new StdoutHandler(process, stdoutHandlerParams);
-            final Future<String> future = executorService.submit(stdoutHandler);
-            StringBuilder commandBuilder = new StringBuilder();
-            Arrays.stream(command).forEach(c -> commandBuilder.append(" ").append(c));
-            LOGGER.info(EXECUTING_LOG, commandBuilder.toString());
-            process.waitFor(timeout, TimeUnit.SECONDS);
-            if (process.isAlive()) {
-                process.destroy();
-                LOGGER.warn(DESTROYING_PROCESS_LOG);
-            }
-            final String stdout = future.get(submissionUpdateInterval * 2L, TimeUnit.MILLISECONDS);
-            if (process.exitValue() == 0) {
-                LOGGER.info(EXECUTION_SUCCESS_LOG, submissionId, process.exitValue());
-            } else {
-                LOGGER.warn(EXECUTION_FAILURE_LOG, submissionId, process.exitValue());
-            }
-            LOGGER.debug(STDOUT_LOG, stdout);
-            return new RuntimeFinishState(process.exitValue(), stdout);
-        } finally {
-            if (Objects.nonNull(process)) {
-                closeQuietly(process.getOutputStream());
-                closeQuietly(process.getInputStream());
-                closeQuietly(process.getErrorStream());
-            }
+            // EOF comes once every process sharing the output is gone
+            return future.get(submissionUpdateInterval * 2L, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            LOGGER.warn("Execution id={} output is still open after the process exited, using output read so far", submissionId);
+            return stdoutPump.drain();
         }
     }
 
+    /**
+     * State of a single R analysis from preparation of the environment to the result callback.
+     */
+    private class Execution {
+
+        private final AnalysisSyncRequestDTO analysis;
+        private final File file;
+        private final DescriptorBundle descriptorBundle;
+        private final StdoutHandlerParams stdoutHandlerParams;
+        private final AnalysisCallback analysisCallback;
+        private final KrbConfig krbConfig;
+        private final AnalysisResourcesDTO limits;
+        private final CompletableFuture<Void> result = new CompletableFuture<>();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private volatile boolean cancelled;
+        private volatile CompletableFuture<Void> slot;
+        private volatile boolean withdrawn;
+
+        private File runFile;
+        private File workDir;
+        private Optional<BundleCache.Lease> bundleLease = Optional.empty();
+        private Optional<JailPool.PooledJail> pooledJail = Optional.empty();
+        private Optional<File> cgroup = Optional.empty();
+        private Optional<ResourceProfile> profile = Optional.empty();
+        private Optional<Process> worker = Optional.empty();
+        private Optional<CpuSlots.Slot> cpuSlot = Optional.empty();
+        private Optional<File> scratch = Optional.empty();
+        private Optional<DiskQuotaMonitor.Watch> diskWatch = Optional.empty();
+        private volatile String quotaExceeded;
+        private boolean cleanedUp;
+        private boolean unmounted;
+        private Writer log;
+        private volatile Process process;
+        private StdoutPump stdoutPump;
+        private Future<String> stdoutFuture;
+
+        private Execution(AnalysisSyncRequestDTO analysis, File file, DescriptorBundle descriptorBundle,
+                          StdoutHandlerParams stdoutHandlerParams, AnalysisCallback analysisCallback, KrbConfig krbConfig) {
 
+            this.analysis = analysis;
+            this.file = file;
+            this.descriptorBundle = descriptorBundle;
+            this.stdoutHandlerParams = stdoutHandlerParams;
+            this.analysisCallback = analysisCallback;
+            this.krbConfig = krbConfig;
+            this.workDir = file;
+            this.limits = cgroupManager.resolve(analysis.getResources(), descriptorBundle.getDescriptor().getResources());
+        }
 
-    private class StdoutHandler implements Callable<String> {
+        private long reservedMemoryMb() {
 
-        private final Process process;
-        private final Integer submissionUpdateInterval;
-        private final Consumer<String> callback;
+            return Math.max(0, limits.getMemoryMb());
+        }
 
-        private StdoutHandler(Process process, StdoutHandlerParams stdoutHandlerParams) {
+        private void start() {
 
-            this.process = process;
-            this.submissionUpdateInterval = stdoutHandlerParams.getSubmissionUpdateInterval();
-            this.callback = stdoutHandlerParams.getCallback();
+            try {
+                if (cancelled) {
+                    LOGGER.info(CANCELLED_LOG, analysis.getId());
+                    analysisCallback.execute(AnalysisResultStatusDTO.CANCELLED, CANCELLED_STDOUT, file, null);
+                    complete();
+                    return;
+                }
+                runFile = prepareEnvironment();
+                final Map<String, String> envp = buildRuntimeEnvVariables(analysis.getDataSource(), krbConfig.getIsolatedRuntimeEnvs());
+                envp.put(RUNTIME_ANALYSIS_ID, analysis.getId().toString());
+                cpuSlot = cpuSlots.allocate(limits.getCpus());
+                cpuSlot.ifPresent(slot -> slot.putThreadVariables(envp));
+                scratch = scratchVolumes.allocate(analysis.getId());
+                if (scratch.isPresent()) {
+                    boolean isolated = RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode());
+                    String tempDir = isolated ? JAIL_SCRATCH : scratch.get().getAbsolutePath();
+                    if (isolated) {
+                        envp.put(RUNTIME_SCRATCH, scratch.get().getAbsolutePath());
+                    }
+                    envp.put(RUNTIME_ENV_TMPDIR, tempDir);
+                    envp.put(RUNTIME_ENV_ANDROMEDA_TEMP_FOLDER, tempDir);
+                }
+                if (RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode())) {
+                    pooledJail = isExternalJail() ? Optional.empty() : acquirePooledJail(file, descriptorBundle);
+                    if (pooledJail.isPresent()) {
+                        workDir = pooledJail.get().getDir();
+                        moveAnalysisFiles(file, workDir);
+                        envp.put(RUNTIME_JAIL_PHASE, "run");
+                        worker = pooledJail.get().takeWorker();
+                    } else {
+                        bundleLease = bundleCache.acquire(descriptorBundle);
+                        bundleLease.ifPresent(lease -> envp.put(RUNTIME_DIST_TREE, lease.getDir().getAbsolutePath()));
+                    }
+                    extractThreads(limits).ifPresent(threads -> envp.put(RUNTIME_EXTRACT_THREADS, threads));
+                    if (rIsolatedRuntimeProps.isMountDrivers()) {
+                        envp.put(RUNTIME_MOUNT_DRIVERS, Boolean.TRUE.toString());
+                    }
+                    cgroup = cgroupManager.create(analysis.getId(), limits);
+                    cgroup.ifPresent(group -> envp.put(RUNTIME_CGROUP, group.getAbsolutePath()));
+                }
+                prepareEnvironmentInfoFile(workDir, descriptorBundle);
+                prepareRprofile(workDir);
+                String[] command = buildRuntimeCommand(runFile, workDir, analysis.getExecutableFileName(), descriptorBundle.getPath());
+                if (cpuSlot.isPresent()) {
+                    command = cpuSlots.pin(command, cpuSlot.get());
+                }
+                Optional<String> warmRequest = worker.flatMap(w -> buildWarmSessionRequest(analysis.getExecutableFileName(), envp));
+                if (worker.isPresent() && !warmRequest.isPresent()) {
+                    LOGGER.info("Warm session cannot run analysis id={}, starting Rscript", analysis.getId());
+                    JailPool.stopWorker(worker.get());
+                    worker = Optional.empty();
+                }
+                if (warmRequest.isPresent() && cpuSlot.isPresent() && !pinWorker(worker.get(), cpuSlot.get())) {
+                    LOGGER.info("Warm session cannot be pinned to CPU slot for analysis id={}, starting Rscript", analysis.getId());
+                    JailPool.stopWorker(worker.get());
+                    worker = Optional.empty();
+                    warmRequest = Optional.empty();
+                }
+
+                final ProcessBuilder processBuilder = new ProcessBuilder(OrphanReaper.inNewSession(command))
+                        .directory(workDir)
+                        .redirectErrorStream(true);
+                processBuilder.environment().putAll(envp);
+                // Full output goes to the log file, which is sent along with the results
+                log = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(new File(file, STDOUT_LOG_FILE)), StandardCharsets.UTF_8));
+                InputStream output;
+                if (warmRequest.isPresent()) {
+                    if (rIsolatedRuntimeProps.isMountDrivers() || scratch.isPresent()) {
+                        mountVolumes(command, envp);
+                    }
+                    process = worker.get();
+                    worker = Optional.empty();
+                    output = pooledJail.get().takeOutput(process);
+                    long pid = ProcessTree.pidOf(process);
+                    cgroup.filter(group -> pid > 0).ifPresent(group -> cgroupManager.attach(group, ProcessTree.withDescendants(pid)));
+                    FileUtils.deleteQuietly(new File(workDir, JailPool.WORKER_SCRIPT));
+                    try (Writer request = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8)) {
+                        request.write(warmRequest.get());
+                    }
+                    command = new String[]{"warm session", analysis.getExecutableFileName()};
+                } else {
+                    if (RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode()) && !isExternalJail()) {
+                        jailProvisioner.stage(workDir, envp, JAIL_ENV);
+                    }
+                    process = processBuilder.start();
+                    output = process.getInputStream();
+                }
+                orphanReaper.track(analysis.getId(), process, RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode()));
+                profile = resourceSampler.start(process, analysis.getId(), cgroup,
+                        RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode()));
+                diskWatch = diskQuotaMonitor.watch(analysis.getId(), workDir, scratch, this::exceedQuota);
+                final int flushInterval = stdoutHandlerParams.getSubmissionUpdateInterval();
+                final StdoutWindow window = new StdoutWindow(stdoutHeadSize, stdoutTailSize, STDOUT_LOG_FILE);
+                stdoutPump = new StdoutPump(output, window, log,
+                        stdoutFlushSize, flushInterval, stdoutHandlerParams.getCallback());
+                stdoutFuture = processStreamExecutor.submit(stdoutPump, flushInterval);
+                StringBuilder commandBuilder = new StringBuilder();
+                Arrays.stream(command).forEach(c -> commandBuilder.append(" ").append(c));
+                LOGGER.info(EXECUTING_LOG, commandBuilder.toString());
+                processSupervisor.watch(process, runtimeTimeOutSec, analysis.getId(), RuntimeServiceMode.ISOLATED.equals(getRuntimeServiceMode()))
+                        .whenCompleteAsync((exitCode, t) -> {
+                            if (t == null) {
+                                finish(exitCode);
+                            } else {
+                                fail(t);
+                            }
+                        }, taskExecutor)
+                        .exceptionally(t -> {
+                            fail(t);
+                            return null;
+                        });
+                if (cancelled) {
+                    processSupervisor.terminate(process);
+                }
+            } catch (FileNotFoundException ex) {
+                LOGGER.error(ERROR_BUILDING_COMMAND_LOG, ex);
+                fail(ex);
+            } catch (Throwable t) {
+                fail(t);
+            }
         }
 
-        @Override
-        public String call() throws Exception {
+        private void finish(int exitCode) {
 
-            StringBuilder stdout = new StringBuilder();
             try {
-                do {
-                    Thread.sleep(submissionUpdateInterval);
-                    InputStream inputStream = process.getInputStream();
-                    final String stdoutDiff = getStdoutDiff(inputStream);
-                    stdout.append(stdoutDiff);
-                    if (callback != null) {
-                        callback.accept(stdoutDiff);
+                Long id = analysis.getId();
+                final String stdout = drainStdout(stdoutFuture, stdoutPump, id);
+                if (exitCode == 0) {
+                    LOGGER.info(EXECUTION_SUCCESS_LOG, id, exitCode);
+                } else {
+                    LOGGER.warn(EXECUTION_FAILURE_LOG, id, exitCode);
+                }
+                LOGGER.debug(STDOUT_LOG, stdout);
+                String reason = quotaExceeded;
+                String finalStdout = cancelled ? stdout + CANCELLED_STDOUT
+                        : reason != null ? stdout + String.format(QUOTA_EXCEEDED_STDOUT, reason) : stdout;
+                RuntimeFinishState finishState = new RuntimeFinishState(exitCode, finalStdout);
+                AnalysisResultStatusDTO resultStatusDTO = cancelled
+                        ? AnalysisResultStatusDTO.CANCELLED
+                        : reason != null ? AnalysisResultStatusDTO.FAILED : resultStatusEvaluator.evaluateResultStatus(finishState);
+                if (cancelled) {
+                    LOGGER.info(CANCELLED_LOG, id);
+                }
+                closeProcess();
+                stopSampling();
+                stopDiskWatch();
+                unmounted = cleanupEnvironment(workDir, file);
+                cleanedUp = true;
+                if (reason != null) {
+                    discardOutput(file);
+                }
+                analysisCallback.execute(resultStatusDTO, finishState.getStdout(), file, null);
+                complete();
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        private void cancel() {
+
+            cancelled = true;
+            Process started = process;
+            if (started != null) {
+                processSupervisor.terminate(started);
+            } else if (executionSlots.withdraw(slot)) {
+                // Not going to wait for a slot just to report cancellation
+                withdrawn = true;
+                taskExecutor.execute(this::start);
+            }
+        }
+
+        private void exceedQuota(String reason) {
+
+            quotaExceeded = reason;
+            Process started = process;
+            if (started != null) {
+                processSupervisor.terminate(started);
+            }
+        }
+
+        private void fail(Throwable t) {
+
+            Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+            if (finished.get()) {
+                LOGGER.error("Analysis with id={} failed after it was completed", analysis.getId(), cause);
+                return;
+            }
+            LOGGER.error("Analysis with id={} failed to execute in Runtime Service", analysis.getId(), cause);
+            try {
+                if (process != null && process.isAlive()) {
+                    process.destroyForcibly();
+                }
+                release();
+                analysisCallback.execute(null, null, file, cause);
+            } finally {
+                complete();
+            }
+        }
+
+        private void complete() {
+
+            if (finished.compareAndSet(false, true)) {
+                try {
+                    release();
+                } finally {
+                    executions.remove(analysis.getId(), this);
+                    if (!withdrawn) {
+                        executionSlots.release(reservedMemoryMb());
                     }
-                    if (!stdoutDiff.isEmpty()) {
-                        LOGGER.debug(STDOUT_LOG_DIFF, stdoutDiff);
+                    result.complete(null);
+                }
+            }
+        }
+
+        private void mountVolumes(String[] command, Map<String, String> envp) throws IOException, InterruptedException {
+
+            ProcessBuilder pb = new ProcessBuilder(command).directory(workDir).inheritIO();
+            pb.environment().putAll(envp);
+            pb.environment().put(RUNTIME_JAIL_PHASE, "mounts");
+            int exitCode = pb.start().waitFor();
+            if (exitCode != 0) {
+                throw new IOException("Failed to mount volumes of warm session, jail.sh finished with exit code " + exitCode);
+            }
+        }
+
+        /**
+         * Binds every thread of the idle warm session to the CPU slot, as the cold command is bound with taskset.
+         * The thread counts cannot be changed once R and BLAS are loaded, so the session must have been started
+         * with the counts of a slot of the same size.
+         */
+        private boolean pinWorker(Process process, CpuSlots.Slot slot) {
+
+            long pid = ProcessTree.pidOf(process);
+            return pid > 0 && pooledJail.map(JailPool.PooledJail::getWorkerThreads).orElse(0) == slot.size()
+                    && cpuSlots.pin(ProcessTree.withDescendants(pid), slot, true);
+        }
+
+        private void stopWorker() {
+
+            worker.ifPresent(JailPool::stopWorker);
+            worker = Optional.empty();
+        }
+
+        private void stopSampling() {
+
+            profile.ifPresent(resources -> {
+                resourceSampler.stop(resources);
+                LOGGER.info("Execution id={} resources: {}", analysis.getId(), resources);
+                try {
+                    resourceSampler.write(resources, file);
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to write resource profile of analysis id={}", analysis.getId(), e);
+                }
+            });
+            profile = Optional.empty();
+        }
+
+        private void stopDiskWatch() {
+
+            diskWatch.ifPresent(watch -> {
+                diskQuotaMonitor.release(watch);
+                LOGGER.info("Execution id={} output peak {} MB", analysis.getId(), watch.getPeakBytes() / FileUtils.ONE_MB);
+            });
+            diskWatch = Optional.empty();
+        }
+
+        private void release() {
+
+            closeProcess();
+            stopWorker();
+            stopSampling();
+            stopDiskWatch();
+            orphanReaper.release(analysis.getId());
+            jailProvisioner.discard(workDir);
+            if (runFile != null && !isExternalJail()) {
+                FileUtils.deleteQuietly(runFile);
+            }
+            FileUtils.deleteQuietly(krbConfig.getComponents().getKeytabPath().toFile());
+            if (RuntimeServiceMode.ISOLATED == krbConfig.getMode()) {
+                FileUtils.deleteQuietly(krbConfig.getConfPath().toFile());
+            }
+            if (bundleLease.isPresent() || pooledJail.isPresent()) {
+                // Cached tree must not be released while the jail still has it mounted
+                if (!cleanedUp) {
+                    cleanedUp = true;
+                    try {
+                        unmounted = cleanupEnvironment(workDir, file);
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to clean up environment of analysis id={}", analysis.getId(), e);
                     }
-                } while (process.isAlive());
-            } catch (IOException e) {
-                LOGGER.warn("Process was destroyed during attempt to write stdout");
+                }
+                Optional<BundleCache.Lease> lease = bundleLease;
+                Optional<JailPool.PooledJail> jail = pooledJail;
+                File jailDir = workDir;
+                Runnable release = () -> {
+                    lease.ifPresent(BundleCache.Lease::close);
+                    jail.ifPresent(pooled -> {
+                        // Results were moved out by the first cleanup attempt or are lost with the jail anyway
+                        FileUtils.deleteQuietly(jailDir);
+                        pooled.close();
+                    });
+                };
+                if (unmounted) {
+                    release.run();
+                } else {
+                    LOGGER.warn("Environment of analysis id={} may still be mounted in [{}], cached tree is released once it is cleaned up",
+                            analysis.getId(), jailDir);
+                    jailReaper.retryCleanup(jailDir, release);
+                }
+                bundleLease = Optional.empty();
+                pooledJail = Optional.empty();
             }
-            return stdout.toString();
+            cgroup.ifPresent(group -> {
+                long peakMb = cgroupManager.remove(group, descriptorBundle.getDescriptor().getId());
+                LOGGER.info("Execution id={} peak memory {} MB, limit {} MB", analysis.getId(), peakMb, limits.getMemoryMb());
+            });
+            cgroup = Optional.empty();
+            cpuSlot.ifPresent(cpuSlots::release);
+            cpuSlot = Optional.empty();
+            // Unmounted from the jail by the cleanup
+            scratch.ifPresent(scratchVolumes::release);
+            scratch = Optional.empty();
         }
 
-        private String getStdoutDiff(InputStream stream) throws IOException {
+        private void closeProcess() {
 
-            int available = stream.available();
-            if (available > 0) {
-                byte[] buffer = new byte[available];
-                //noinspection ResultOfMethodCallIgnored
-                stream.read(buffer);
-                return new String(buffer);
+            if (Objects.nonNull(process)) {
+                closeQuietly(process.getOutputStream());
+                closeQuietly(process.getInputStream());
+                closeQuietly(process.getErrorStream());
             }
-            return "";
+            closeQuietly(log);
         }
     }
 
@@ -27,10 +27,13 @@ import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResult
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRequestDTO;
 import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.DataSourceUnsecuredDTO;
 import com.odysseusinc.arachne.executionengine.aspect.FileDescriptorCount;
+import com.odysseusinc.arachne.executionengine.config.properties.SqlParallelProperties;
+import com.odysseusinc.arachne.executionengine.config.properties.SqlStreamingProperties;
 import com.odysseusinc.arachne.executionengine.service.ConnectionPoolService;
 import com.odysseusinc.arachne.executionengine.service.SQLService;
 import com.odysseusinc.arachne.executionengine.util.AnalisysUtils;
 import com.odysseusinc.arachne.executionengine.util.AnalysisCallback;
+import org.apache.commons.lang3.StringUtils;
 import org.ohdsi.sql.SqlSplit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,13 +42,10 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 
-import java.io.BufferedWriter;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -53,12 +53,19 @@ import java.nio.file.PathMatcher;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 
@@ -68,120 +75,367 @@ public class SQLServiceImpl implements SQLService {
     private final Logger log = LoggerFactory.getLogger(SQLServiceImpl.class);
     private final ThreadPoolTaskExecutor taskExecutor;
     private final ConnectionPoolService poolService;
+    private final SqlStreamingProperties streamingProperties;
+    private final SqlParallelProperties parallelProperties;
+    private final Map<Long, RunningQuery> queries = new ConcurrentHashMap<>();
+    // Connections taken by running analyses per data source, kept within the capacity of its pool
+    private final Map<String, Semaphore> connectionPermits = new ConcurrentHashMap<>();
 
     @Value("${csv.separator}")
     private char csvSeparator;
+    @Value("${csv.defaultFormat}")
+    private String defaultFormat;
+    @Value("${csv.gzipLevel}")
+    private int gzipLevel;
+    @Value("${csv.zstdLevel}")
+    private int zstdLevel;
+    @Value("${connectionpool.capacity.max}")
+    private int poolCapacity;
 
     @Autowired
-    public SQLServiceImpl(ThreadPoolTaskExecutor taskExecutor, ConnectionPoolService poolService) {
+    public SQLServiceImpl(ThreadPoolTaskExecutor taskExecutor, ConnectionPoolService poolService,
+                          SqlStreamingProperties streamingProperties, SqlParallelProperties parallelProperties) {
 
         this.taskExecutor = taskExecutor;
         this.poolService = poolService;
+        this.streamingProperties = streamingProperties;
+        this.parallelProperties = parallelProperties;
     }
 
     @Override
     @FileDescriptorCount
     public Future analyze(AnalysisSyncRequestDTO analysis, File file, StdoutHandlerParams stdoutHandlerParams, AnalysisCallback analysisCallback) {
 
+        RunningQuery query = new RunningQuery();
+        queries.put(analysis.getId(), query);
         return taskExecutor.submit(() -> {
             try {
                 AnalysisResultStatusDTO status = AnalysisResultStatusDTO.EXECUTED;
                 StringBuilder stdout = new StringBuilder();
                 DataSourceUnsecuredDTO dataSource = analysis.getDataSource();
+                int fetchSize = streamingProperties.getFetchSize(dataSource.getType());
+                boolean transaction = streamingProperties.requiresTransaction(dataSource.getType());
+                ResultFormat resultFormat = ResultFormat.of(StringUtils.defaultIfBlank(analysis.getResultFormat(), defaultFormat));
+                FileRunner runner = new FileRunner(query, dataSource, fetchSize, transaction, resultFormat);
+                Consumer<String> report = text -> {
+                    stdout.append(text);
+                    stdoutHandlerParams.getCallback().accept(text);
+                };
 
-                try (Connection conn = poolService.getDataSource(dataSource).getConnection()) {
-
-                    List<File> files = AnalisysUtils.getDirectoryItemsFiltered(file, SQL_MATCHER);
-                    for (File sqlFile : files) {
-                        final String sqlFileName = sqlFile.getName();
-                        try {
-                            SqlExecutor sqlExecutor;
-
-                            if (analysis.getDataSource().getType().equals(DBMSType.ORACLE) ||
-                                    analysis.getDataSource().getType().equals(DBMSType.BIGQUERY)) {
-                                sqlExecutor = new SingleStatementSqlExecutor();
-                            } else {
-                                sqlExecutor = new DefaultSqlExecutor();
-                            }
-                            List<Path> resultFileList = sqlExecutor.runSql(conn, sqlFile);
-                            //
-                            stdout.append(sqlFileName).append("\r\n\r\n").append("has been executed correctly").append("\r\n");
-                            if (resultFileList.size() > 0) {
-                                stdout.append("has result file: ").append(resultFileList.stream().map(rf -> rf.getFileName().toString()).collect(Collectors.joining(", ")));
-                            } else {
-                                stdout.append("does not have a result file");
-                            }
-                        } catch (IOException ex) {
-                            String errorMessage = sqlFileName + "\r\n\r\nError reading file: " + ex.getMessage();
-                            log.error(errorMessage);
-                            if (log.isDebugEnabled()) {
-                                log.debug("Stacktrace: ", ex);
-                            }
-                            status = AnalysisResultStatusDTO.FAILED;
-                            stdout.append(errorMessage);
-                        } catch (SQLException ex) {
-                            String errorMessage = sqlFileName + "\r\n\r\nError executing query: " + ex.getMessage();
-                            log.error(errorMessage);
-                            if (log.isDebugEnabled()) {
-                                log.debug("Stacktrace: ", ex);
-                            }
-                            status = AnalysisResultStatusDTO.FAILED;
-                            stdout.append(errorMessage);
-                        }
-                        stdout.append("\r\n---\r\n\r\n");
-                        stdoutHandlerParams.getCallback().accept(stdout.toString());
+                List<File> files = AnalisysUtils.getDirectoryItemsFiltered(file, SQL_MATCHER);
+                SqlExecutionPlan plan = SqlExecutionPlan.of(file, files,
+                        new File(file, parallelProperties.getManifest()), parallelProperties.getMaxParallelism());
+                // Every analysis gets a connection, one running files concurrently gets more only while the pool
+                // has them to spare. Files waiting for an exhausted pool would fail on its timeout
+                Semaphore permits = connectionPermits.computeIfAbsent(dataSource.getConnectionStringAndUserAndPassword(),
+                        key -> new Semaphore(Math.max(1, poolCapacity)));
+                permits.acquire();
+                int connections = 1;
+                try {
+                    while (connections < plan.getParallelism() && permits.tryAcquire()) {
+                        connections++;
                     }
-                } catch (SQLException ex) {
-                    String errorMessage = "Error getting connection to CDM: " + ex.getMessage();
-                    log.error(errorMessage);
-                    if (log.isDebugEnabled()) {
-                        log.debug("Stacktrace: ", ex);
+                    boolean failed = plan.getParallelism() > 1
+                            ? runConcurrently(analysis.getId(), plan, files, runner, report, connections)
+                            : runSequentially(files, runner, report);
+                    if (failed) {
+                        status = AnalysisResultStatusDTO.FAILED;
                     }
+                } catch (SQLException ex) {
                     status = AnalysisResultStatusDTO.FAILED;
-                    stdout.append(errorMessage).append("\r\n");
+                    stdout.append(connectionError(ex)).append("\r\n");
+                } finally {
+                    permits.release(connections);
+                }
+                if (query.cancelled) {
+                    log.info("SQL analysis id={} cancelled", analysis.getId());
+                    status = AnalysisResultStatusDTO.CANCELLED;
+                    stdout.append("Analysis was cancelled").append("\r\n");
                 }
                 analysisCallback.execute(status, stdout.toString(), file, null);
             } catch (Throwable t) {
                 analysisCallback.execute(null, null, file, t);
+            } finally {
+                queries.remove(analysis.getId(), query);
             }
         });
     }
 
+    /**
+     * @return whether any file failed
+     */
+    private boolean runSequentially(List<File> files, FileRunner runner, Consumer<String> report) throws SQLException {
+
+        boolean failed = false;
+        try (Connection conn = runner.connect()) {
+            for (File sqlFile : files) {
+                if (runner.query.cancelled) {
+                    break;
+                }
+                FileResult result = runner.run(conn, sqlFile);
+                failed |= result.failed;
+                report.accept(result.stdout);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Runs files on connections of their own, at most the given number at a time, which falls back to one file after
+     * another when the pool has no connections to spare. Results are reported by file name whatever order the files
+     * complete in.
+     *
+     * @return whether any file failed
+     */
+    private boolean runConcurrently(Long analysisId, SqlExecutionPlan plan, List<File> files, FileRunner runner,
+                                    Consumer<String> report, int connections) {
+
+        log.info("Running {} SQL files of analysis id={} on {} connections, {} planned", files.size(), analysisId,
+                connections, plan.getParallelism());
+        ExecutorService executor = Executors.newFixedThreadPool(connections, r -> {
+            Thread thread = new Thread(r, "sql-analysis-" + analysisId);
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Map<File, CompletableFuture<FileResult>> results = new HashMap<>();
+            for (File sqlFile : plan.getOrder()) {
+                List<File> dependencies = plan.getDependencies(sqlFile);
+                List<CompletableFuture<FileResult>> required = dependencies.stream().map(results::get).collect(Collectors.toList());
+                results.put(sqlFile, CompletableFuture.allOf(required.toArray(new CompletableFuture[0])).thenApplyAsync(ignored -> {
+                    if (runner.query.cancelled) {
+                        return null;
+                    }
+                    for (int i = 0; i < dependencies.size(); i++) {
+                        FileResult result = required.get(i).join();
+                        if (result == null || result.failed) {
+                            return new FileResult(true, sqlFile.getName() + "\r\n\r\nSkipped, depends on "
+                                    + dependencies.get(i).getName() + " which has not been executed correctly\r\n---\r\n\r\n");
+                        }
+                    }
+                    try (Connection conn = runner.connect()) {
+                        return runner.run(conn, sqlFile);
+                    } catch (SQLException ex) {
+                        return new FileResult(true, sqlFile.getName() + "\r\n\r\n" + connectionError(ex) + "\r\n---\r\n\r\n");
+                    }
+                }, executor));
+            }
+            boolean failed = false;
+            for (File sqlFile : files) {
+                FileResult result = results.get(sqlFile).join();
+                if (result != null) {
+                    failed |= result.failed;
+                    report.accept(result.stdout);
+                }
+            }
+            return failed;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private String connectionError(SQLException ex) {
+
+        String errorMessage = "Error getting connection to CDM: " + ex.getMessage();
+        log.error(errorMessage);
+        if (log.isDebugEnabled()) {
+            log.debug("Stacktrace: ", ex);
+        }
+        return errorMessage;
+    }
+
+    private void rollback(Connection conn) {
+
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            log.warn("Failed to roll back: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean cancel(Long id) {
+
+        RunningQuery query = queries.get(id);
+        if (query == null) {
+            return false;
+        }
+        query.cancel();
+        return true;
+    }
+
+    private class RunningQuery {
+
+        private volatile boolean cancelled;
+        // Statement being executed by thread, files run concurrently have one each
+        private final Map<Thread, Statement> statements = new ConcurrentHashMap<>();
+
+        private Statement createStatement(Connection conn, int fetchSize) throws SQLException {
+
+            Statement created = conn.createStatement(ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statements.put(Thread.currentThread(), created);
+            if (fetchSize > 0) {
+                try {
+                    created.setFetchSize(fetchSize);
+                } catch (SQLException e) {
+                    log.debug("Fetch size is not supported by the driver: {}", e.getMessage());
+                }
+            }
+            return created;
+        }
+
+        private void cancel() {
+
+            cancelled = true;
+            for (Statement current : statements.values()) {
+                try {
+                    current.cancel();
+                } catch (SQLException e) {
+                    log.warn("Failed to cancel statement: {}", e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static class FileResult {
+
+        private final boolean failed;
+        private final String stdout;
+
+        private FileResult(boolean failed, String stdout) {
+
+            this.failed = failed;
+            this.stdout = stdout;
+        }
+    }
+
+    /**
+     * Runs a single SQL file of the analysis, results and errors end up in the stdout section of the file.
+     */
+    private class FileRunner {
+
+        private final RunningQuery query;
+        private final DataSourceUnsecuredDTO dataSource;
+        private final int fetchSize;
+        private final boolean transaction;
+        private final ResultFormat resultFormat;
+
+        private FileRunner(RunningQuery query, DataSourceUnsecuredDTO dataSource, int fetchSize, boolean transaction,
+                           ResultFormat resultFormat) {
+
+            this.query = query;
+            this.dataSource = dataSource;
+            this.fetchSize = fetchSize;
+            this.transaction = transaction;
+            this.resultFormat = resultFormat;
+        }
+
+        private Connection connect() throws SQLException {
+
+            return poolService.getDataSource(dataSource).getConnection();
+        }
+
+        private FileResult run(Connection conn, File sqlFile) {
+
+            final String sqlFileName = sqlFile.getName();
+            StringBuilder stdout = new StringBuilder();
+            boolean failed = false;
+            try {
+                SqlExecutor sqlExecutor;
+
+                if (dataSource.getType().equals(DBMSType.ORACLE) ||
+                        dataSource.getType().equals(DBMSType.BIGQUERY)) {
+                    sqlExecutor = new SingleStatementSqlExecutor(query, fetchSize, resultFormat);
+                } else if (transaction) {
+                    sqlExecutor = new CursorSqlExecutor(query, fetchSize, resultFormat);
+                } else {
+                    sqlExecutor = new DefaultSqlExecutor(query, fetchSize, resultFormat);
+                }
+                List<Path> resultFileList;
+                try {
+                    resultFileList = sqlExecutor.runSql(conn, sqlFile);
+                } finally {
+                    query.statements.remove(Thread.currentThread());
+                }
+                //
+                stdout.append(sqlFileName).append("\r\n\r\n").append("has been executed correctly").append("\r\n");
+                if (resultFileList.size() > 0) {
+                    stdout.append("has result file: ").append(resultFileList.stream().map(rf -> rf.getFileName().toString()).collect(Collectors.joining(", ")));
+                    stdout.append("\r\n").append(sqlExecutor.rowsStreamed).append(" rows streamed, fetch size ")
+                            .append(fetchSize > 0 ? String.valueOf(fetchSize) : "driver default");
+                } else {
+                    stdout.append("does not have a result file");
+                }
+            } catch (IOException ex) {
+                String errorMessage = sqlFileName + "\r\n\r\nError reading file: " + ex.getMessage();
+                log.error(errorMessage);
+                if (log.isDebugEnabled()) {
+                    log.debug("Stacktrace: ", ex);
+                }
+                failed = true;
+                stdout.append(errorMessage);
+            } catch (SQLException ex) {
+                String errorMessage = sqlFileName + "\r\n\r\nError executing query: " + ex.getMessage();
+                log.error(errorMessage);
+                if (log.isDebugEnabled()) {
+                    log.debug("Stacktrace: ", ex);
+                }
+                failed = true;
+                stdout.append(errorMessage);
+            }
+            stdout.append("\r\n---\r\n\r\n");
+            return new FileResult(failed, stdout.toString());
+        }
+    }
+
     public abstract class SqlExecutor {
+        final RunningQuery query;
+        final int fetchSize;
+        final ResultFormat resultFormat;
+        long rowsStreamed;
+
+        private SqlExecutor(RunningQuery query, int fetchSize, ResultFormat resultFormat) {
+
+            this.query = query;
+            this.fetchSize = fetchSize;
+            this.resultFormat = resultFormat;
+        }
+
         public abstract List<Path> runSql(Connection conn, File sqlFile) throws SQLException, IOException;
 
-        Path processResultSet(Statement statement, String resultFileName) throws IOException, SQLException {
-            Path resultFile = null;
+        Path processResultSet(Statement statement, File sqlFile, int resultIdx) throws IOException, SQLException {
             try (ResultSet resultSet = statement.getResultSet()) {
-                if (resultSet != null) {
-                    resultFile = Paths.get(resultFileName);
-                    try (PrintWriter out = new PrintWriter(new BufferedWriter(
-                            new FileWriter(resultFile.toFile(), true))
-                    )) {
-                        ResultSetMetaData metaData = resultSet.getMetaData();
-                        int columnCount = metaData.getColumnCount();
-                        for (int column = 1; column <= columnCount; column++) {
-                            String columnLabel = metaData.getColumnLabel(column);
-                            out.append(columnLabel);
-                            if (column < columnCount) {
-                                out.append(csvSeparator);
-                            }
-                        }
-                        out.append("\r\n");
-                        while (resultSet.next()) {
-                            for (int ii = 1; ii <= columnCount; ii++) {
-                                Object object = resultSet.getObject(ii);
-                                out.print(object);
-                                if (ii < columnCount) {
-                                    out.print(csvSeparator);
-                                }
-                            }
-                            out.print("\r\n");
-                        }
+                if (resultSet == null) {
+                    return null;
+                }
+                Path resultFile = Paths.get(sqlFile.getAbsolutePath() + ".result_" + resultIdx + "." + resultFormat.getExtension());
+                try (ResultWriter writer = resultFormat.open(resultFile, csvSeparator, resultFormat.isZstd() ? zstdLevel : gzipLevel)) {
+                    rowsStreamed += writer.write(resultSet);
+                }
+                return resultFile;
+            }
+        }
+
+        /**
+         * Executes SQL that may hold several statements, each result set is written to a file of its own.
+         *
+         * @return index of the next result
+         */
+        int execute(Statement statement, String sql, File sqlFile, int resultIdx, List<Path> resultFileList)
+                throws SQLException, IOException {
+
+            boolean hasMoreResultSets = statement.execute(sql);
+            while (hasMoreResultSets || statement.getUpdateCount() != -1) {
+                if (hasMoreResultSets) {
+                    Path resultFile = processResultSet(statement, sqlFile, resultIdx);
+                    if (resultFile != null) {
+                        resultFileList.add(resultFile);
                     }
                 }
+                hasMoreResultSets = statement.getMoreResults();
+                resultIdx++;
             }
-            return resultFile;
+            return resultIdx;
         }
     }
 
@@ -189,24 +443,18 @@ public class SQLServiceImpl implements SQLService {
 
     public class DefaultSqlExecutor extends SqlExecutor {
 
+        private DefaultSqlExecutor(RunningQuery query, int fetchSize, ResultFormat resultFormat) {
+
+            super(query, fetchSize, resultFormat);
+        }
+
         public List<Path> runSql(Connection conn, File sqlFile) throws SQLException, IOException {
 
             List<Path> resultFileList = new ArrayList<>();
             try (OutputStream outputStream = new ByteArrayOutputStream()) {
                 Files.copy(sqlFile.toPath(), outputStream);
-                try (Statement statement = conn.createStatement()) {
-                    boolean hasMoreResultSets = statement.execute(outputStream.toString());
-                    int resultIdx = 0;
-                    while (hasMoreResultSets || statement.getUpdateCount() != -1) {
-                        if (hasMoreResultSets) {
-                            Path resultFile = processResultSet(statement, sqlFile.getAbsolutePath() + ".result_" + resultIdx + ".csv");
-                            if (resultFile != null) {
-                                resultFileList.add(resultFile);
-                            }
-                        }
-                        hasMoreResultSets = statement.getMoreResults();
-                        resultIdx++;
-                    }
+                try (Statement statement = query.createStatement(conn, fetchSize)) {
+                    execute(statement, outputStream.toString(), sqlFile, 0, resultFileList);
                 }
             }
             return resultFileList;
@@ -215,16 +463,21 @@ public class SQLServiceImpl implements SQLService {
 
     public class SingleStatementSqlExecutor extends SqlExecutor {
 
+        private SingleStatementSqlExecutor(RunningQuery query, int fetchSize, ResultFormat resultFormat) {
+
+            super(query, fetchSize, resultFormat);
+        }
+
         public List<Path> runSql(Connection conn, File sqlFile) throws SQLException, IOException {
 
             List<Path> resultFileList = new ArrayList<>();
             try (OutputStream outputStream = new ByteArrayOutputStream()) {
                 Files.copy(sqlFile.toPath(), outputStream);
-                try (Statement statement = conn.createStatement()) {
+                try (Statement statement = query.createStatement(conn, fetchSize)) {
                     String[] sqlParts = SqlSplit.splitSql(outputStream.toString());
-                    for (int i = 0; i < sqlParts.length; i++) {
+                    for (int i = 0; i < sqlParts.length && !query.cancelled; i++) {
                         statement.execute(sqlParts[i]);
-                        Path resultFile = processResultSet(statement, sqlFile.getAbsolutePath() + ".result_" + i + ".csv");
+                        Path resultFile = processResultSet(statement, sqlFile, i);
                         if (resultFile != null) {
                             resultFileList.add(resultFile);
                         }
@@ -234,4 +487,65 @@ public class SQLServiceImpl implements SQLService {
             return resultFileList;
         }
     }
+
+    /**
+     * Streams query results of drivers fetching through a cursor only with autocommit off and for a single
+     * statement, i.e. PostgreSQL and Redshift. Statements returning rows run one at a time, each in a transaction
+     * of its own committed as soon as its result is written, so locks are held no longer than the read. Everything
+     * else runs with autocommit as written, one statement at a time, which lets VACUUM or CREATE INDEX
+     * CONCURRENTLY through. Scripts managing transactions themselves, or not split cleanly, run as a whole the
+     * default way and their results are read into memory by the driver.
+     */
+    public class CursorSqlExecutor extends SqlExecutor {
+
+        private CursorSqlExecutor(RunningQuery query, int fetchSize, ResultFormat resultFormat) {
+
+            super(query, fetchSize, resultFormat);
+        }
+
+        public List<Path> runSql(Connection conn, File sqlFile) throws SQLException, IOException {
+
+            List<Path> resultFileList = new ArrayList<>();
+            try (OutputStream outputStream = new ByteArrayOutputStream()) {
+                Files.copy(sqlFile.toPath(), outputStream);
+                String sql = outputStream.toString();
+                SqlScript script = SqlScript.parse(sql);
+                try (Statement statement = query.createStatement(conn, fetchSize)) {
+                    if (script == null || script.hasTransactionControl() || !conn.getAutoCommit()) {
+                        log.debug("Results of {} are not streamed, the script runs as a whole", sqlFile.getName());
+                        execute(statement, sql, sqlFile, 0, resultFileList);
+                        return resultFileList;
+                    }
+                    int resultIdx = 0;
+                    for (SqlScript.Statement part : script.getStatements()) {
+                        if (query.cancelled) {
+                            break;
+                        }
+                        if (part.isQuery()) {
+                            resultIdx = stream(conn, statement, part.getSql(), sqlFile, resultIdx, resultFileList);
+                        } else if (!part.isEmpty()) {
+                            resultIdx = execute(statement, part.getSql(), sqlFile, resultIdx, resultFileList);
+                        }
+                    }
+                }
+            }
+            return resultFileList;
+        }
+
+        private int stream(Connection conn, Statement statement, String sql, File sqlFile, int resultIdx,
+                           List<Path> resultFileList) throws SQLException, IOException {
+
+            conn.setAutoCommit(false);
+            try {
+                int next = execute(statement, sql, sqlFile, resultIdx, resultFileList);
+                conn.commit();
+                return next;
+            } catch (SQLException | IOException ex) {
+                rollback(conn);
+                throw ex;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
 }
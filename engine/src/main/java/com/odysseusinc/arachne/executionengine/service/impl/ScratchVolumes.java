@@ -0,0 +1,204 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.odysseusinc.arachne.executionengine.config.runtimeservice.RIsolatedRuntimeProperties;
+import com.odysseusinc.arachne.executionengine.util.FileResourceUtils;
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Allocates a directory per analysis on a dedicated scratch volume for temporary data (R tempdir, Andromeda),
+ * optionally as a tmpfs of the quota size (see scratch.sh). On disk the quota of every running analysis is reserved
+ * up front, an analysis not fitting into the free space is refused before it starts. Directories are removed in the
+ * background.
+ */
+@Component
+@ManagedResource
+public class ScratchVolumes {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ScratchVolumes.class);
+
+    private static final String SCRIPT_RESOURCE = "classpath:/scratch.sh";
+    private static final String PREFIX = "scratch-";
+
+    private final RIsolatedRuntimeProperties rIsolatedRuntimeProps;
+    private final ResourceLoader resourceLoader;
+    private final String folderPath;
+    private final long quotaMb;
+    private final boolean tmpfs;
+    private final long minFreeMb;
+
+    private final Set<File> active = ConcurrentHashMap.newKeySet();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    private File folder;
+    private File script;
+    private ExecutorService remover;
+
+    public ScratchVolumes(RIsolatedRuntimeProperties rIsolatedRuntimeProps,
+                          ResourceLoader resourceLoader,
+                          @Value("${runtime.scratchFolder}") String folderPath,
+                          @Value("${runtime.scratchQuotaMb}") long quotaMb,
+                          @Value("${runtime.scratchTmpfs}") boolean tmpfs,
+                          @Value("${runtime.scratchMinFreeMb}") long minFreeMb) {
+
+        this.rIsolatedRuntimeProps = rIsolatedRuntimeProps;
+        this.resourceLoader = resourceLoader;
+        this.folderPath = folderPath;
+        this.quotaMb = quotaMb;
+        this.tmpfs = tmpfs && quotaMb > 0;
+        this.minFreeMb = minFreeMb;
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+
+        if (StringUtils.isBlank(folderPath)) {
+            LOGGER.info("Scratch volume is disabled, temporary data is kept in the jail");
+            return;
+        }
+        folder = new File(folderPath);
+        FileUtils.forceMkdir(folder);
+        script = FileResourceUtils.extractResourceToTempFile(resourceLoader, SCRIPT_RESOURCE, "ee", ".sh");
+        remover = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "scratch-remover");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Left by a previous run
+        File[] orphans = folder.listFiles((dir, name) -> name.startsWith(PREFIX));
+        for (File orphan : ArrayUtils.nullToEmpty(orphans, File[].class)) {
+            remover.execute(() -> remove(orphan));
+        }
+        LOGGER.info("Scratch volume at [{}], quota {} MB{}, {} MB free", folder, quotaMb, tmpfs ? " on tmpfs" : "", getFreeMb());
+    }
+
+    @PreDestroy
+    public void destroy() {
+
+        if (remover != null) {
+            remover.shutdownNow();
+        }
+        FileUtils.deleteQuietly(script);
+    }
+
+    /**
+     * @return scratch directory of the analysis, empty if the scratch volume is disabled
+     * @throws IOException if there is not enough free space for the analysis to complete
+     */
+    public Optional<File> allocate(Long analysisId) throws IOException {
+
+        if (folder == null) {
+            return Optional.empty();
+        }
+        // Unique name, removal of a previous run of the same analysis might still be pending
+        File dir = new File(folder, PREFIX + analysisId + "-" + System.currentTimeMillis());
+        synchronized (this) {
+            long needed = (tmpfs ? 0 : quotaMb) + minFreeMb;
+            long available = getFreeMb() - getReservedMb();
+            if (available < needed) {
+                rejected.incrementAndGet();
+                throw new IOException(String.format("Not enough space on scratch volume [%s]: %d MB available, %d MB needed",
+                        folder, available, needed));
+            }
+            active.add(dir);
+        }
+        if (run("create", dir, tmpfs ? String.valueOf(quotaMb) : "") != 0) {
+            active.remove(dir);
+            failures.incrementAndGet();
+            throw new IOException("Failed to create scratch directory " + dir);
+        }
+        return Optional.of(dir);
+    }
+
+    public void release(File dir) {
+
+        active.remove(dir);
+        remover.execute(() -> remove(dir));
+    }
+
+    private void remove(File dir) {
+
+        if (run("remove", dir) == 0) {
+            removed.incrementAndGet();
+        } else {
+            failures.incrementAndGet();
+            LOGGER.warn("Failed to remove scratch directory [{}]", dir);
+        }
+    }
+
+    private int run(String action, File dir, String... args) {
+
+        String[] command = ArrayUtils.addAll(rIsolatedRuntimeProps.getRunCmd(), script.getAbsolutePath(), action, dir.getAbsolutePath());
+        try {
+            return new ProcessBuilder(ArrayUtils.addAll(command, args)).inheritIO().start().waitFor();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to {} scratch directory [{}]: {}", action, dir, e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @ManagedAttribute
+    public int getActive() {
+
+        return active.size();
+    }
+
+    @ManagedAttribute
+    public long getQuotaMb() {
+
+        return quotaMb;
+    }
+
+    @ManagedAttribute
+    public long getReservedMb() {
+
+        return tmpfs ? 0 : active.size() * quotaMb;
+    }
+
+    @ManagedAttribute
+    public long getFreeMb() {
+
+        return folder == null ? 0 : folder.getUsableSpace() / FileUtils.ONE_MB;
+    }
+
+    @ManagedAttribute
+    public long getRejected() {
+
+        return rejected.get();
+    }
+
+    @ManagedAttribute
+    public long getRemoved() {
+
+        return removed.get();
+    }
+
+    @ManagedAttribute
+    public long getFailures() {
+
+        return failures.get();
+    }
+}
@@ -0,0 +1,128 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Order in which the SQL files of an analysis run. Files run one after another on a single connection unless the
+ * analysis ships a manifest, e.g.
+ * <pre>
+ * {"parallelism": 8, "dependsOn": {"counts.sql": ["cohort.sql"]}}
+ * </pre>
+ * Then files run concurrently, each on its own connection, a file starting once the files it depends on have
+ * completed. Session state such as temp tables is not shared between files.
+ */
+public class SqlExecutionPlan {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final int parallelism;
+    // Files after the files they depend on, otherwise by name
+    private final List<File> order;
+    private final Map<File, List<File>> dependencies;
+
+    private SqlExecutionPlan(int parallelism, List<File> order, Map<File, List<File>> dependencies) {
+
+        this.parallelism = parallelism;
+        this.order = order;
+        this.dependencies = dependencies;
+    }
+
+    /**
+     * @param files SQL files by name, as listed by {@link com.odysseusinc.arachne.executionengine.util.AnalisysUtils}
+     * @param manifest file opting the analysis into concurrent execution, missing for sequential
+     * @param maxParallelism cap of the engine, 1 or less disables concurrent execution
+     * @throws IllegalArgumentException if the manifest refers to unknown files or has circular dependencies
+     */
+    public static SqlExecutionPlan of(File analysisDir, List<File> files, File manifest, int maxParallelism) throws IOException {
+
+        if (maxParallelism <= 1 || !manifest.isFile()) {
+            return new SqlExecutionPlan(1, files, Collections.emptyMap());
+        }
+        Manifest parsed = MAPPER.readValue(manifest, Manifest.class);
+        Map<String, File> byPath = new LinkedHashMap<>();
+        files.forEach(file -> byPath.put(relativePath(analysisDir, file), file));
+        Map<File, List<File>> dependencies = new HashMap<>();
+        for (Map.Entry<String, List<String>> entry : parsed.dependsOn.entrySet()) {
+            List<File> required = new ArrayList<>();
+            for (String path : entry.getValue()) {
+                required.add(resolve(byPath, manifest, path));
+            }
+            dependencies.put(resolve(byPath, manifest, entry.getKey()), required);
+        }
+        int parallelism = Math.min(maxParallelism, files.size());
+        if (parsed.parallelism != null && parsed.parallelism > 0) {
+            parallelism = Math.min(parallelism, parsed.parallelism);
+        }
+        return new SqlExecutionPlan(Math.max(parallelism, 1), order(files, dependencies, manifest), dependencies);
+    }
+
+    public int getParallelism() {
+
+        return parallelism;
+    }
+
+    public List<File> getOrder() {
+
+        return order;
+    }
+
+    public List<File> getDependencies(File file) {
+
+        return dependencies.getOrDefault(file, Collections.emptyList());
+    }
+
+    private static List<File> order(List<File> files, Map<File, List<File>> dependencies, File manifest) {
+
+        List<File> order = new ArrayList<>();
+        Set<File> placed = new HashSet<>();
+        List<File> pending = new ArrayList<>(files);
+        while (!pending.isEmpty()) {
+            List<File> ready = pending.stream()
+                    .filter(file -> placed.containsAll(dependencies.getOrDefault(file, Collections.emptyList())))
+                    .collect(Collectors.toList());
+            if (ready.isEmpty()) {
+                throw new IllegalArgumentException(String.format("%s: circular dependencies between %s", manifest.getName(),
+                        pending.stream().map(File::getName).collect(Collectors.joining(", "))));
+            }
+            order.addAll(ready);
+            placed.addAll(ready);
+            pending.removeAll(ready);
+        }
+        return order;
+    }
+
+    private static File resolve(Map<String, File> byPath, File manifest, String path) {
+
+        File file = byPath.get(path);
+        if (file == null) {
+            throw new IllegalArgumentException(String.format("%s: unknown SQL file %s", manifest.getName(), path));
+        }
+        return file;
+    }
+
+    private static String relativePath(File analysisDir, File file) {
+
+        return analysisDir.toPath().relativize(file.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+    static class Manifest {
+
+        @JsonProperty
+        private Integer parallelism;
+        // Paths relative to the analysis directory
+        @JsonProperty
+        private Map<String, List<String>> dependsOn = new HashMap<>();
+    }
+}
@@ -0,0 +1,217 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * PostgreSQL or Redshift script split into top-level statements. Quoted literals and identifiers, escape strings,
+ * dollar-quoted bodies such as {@code $$ ... $$} and comments are kept intact, so semicolons inside a function body
+ * do not end the statement. Statements keep their text as written, including comments and the semicolon.
+ */
+public class SqlScript {
+
+    // Statements returning rows, worth reading through a cursor
+    private static final Set<String> QUERIES = new HashSet<>(Arrays.asList("SELECT", "WITH", "VALUES", "TABLE", "SHOW"));
+    private static final Set<String> TRANSACTION_CONTROL = new HashSet<>(Arrays.asList(
+            "BEGIN", "START", "COMMIT", "END", "ROLLBACK", "ABORT", "SAVEPOINT", "RELEASE"));
+
+    private final List<Statement> statements;
+
+    private SqlScript(List<Statement> statements) {
+
+        this.statements = statements;
+    }
+
+    /**
+     * @return the script, null if a literal, identifier or comment is not terminated
+     */
+    public static SqlScript parse(String script) {
+
+        List<Statement> statements = new ArrayList<>();
+        int start = 0;
+        int i = 0;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            int next;
+            if (c == '\'') {
+                next = skipQuoted(script, i, '\'', isEscapeString(script, i));
+            } else if (c == '"') {
+                next = skipQuoted(script, i, '"', false);
+            } else if (c == '$') {
+                next = skipDollarQuoted(script, i);
+            } else if (c == '-' && script.startsWith("-", i + 1)) {
+                int end = script.indexOf('\n', i);
+                next = end < 0 ? script.length() : end + 1;
+            } else if (c == '/' && script.startsWith("*", i + 1)) {
+                next = skipComment(script, i);
+            } else if (c == ';') {
+                statements.add(new Statement(script.substring(start, i + 1)));
+                start = i + 1;
+                next = i + 1;
+            } else {
+                next = i + 1;
+            }
+            if (next < 0) {
+                return null;
+            }
+            i = next;
+        }
+        Statement last = new Statement(script.substring(start));
+        if (!last.keyword.isEmpty()) {
+            statements.add(last);
+        }
+        return new SqlScript(Collections.unmodifiableList(statements));
+    }
+
+    public List<Statement> getStatements() {
+
+        return statements;
+    }
+
+    /**
+     * Whether the script manages transactions itself, e.g. with BEGIN and COMMIT.
+     */
+    public boolean hasTransactionControl() {
+
+        return statements.stream().anyMatch(statement -> TRANSACTION_CONTROL.contains(statement.keyword));
+    }
+
+    // E'...' allows backslash escapes, including \'
+    private static boolean isEscapeString(String script, int quote) {
+
+        return quote > 0 && (script.charAt(quote - 1) == 'E' || script.charAt(quote - 1) == 'e')
+                && (quote == 1 || !isIdentifierPart(script.charAt(quote - 2)));
+    }
+
+    private static int skipQuoted(String script, int open, char quote, boolean backslashEscapes) {
+
+        int i = open + 1;
+        while (i < script.length()) {
+            char c = script.charAt(i);
+            if (backslashEscapes && c == '\\') {
+                i += 2;
+            } else if (c == quote) {
+                // Doubled quote stands for the quote itself
+                if (!script.startsWith(String.valueOf(quote), i + 1)) {
+                    return i + 1;
+                }
+                i += 2;
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipDollarQuoted(String script, int open) {
+
+        // $1 is a parameter and a$b an identifier, not a tag
+        if (open > 0 && isIdentifierPart(script.charAt(open - 1))) {
+            return open + 1;
+        }
+        int i = open + 1;
+        while (i < script.length() && isIdentifierPart(script.charAt(i)) && script.charAt(i) != '$'
+                && !(i == open + 1 && Character.isDigit(script.charAt(i)))) {
+            i++;
+        }
+        if (i >= script.length() || script.charAt(i) != '$') {
+            return open + 1;
+        }
+        String tag = script.substring(open, i + 1);
+        int close = script.indexOf(tag, i + 1);
+        return close < 0 ? -1 : close + tag.length();
+    }
+
+    // Comments nest in PostgreSQL
+    private static int skipComment(String script, int open) {
+
+        int depth = 0;
+        int i = open;
+        while (i < script.length()) {
+            if (script.startsWith("/*", i)) {
+                depth++;
+                i += 2;
+            } else if (script.startsWith("*/", i)) {
+                depth--;
+                i += 2;
+                if (depth == 0) {
+                    return i;
+                }
+            } else {
+                i++;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    public static class Statement {
+
+        private final String sql;
+        // First keyword in upper case, empty if the statement holds only comments
+        private final String keyword;
+
+        private Statement(String sql) {
+
+            this.sql = sql;
+            this.keyword = keyword(sql);
+        }
+
+        public String getSql() {
+
+            return sql;
+        }
+
+        /**
+         * Whether the statement is empty or holds only comments.
+         */
+        public boolean isEmpty() {
+
+            return keyword.isEmpty();
+        }
+
+        /**
+         * Whether the statement returns rows. Such statements can run in a transaction of their own, unlike e.g.
+         * VACUUM or CREATE INDEX CONCURRENTLY.
+         */
+        public boolean isQuery() {
+
+            return QUERIES.contains(keyword);
+        }
+
+        private static String keyword(String sql) {
+
+            int i = 0;
+            while (i < sql.length()) {
+                char c = sql.charAt(i);
+                if (Character.isWhitespace(c) || c == '(') {
+                    i++;
+                } else if (sql.startsWith("--", i)) {
+                    int end = sql.indexOf('\n', i);
+                    i = end < 0 ? sql.length() : end + 1;
+                } else if (sql.startsWith("/*", i)) {
+                    i = skipComment(sql, i);
+                    if (i < 0) {
+                        return "";
+                    }
+                } else {
+                    break;
+                }
+            }
+            int start = i;
+            while (i < sql.length() && Character.isLetter(sql.charAt(i))) {
+                i++;
+            }
+            return sql.substring(start, i).toUpperCase(Locale.ROOT);
+        }
+    }
+}
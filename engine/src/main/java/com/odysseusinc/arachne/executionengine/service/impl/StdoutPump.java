@@ -0,0 +1,150 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads process output until EOF with blocking reads, writes it to the log and publishes it to the callback in chunks.
+ * Only a bounded window of the output is kept in memory.
+ * A chunk is published once the pending output reaches the size threshold or the time threshold
+ * has passed since the previous chunk; chunks are cut at line ends when possible. Output pending
+ * while the process is silent is published by {@link #tick()}, which is expected to be called periodically.
+ */
+public class StdoutPump implements Callable<String> {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StdoutPump.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final StdoutWindow window;
+    private Writer log;
+    private final int flushSize;
+    private final long flushIntervalMillis;
+    private final Consumer<String> callback;
+
+    private final StringBuilder pending = new StringBuilder();
+    private long lastFlush = System.currentTimeMillis();
+    private boolean drained;
+
+    public StdoutPump(InputStream inputStream, StdoutWindow window, Writer log,
+                      int flushSize, long flushIntervalMillis, Consumer<String> callback) {
+
+        this.reader = new InputStreamReader(inputStream, StandardCharsets.UTF_8);
+        this.window = window;
+        this.log = log;
+        this.flushSize = flushSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.callback = callback;
+    }
+
+    @Override
+    public String call() {
+
+        char[] buffer = new char[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                synchronized (this) {
+                    if (drained) {
+                        break;
+                    }
+                    window.append(buffer, 0, read);
+                    writeLog(buffer, read);
+                    pending.append(buffer, 0, read);
+                    if (pending.length() >= flushSize || System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+                        flush(true);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Process was destroyed during attempt to write stdout");
+        }
+        return drain();
+    }
+
+    /**
+     * Publishes output that has been pending for longer than the time threshold.
+     */
+    public synchronized void tick() {
+
+        if (!drained && System.currentTimeMillis() - lastFlush >= flushIntervalMillis) {
+            flush(false);
+        }
+    }
+
+    /**
+     * Publishes all pending output and stops the pump from publishing anything read afterwards.
+     *
+     * @return window of the output read so far
+     */
+    public synchronized String drain() {
+
+        if (!drained) {
+            flush(false);
+            drained = true;
+        }
+        return window.toString();
+    }
+
+    /**
+     * @return number of characters read, but not yet published
+     */
+    public synchronized int getPending() {
+
+        return pending.length();
+    }
+
+    private void flush(boolean wholeLines) {
+
+        int end = pending.length();
+        if (wholeLines) {
+            int lineEnd = pending.lastIndexOf("\n");
+            if (lineEnd >= 0) {
+                end = lineEnd + 1;
+            }
+        }
+        if (end == 0) {
+            return;
+        }
+        String chunk = pending.substring(0, end);
+        pending.delete(0, end);
+        lastFlush = System.currentTimeMillis();
+        if (log != null) {
+            try {
+                log.flush();
+            } catch (IOException e) {
+                logFailed(e);
+            }
+        }
+        if (callback != null) {
+            callback.accept(chunk);
+        }
+    }
+
+    private void writeLog(char[] buffer, int length) {
+
+        if (log != null) {
+            try {
+                log.write(buffer, 0, length);
+            } catch (IOException e) {
+                logFailed(e);
+            }
+        }
+    }
+
+    private void logFailed(IOException e) {
+
+        // Process output must be consumed anyway, otherwise the process blocks on a full pipe
+        LOGGER.warn("Failed to write stdout log, the rest of the output is not logged: {}", e.getMessage());
+        log = null;
+    }
+}
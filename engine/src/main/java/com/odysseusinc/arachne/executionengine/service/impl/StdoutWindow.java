@@ -0,0 +1,57 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+/**
+ * Keeps the beginning and the end of process output within fixed bounds, the rest is only counted.
+ */
+public class StdoutWindow {
+
+    private final int headSize;
+    private final int tailSize;
+    private final String logName;
+
+    private final StringBuilder head = new StringBuilder();
+    private final StringBuilder tail = new StringBuilder();
+    private long skipped;
+
+    public StdoutWindow(int headSize, int tailSize, String logName) {
+
+        this.headSize = headSize;
+        this.tailSize = tailSize;
+        this.logName = logName;
+    }
+
+    public synchronized void append(char[] chars, int offset, int length) {
+
+        int toHead = Math.min(length, headSize - head.length());
+        if (toHead > 0) {
+            head.append(chars, offset, toHead);
+            offset += toHead;
+            length -= toHead;
+        }
+        if (length > 0) {
+            tail.append(chars, offset, length);
+            // Trimmed once the tail doubles, so that it is not shifted on every append
+            int excess = tail.length() - tailSize;
+            if (excess > tailSize) {
+                tail.delete(0, excess);
+                skipped += excess;
+            }
+        }
+    }
+
+    public synchronized long getSkipped() {
+
+        return skipped + Math.max(0, tail.length() - tailSize);
+    }
+
+    @Override
+    public synchronized String toString() {
+
+        int excess = Math.max(0, tail.length() - tailSize);
+        long totalSkipped = skipped + excess;
+        if (totalSkipped == 0) {
+            return head.toString() + tail;
+        }
+        return head + String.format("%n...%n[%d characters skipped, see %s]%n...%n", totalSkipped, logName) + tail.substring(excess);
+    }
+}
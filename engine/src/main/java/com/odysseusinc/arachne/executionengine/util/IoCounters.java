@@ -0,0 +1,58 @@
+package com.odysseusinc.arachne.executionengine.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Optional;
+
+/**
+ * Bytes read from and written to storage by a group of processes.
+ */
+public class IoCounters {
+
+    private final long readBytes;
+    private final long writeBytes;
+
+    public IoCounters(long readBytes, long writeBytes) {
+
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+    }
+
+    /**
+     * Counters of a cgroup v2 group from its io.stat, covering processes which already left the group as well.
+     *
+     * @return empty if the IO controller is not enabled for the group or the group is gone
+     */
+    public static Optional<IoCounters> readCgroup(File group) {
+
+        try {
+            long readBytes = 0;
+            long writeBytes = 0;
+            // <major>:<minor> rbytes=<n> wbytes=<n> rios=<n> wios=<n> ..., a line per device used
+            for (String line : Files.readAllLines(new File(group, "io.stat").toPath(), StandardCharsets.UTF_8)) {
+                for (String field : line.trim().split("\\s+")) {
+                    if (field.startsWith("rbytes=")) {
+                        readBytes += Long.parseLong(field.substring("rbytes=".length()));
+                    } else if (field.startsWith("wbytes=")) {
+                        writeBytes += Long.parseLong(field.substring("wbytes=".length()));
+                    }
+                }
+            }
+            return Optional.of(new IoCounters(readBytes, writeBytes));
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    public long getReadBytes() {
+
+        return readBytes;
+    }
+
+    public long getWriteBytes() {
+
+        return writeBytes;
+    }
+}
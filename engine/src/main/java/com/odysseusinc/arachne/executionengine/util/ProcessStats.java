@@ -0,0 +1,193 @@
+package com.odysseusinc.arachne.executionengine.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Resource usage of a single process read from procfs.
+ */
+public class ProcessStats {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessStats.class);
+
+    // IO counters of a process owned by another user, see withPrivilegedIo
+    public static final long UNAVAILABLE = -1;
+    // USER_HZ, fixed to 100 on Linux regardless of the kernel tick rate
+    private static final long CLOCK_TICKS_PER_SEC = 100;
+    private static final File PROC = new File("/proc");
+
+    private final long pid;
+    private final long startTime;
+    private final long cpuMillis;
+    private final long rssKb;
+    private final long readBytes;
+    private final long writeBytes;
+    private final boolean zombie;
+
+    public ProcessStats(long pid, long startTime, long cpuMillis, long rssKb, long readBytes, long writeBytes) {
+
+        this(pid, startTime, cpuMillis, rssKb, readBytes, writeBytes, false);
+    }
+
+    public ProcessStats(long pid, long startTime, long cpuMillis, long rssKb, long readBytes, long writeBytes, boolean zombie) {
+
+        this.pid = pid;
+        this.startTime = startTime;
+        this.cpuMillis = cpuMillis;
+        this.rssKb = rssKb;
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+        this.zombie = zombie;
+    }
+
+    /**
+     * IO counters of processes owned by another user are not readable, they are reported as {@link #UNAVAILABLE}.
+     *
+     * @return empty if the process is gone
+     */
+    public static Optional<ProcessStats> read(long pid) {
+
+        File dir = new File(PROC, Long.toString(pid));
+        try {
+            String stat = new String(Files.readAllBytes(new File(dir, "stat").toPath()), StandardCharsets.UTF_8);
+            // Fields following "pid (comm) ", starting with state (3rd field of proc(5))
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            long ticks = Long.parseLong(fields[11]) + Long.parseLong(fields[12]);
+            long startTime = Long.parseLong(fields[19]);
+            long rssKb = field(Files.readAllLines(new File(dir, "status").toPath(), StandardCharsets.UTF_8), "VmRSS:");
+            long readBytes = UNAVAILABLE;
+            long writeBytes = UNAVAILABLE;
+            try {
+                List<String> io = Files.readAllLines(new File(dir, "io").toPath(), StandardCharsets.UTF_8);
+                readBytes = field(io, "read_bytes:");
+                writeBytes = field(io, "write_bytes:");
+            } catch (IOException ignored) {
+                // Readable by the owner only
+            }
+            boolean zombie = "Z".equals(fields[0]);
+            return Optional.of(new ProcessStats(pid, startTime, ticks * 1000 / CLOCK_TICKS_PER_SEC, rssKb, readBytes, writeBytes, zombie));
+        } catch (IOException | RuntimeException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Fills in the IO counters not readable by the engine user, e.g. of the processes running as root in a jail.
+     * They are read with sudo in a single call for the whole tree.
+     */
+    public static List<ProcessStats> withPrivilegedIo(List<ProcessStats> tree) {
+
+        List<String> files = tree.stream()
+                .filter(stats -> !stats.hasIo())
+                .map(stats -> new File(new File(PROC, Long.toString(stats.pid)), "io").getPath())
+                .collect(Collectors.toList());
+        if (files.isEmpty()) {
+            return tree;
+        }
+        List<String> command = new ArrayList<>(Arrays.asList("sudo", "grep", "-H", "-E", "^(read|write)_bytes:"));
+        command.addAll(files);
+        Map<Long, long[]> counters = new HashMap<>();
+        try {
+            // Processes exited in the meantime are reported to stderr
+            Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.to(new File("/dev/null"))).start();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                // /proc/<pid>/io:read_bytes: <n>
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(":");
+                    if (parts.length == 3) {
+                        long pid = Long.parseLong(new File(parts[0]).getParentFile().getName());
+                        long[] io = counters.computeIfAbsent(pid, p -> new long[]{UNAVAILABLE, UNAVAILABLE});
+                        io["read_bytes".equals(parts[1]) ? 0 : 1] = Long.parseLong(parts[2].trim());
+                    }
+                }
+            }
+            process.waitFor();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug("Failed to read IO counters of {}: {}", files, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return tree.stream()
+                .map(stats -> stats.hasIo() || !counters.containsKey(stats.pid) ? stats : stats.withIo(counters.get(stats.pid)))
+                .collect(Collectors.toList());
+    }
+
+    private ProcessStats withIo(long[] io) {
+
+        return new ProcessStats(pid, startTime, cpuMillis, rssKb, io[0], io[1], zombie);
+    }
+
+    private static long field(List<String> lines, String name) {
+
+        for (String line : lines) {
+            if (line.startsWith(name)) {
+                return Long.parseLong(line.substring(name.length()).trim().split("\\s+")[0]);
+            }
+        }
+        // Kernel threads and zombies have no memory fields
+        return 0;
+    }
+
+    public long getPid() {
+
+        return pid;
+    }
+
+    /**
+     * Distinguishes processes reusing the same pid.
+     */
+    public long getStartTime() {
+
+        return startTime;
+    }
+
+    public long getCpuMillis() {
+
+        return cpuMillis;
+    }
+
+    public long getRssKb() {
+
+        return rssKb;
+    }
+
+    public long getReadBytes() {
+
+        return readBytes;
+    }
+
+    public long getWriteBytes() {
+
+        return writeBytes;
+    }
+
+    /**
+     * @return false if the IO counters are {@link #UNAVAILABLE}
+     */
+    public boolean hasIo() {
+
+        return readBytes != UNAVAILABLE && writeBytes != UNAVAILABLE;
+    }
+
+    /**
+     * Terminated but not yet reaped by its parent, holds no resources but the pid.
+     */
+    public boolean isZombie() {
+
+        return zombie;
+    }
+}
@@ -0,0 +1,251 @@
+package com.odysseusinc.arachne.executionengine.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Finds and signals the descendants of a process using procfs. Processes started in a jail run as root,
+ * so signals are sent with sudo kill there.
+ */
+public class ProcessTree {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ProcessTree.class);
+
+    private static final File PROC = new File("/proc");
+    // Fields of /proc/<pid>/stat following "pid (comm) "
+    private static final int PARENT_FIELD = 1;
+    private static final int SESSION_FIELD = 3;
+
+    private ProcessTree() {
+    }
+
+    /**
+     * @return pid of the process or -1 if it cannot be found out
+     */
+    public static long pidOf(Process process) {
+
+        try {
+            // Java 9+
+            Method pid = Process.class.getMethod("pid");
+            return (Long) pid.invoke(process);
+        } catch (ReflectiveOperationException ignored) {
+        }
+        try {
+            Field pid = process.getClass().getDeclaredField("pid");
+            pid.setAccessible(true);
+            return pid.getLong(process);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            LOGGER.warn("Cannot find out pid of {}: {}", process.getClass().getName(), e.getMessage());
+            return -1;
+        }
+    }
+
+    /**
+     * @return the process itself followed by all its descendants
+     */
+    public static Set<Long> withDescendants(long pid) {
+
+        return withDescendants(pid, children());
+    }
+
+    /**
+     * @param children snapshot taken by {@link #children()}, so that several trees can be walked with a single scan
+     * @return the process itself followed by all its descendants
+     */
+    public static Set<Long> withDescendants(long pid, Map<Long, List<Long>> children) {
+
+        Set<Long> tree = new LinkedHashSet<>();
+        Deque<Long> queue = new ArrayDeque<>();
+        queue.add(pid);
+        while (!queue.isEmpty()) {
+            Long current = queue.poll();
+            if (tree.add(current)) {
+                queue.addAll(children.getOrDefault(current, new ArrayList<>()));
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * @return children of every running process by parent pid
+     */
+    public static Map<Long, List<Long>> children() {
+
+        Map<Long, List<Long>> children = new HashMap<>();
+        File[] entries = PROC.listFiles((dir, name) -> StringUtils.isNumeric(name));
+        if (entries != null) {
+            for (File entry : entries) {
+                long parent = parentOf(entry);
+                if (parent > 0) {
+                    children.computeIfAbsent(parent, p -> new ArrayList<>()).add(Long.parseLong(entry.getName()));
+                }
+            }
+        }
+        return children;
+    }
+
+    public static boolean isAlive(long pid) {
+
+        return new File(PROC, Long.toString(pid)).exists();
+    }
+
+    /**
+     * Sends the signal (e.g. TERM, KILL) to the processes, the ones already gone are skipped.
+     */
+    public static void signal(Collection<Long> pids, String signal, boolean privileged) {
+
+        List<String> alive = pids.stream().filter(ProcessTree::isAlive).map(String::valueOf).collect(Collectors.toList());
+        if (alive.isEmpty()) {
+            return;
+        }
+        List<String> command = new ArrayList<>();
+        if (privileged) {
+            command.add("sudo");
+        }
+        command.add("kill");
+        command.add("-" + signal);
+        command.addAll(alive);
+        try {
+            new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(ProcessBuilder.Redirect.INHERIT).start().waitFor();
+        } catch (IOException e) {
+            LOGGER.warn("Failed to send {} to {}: {}", signal, alive, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return session id of the process, -1 if it is gone
+     */
+    public static long sessionOf(long pid) {
+
+        return statField(new File(PROC, Long.toString(pid)), SESSION_FIELD);
+    }
+
+    /**
+     * @return pids of every process by its session id
+     */
+    public static Map<Long, List<Long>> sessions() {
+
+        Map<Long, List<Long>> sessions = new HashMap<>();
+        File[] entries = PROC.listFiles((dir, name) -> StringUtils.isNumeric(name));
+        if (entries != null) {
+            for (File entry : entries) {
+                long session = statField(entry, SESSION_FIELD);
+                if (session > 0) {
+                    sessions.computeIfAbsent(session, s -> new ArrayList<>()).add(Long.parseLong(entry.getName()));
+                }
+            }
+        }
+        return sessions;
+    }
+
+    /**
+     * Namespace links of processes owned by another user are only readable by root, with privileged they are read
+     * with sudo in a single call.
+     *
+     * @return inode of the PID namespace by pid
+     */
+    public static Map<Long, Long> pidNamespaces(boolean privileged) {
+
+        Map<Long, Long> namespaces = new HashMap<>();
+        if (privileged) {
+            List<String> command = Arrays.asList("sudo", "find", PROC.getPath(), "-mindepth", "3", "-maxdepth", "3",
+                    "-path", PROC.getPath() + "/[0-9]*/ns/pid", "-printf", "%p %l\n");
+            try {
+                Process process = new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.to(new File("/dev/null"))).start();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    // /proc/<pid>/ns/pid pid:[<inode>]
+                    while ((line = reader.readLine()) != null) {
+                        String[] parts = line.split(" ");
+                        long inode = parts.length == 2 ? namespaceInode(parts[1]) : -1;
+                        if (inode > 0) {
+                            namespaces.put(Long.parseLong(new File(parts[0]).getParentFile().getParentFile().getName()), inode);
+                        }
+                    }
+                }
+                process.waitFor();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn("Failed to read PID namespaces: {}", e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return namespaces;
+        }
+        File[] entries = PROC.listFiles((dir, name) -> StringUtils.isNumeric(name));
+        if (entries != null) {
+            for (File entry : entries) {
+                long inode = pidNamespaceOf(entry);
+                if (inode > 0) {
+                    namespaces.put(Long.parseLong(entry.getName()), inode);
+                }
+            }
+        }
+        return namespaces;
+    }
+
+    /**
+     * @return inode of the PID namespace of the engine itself
+     */
+    public static long ownPidNamespace() {
+
+        return pidNamespaceOf(new File(PROC, "self"));
+    }
+
+    private static long pidNamespaceOf(File procEntry) {
+
+        try {
+            return namespaceInode(Files.readSymbolicLink(new File(procEntry, "ns/pid").toPath()).toString());
+        } catch (IOException | RuntimeException e) {
+            // Gone already or owned by another user
+            return -1;
+        }
+    }
+
+    // pid:[4026531836]
+    private static long namespaceInode(String link) {
+
+        int start = link.indexOf('[');
+        int end = link.indexOf(']');
+        return start < 0 || end < start ? -1 : Long.parseLong(link.substring(start + 1, end));
+    }
+
+    private static long parentOf(File procEntry) {
+
+        return statField(procEntry, PARENT_FIELD);
+    }
+
+    private static long statField(File procEntry, int field) {
+
+        try {
+            String stat = new String(Files.readAllBytes(new File(procEntry, "stat").toPath()), StandardCharsets.UTF_8);
+            // pid (comm) state ppid pgrp session ..., comm may contain spaces and parentheses
+            String[] fields = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+            return Long.parseLong(fields[field]);
+        } catch (IOException | RuntimeException e) {
+            // Process is gone already
+            return -1;
+        }
+    }
+}
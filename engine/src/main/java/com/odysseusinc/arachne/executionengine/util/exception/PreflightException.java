@@ -0,0 +1,19 @@
+package com.odysseusinc.arachne.executionengine.util.exception;
+
+import java.util.List;
+
+public class PreflightException extends Exception {
+
+    private final List<String> problems;
+
+    public PreflightException(String fileName, List<String> problems) {
+
+        super("Analysis " + fileName + " was rejected before execution:\n - " + String.join("\n - ", problems));
+        this.problems = problems;
+    }
+
+    public List<String> getProblems() {
+
+        return problems;
+    }
+}
@@ -0,0 +1,45 @@
+#!/usr/bin/env bash
+
+ACTION=$1
+TARGET=$2
+ARCHIVE=$3
+
+# Decompresses the bundle by its extension, pigz and zstd use EXTRACT_THREADS threads (all cores by default)
+extract() {
+  THREADS=${EXTRACT_THREADS:-$(nproc)}
+  case "$1" in
+    *.tar.zst|*.tzst)
+      sudo tar -I "zstd -d -T$THREADS" -xf $1 -C $2
+      ;;
+    *)
+      if command -v pigz > /dev/null
+      then
+        sudo tar -I "pigz -d -p $THREADS" -xf $1 -C $2
+      else
+        sudo tar xzf $1 -C $2
+      fi
+      ;;
+  esac
+}
+
+case "$ACTION" in
+  extract)
+    sudo mkdir -p $TARGET
+    extract $ARCHIVE $TARGET
+    ;;
+  size)
+    sudo du -sb $TARGET | cut -f1
+    ;;
+  remove)
+    if grep -q "$TARGET/" /proc/mounts
+    then
+      echo "$TARGET is still in use" >&2
+      exit 1
+    fi
+    sudo rm -fr $TARGET
+    ;;
+  *)
+    echo "Unknown action: $ACTION" >&2
+    exit 1
+    ;;
+esac
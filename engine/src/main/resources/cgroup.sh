@@ -0,0 +1,53 @@
+#!/usr/bin/env bash
+
+ACTION=$1
+GROUP=$2
+CPU_MAX=$3
+MEMORY_MAX=$4
+IO_WEIGHT=$5
+
+case "$ACTION" in
+  create)
+    PARENT=$(dirname $GROUP)
+    sudo mkdir -p $PARENT || exit 1
+    # Controllers have to be enabled in the parent for the limits to be available in the group
+    for CONTROLLER in cpu memory io
+    do
+      if ! grep -qw $CONTROLLER $PARENT/cgroup.subtree_control
+      then
+        echo "+$CONTROLLER" | sudo tee $PARENT/cgroup.subtree_control > /dev/null
+      fi
+    done
+    sudo mkdir $GROUP || exit 1
+    echo "$CPU_MAX" | sudo tee $GROUP/cpu.max > /dev/null || exit 1
+    echo "$MEMORY_MAX" | sudo tee $GROUP/memory.max > /dev/null || exit 1
+    if [ -f $GROUP/io.weight ]
+    then
+      echo "default $IO_WEIGHT" | sudo tee $GROUP/io.weight > /dev/null
+    fi
+    ;;
+  attach)
+    # Moves already running processes (warm sessions) into the group, their children follow
+    for PID in "${@:3}"
+    do
+      echo $PID | sudo tee $GROUP/cgroup.procs > /dev/null
+    done
+    ;;
+  remove)
+    # Processes still left in the group would keep it busy
+    if [ -n "$(cat $GROUP/cgroup.procs)" ] && [ -f $GROUP/cgroup.kill ]
+    then
+      echo 1 | sudo tee $GROUP/cgroup.kill > /dev/null
+      for ATTEMPT in 1 2 3 4 5 6 7 8 9 10
+      do
+        [ -n "$(cat $GROUP/cgroup.procs)" ] || break
+        sleep 0.5
+      done
+    fi
+    sudo rmdir $GROUP
+    ;;
+  *)
+    echo "Unknown action: $ACTION" >&2
+    exit 1
+    ;;
+esac
@@ -1,10 +1,50 @@
 #!/usr/bin/env bash
 
 jail=$1
-sudo umount $jail/proc
-dirs=( bin bigquery boot dev etc home hive impala lib lib32 libx32 lib64 libs.r media mnt mssql netezza opt oracle postgresql snowflake proc redshift root run sbin srv sys tmp usr var .Rhistory )
+# Optional directory to move the remaining (result) files to, the jail itself is removed then
+target=$2
+# CLEANUP_PHASE=harvest moves the runtime environment out of the jail to this directory instead of removing it,
+# the directory is removed later with CLEANUP_PHASE=reap
+graveyard=$3
+
+unmount() {
+    sudo umount $1/proc
+    for mnt in $(grep " $1/" /proc/mounts | awk '{print $2}' | sort -r)
+    do
+        sudo umount $mnt
+    done
+    if grep -q " $1/" /proc/mounts
+    then
+        echo "$1 still has mounted filesystems, skipping removal" >&2
+        exit 1
+    fi
+}
+
+if [ "$CLEANUP_PHASE" = "reap" ]
+then
+    unmount $jail
+    sudo rm -fr $jail
+    exit $?
+fi
+
+unmount $jail
+dirs=( .overlay bin bigquery boot dev etc home hive impala lib lib32 libx32 lib64 libs.r media mnt mssql netezza opt oracle postgresql snowflake proc redshift root run sbin scratch srv sys tmp usr var .Rhistory )
 
 for d in "${dirs[@]}"
 do
-    sudo rm -fr $jail/$d
+    if [ "$CLEANUP_PHASE" = "harvest" ]
+    then
+        if [ -e $jail/$d ] || [ -L $jail/$d ]
+        then
+            sudo mv $jail/$d $graveyard/ || exit 1
+        fi
+    else
+        sudo rm -fr $jail/$d
+    fi
 done
+
+if [ -n "$target" ]
+then
+    sudo find $jail -mindepth 1 -maxdepth 1 -exec mv -t $target {} +
+    sudo rmdir $jail
+fi
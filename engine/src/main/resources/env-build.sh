@@ -0,0 +1,59 @@
+#!/usr/bin/env bash
+
+# Builds a runtime environment bundle: the default bundle with the packages of renv.lock restored from a local mirror
+WORK=$1
+BASE_ARCHIVE=$2
+LOCK_FILE=$3
+MIRROR=$4
+OUTPUT=$5
+
+# Library layered over the ones of the default bundle, see Renviron.site
+LIBRARY=/opt/ee-library
+
+# Decompresses the bundle by its extension, pigz and zstd use EXTRACT_THREADS threads (all cores by default)
+extract() {
+  THREADS=${EXTRACT_THREADS:-$(nproc)}
+  case "$1" in
+    *.tar.zst|*.tzst)
+      sudo tar -I "zstd -d -T$THREADS" -xf $1 -C $2
+      ;;
+    *)
+      if command -v pigz > /dev/null
+      then
+        sudo tar -I "pigz -d -p $THREADS" -xf $1 -C $2
+      else
+        sudo tar xzf $1 -C $2
+      fi
+      ;;
+  esac
+}
+
+sudo mkdir -p $WORK || exit 1
+extract $BASE_ARCHIVE $WORK || exit 1
+sudo mkdir -p $WORK/mnt/ee-mirror $WORK$LIBRARY $WORK/tmp
+sudo cp $LOCK_FILE $WORK/tmp/renv.lock
+sudo mount --bind $MIRROR $WORK/mnt/ee-mirror && sudo mount -o remount,bind,ro $WORK/mnt/ee-mirror
+
+sudo unshare --fork --pid -- chroot $WORK /bin/bash -c " \
+    mount -t proc proc /proc && \
+    export R_HOME=/usr/lib/R HOME=/root LANG=en_US.UTF-8 LC_ALL=en_US.UTF-8 && \
+    Rscript -e 'renv::restore(lockfile = \"/tmp/renv.lock\", library = \"$LIBRARY\", repos = c(MIRROR = \"file:///mnt/ee-mirror\"), prompt = FALSE)' && \
+    echo \"R_LIBS_SITE=$LIBRARY:\\\${R_LIBS_SITE}\" >> \$(R RHOME)/etc/Renviron.site \
+"
+STATUS=$?
+
+sudo umount $WORK/proc
+sudo umount $WORK/mnt/ee-mirror
+if [ $STATUS -eq 0 ]
+then
+  sudo rm -fr $WORK/tmp/renv.lock $WORK/mnt/ee-mirror
+  sudo tar -C $WORK -czf $OUTPUT . && sudo chown $(id -u):$(id -g) $OUTPUT
+  STATUS=$?
+fi
+if grep -q " $WORK/" /proc/mounts
+then
+  echo "$WORK still has mounted filesystems, skipping removal" >&2
+else
+  sudo rm -fr $WORK
+fi
+exit $STATUS
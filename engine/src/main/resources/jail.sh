@@ -6,46 +6,169 @@ JAIL=$1
 ANALYSIS_FILE=$2 #time.R
 
 DIST_ARCHIVE=$3
+# Files written in advance by the engine (JailProvisioner), copied into the jail at once
+STAGING=$JAIL/.ee-staging
 
-sudo tar xzf $DIST_ARCHIVE -C $JAIL
+# Decompresses the bundle by its extension, pigz and zstd use EXTRACT_THREADS threads (all cores by default)
+extract() {
+  THREADS=${EXTRACT_THREADS:-$(nproc)}
+  case "$1" in
+    *.tar.zst|*.tzst)
+      sudo tar -I "zstd -d -T$THREADS" -xf $1 -C $2
+      ;;
+    *)
+      if command -v pigz > /dev/null
+      then
+        sudo tar -I "pigz -d -p $THREADS" -xf $1 -C $2
+      else
+        sudo tar xzf $1 -C $2
+      fi
+      ;;
+  esac
+}
 
-export R_HOME=/usr/lib/R
-sudo cp /etc/resolv.conf $JAIL/etc/resolv.conf
+# MOUNT_DRIVERS=true exposes the host directory of JDBC_DRIVER_PATH read-only in the jail, hiding the bundle's copy
+mount_drivers() {
+  if [ "$MOUNT_DRIVERS" = "true" ] && [ -n "$JDBC_DRIVER_PATH" ] && [ -d "$JDBC_DRIVER_PATH" ]
+  then
+    sudo mkdir -p $JAIL$JDBC_DRIVER_PATH
+    sudo mount --bind $JDBC_DRIVER_PATH $JAIL$JDBC_DRIVER_PATH || return 1
+    sudo mount -o remount,bind,ro $JAIL$JDBC_DRIVER_PATH || { sudo umount $JAIL$JDBC_DRIVER_PATH; return 1; }
+  fi
+}
+
+# SCRATCH is the host directory of the analysis for temporary data, bind-mounted at /scratch
+mount_scratch() {
+  if [ -n "$SCRATCH" ]
+  then
+    sudo mkdir -p $JAIL/scratch
+    sudo mount --bind $SCRATCH $JAIL/scratch
+  fi
+}
+
+# JAIL_PHASE=prepare only materializes the environment, JAIL_PHASE=run, JAIL_PHASE=worker and JAIL_PHASE=mounts expect it to be prepared already
+if [ "$JAIL_PHASE" != "run" ] && [ "$JAIL_PHASE" != "worker" ] && [ "$JAIL_PHASE" != "mounts" ]
+then
+  if [ -n "$DIST_TREE" ] && [ -d "$DIST_TREE" ]
+  then
+    # Cached read-only tree: each top-level directory gets a writable overlay, the rest is copied
+    OVERLAY=$JAIL/.overlay
+    for ENTRY in $(sudo ls -A $DIST_TREE)
+    do
+      if [ -d "$DIST_TREE/$ENTRY" ] && [ ! -L "$DIST_TREE/$ENTRY" ]
+      then
+        sudo mkdir -p $OVERLAY/$ENTRY/upper $OVERLAY/$ENTRY/work $JAIL/$ENTRY
+        sudo mount -t overlay overlay -o lowerdir=$DIST_TREE/$ENTRY,upperdir=$OVERLAY/$ENTRY/upper,workdir=$OVERLAY/$ENTRY/work $JAIL/$ENTRY \
+          || sudo cp -a $DIST_TREE/$ENTRY/. $JAIL/$ENTRY/
+      else
+        sudo cp -a $DIST_TREE/$ENTRY $JAIL/
+      fi
+    done
+  else
+    extract $DIST_ARCHIVE $JAIL
+  fi
+
+  if [ ! -d "$STAGING" ]
+  then
+    sudo cp /etc/resolv.conf $JAIL/etc/resolv.conf
+  fi
+  if [ "$MOUNT_DRIVERS" != "true" ]
+  then
+    sudo cp -R /impala/. $JAIL/impala/
+  fi
+fi
+
+if [ "$JAIL_PHASE" = "prepare" ]
+then
+  exit 0
+fi
 
-if [ -n "$KRB_CONF" ]
+# Warm session is started before the analysis is known, its driver and scratch are mounted once it arrives
+if [ "$JAIL_PHASE" = "mounts" ]
 then
-  sudo cp $KRB_CONF $JAIL/etc/krb5.conf
+  mount_scratch || exit 1
+  mount_drivers || echo "Failed to mount drivers from $JDBC_DRIVER_PATH, the ones of the runtime environment are used" >&2
+  exit 0
 fi
-if [ -n "$KRB_KEYTAB" ]
+
+# Warm session: R loads the runtime in advance, /.ee-worker.R then waits for the analysis sent over stdin
+if [ "$JAIL_PHASE" = "worker" ]
 then
-  sudo cp $KRB_KEYTAB $JAIL/etc/krb.keytab
+  # Thread count hints of the CPU slot, BLAS and OpenMP read them once on load
+  THREAD_ENV=""
+  for VAR in OMP_NUM_THREADS OPENBLAS_NUM_THREADS MKL_NUM_THREADS MC_CORES
+  do
+    if [ -n "${!VAR}" ]
+    then
+      THREAD_ENV="$THREAD_ENV $VAR=$(printf %q "${!VAR}")"
+    fi
+  done
+  # R fixes its temporary directory on startup, so it has to be under /scratch already. The analysis scratch is
+  # mounted over it later on and /.ee-worker.R recreates the session directory there
+  sudo mkdir -p $JAIL/scratch
+  exec sudo unshare --fork --pid -- chroot $JAIL /bin/bash -c " \
+      mount -t proc proc /proc && \
+      export R_HOME=/usr/lib/R HOME=/root LANG=en_US.UTF-8 LC_ALL=en_US.UTF-8 TMPDIR=/scratch ANDROMEDA_TEMP_FOLDER=/scratch$THREAD_ENV && \
+      exec Rscript /.ee-worker.R \
+  "
 fi
-if [ -n "$BQ_KEYFILE" ]
+
+export R_HOME=/usr/lib/R
+
+if [ -d "$STAGING" ]
 then
-  sudo mkdir -p $(dirname $JAIL/$BQ_KEYFILE)
-  sudo cp $BQ_KEYFILE $JAIL/$BQ_KEYFILE
+  sudo sh -c "cp -R $STAGING/. $JAIL/ && rm -fr $STAGING" || exit 1
+else
+  if [ -n "$KRB_CONF" ]
+  then
+    sudo cp $KRB_CONF $JAIL/etc/krb5.conf
+  fi
+  if [ -n "$KRB_KEYTAB" ]
+  then
+    sudo cp $KRB_KEYTAB $JAIL/etc/krb.keytab
+  fi
+  if [ -n "$BQ_KEYFILE" ]
+  then
+    sudo mkdir -p $(dirname $JAIL/$BQ_KEYFILE)
+    sudo cp $BQ_KEYFILE $JAIL/$BQ_KEYFILE
+  fi
+
+  CHROOT_DEF=$JAIL/etc/R-with-krb.sh
+  sudo touch $CHROOT_DEF
+  printf "#!/usr/bin/env bash\n " | sudo tee -a $CHROOT_DEF > /dev/null
+  printf "	export DATA_SOURCE_NAME=%q \n" "${DATA_SOURCE_NAME}" | sudo tee -a $CHROOT_DEF > /dev/null
+  printf "	export DBMS_USERNAME=%q \n" "${DBMS_USERNAME}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export DBMS_PASSWORD=%q \n" "${DBMS_PASSWORD}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export DBMS_TYPE=%q \n" "${DBMS_TYPE}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export CONNECTION_STRING=%q \n" "${CONNECTION_STRING}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export DBMS_SCHEMA=%q \n" "${DBMS_SCHEMA}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export TARGET_SCHEMA=%q \n" "${TARGET_SCHEMA}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export RESULT_SCHEMA=%q \n" "${RESULT_SCHEMA}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export COHORT_TARGET_TABLE=%q \n" "${COHORT_TARGET_TABLE}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export ANALYSIS_ID=%q \n" "${ANALYSIS_ID}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export PATH=%q \n" "${PATH}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export HOME=%q \n" "${HOME}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  printf "	export JDBC_DRIVER_PATH=%q \n" "${JDBC_DRIVER_PATH}" | sudo tee -a $CHROOT_DEF  > /dev/null
+  for VAR in OMP_NUM_THREADS OPENBLAS_NUM_THREADS MKL_NUM_THREADS MC_CORES TMPDIR ANDROMEDA_TEMP_FOLDER
+  do
+    if [ -n "${!VAR}" ]
+    then
+      printf "	export %s=%q \n" "$VAR" "${!VAR}" | sudo tee -a $CHROOT_DEF  > /dev/null
+    fi
+  done
+  sudo tail --lines=+2 /etc/R-with-krb.sh  | sudo tee -a $CHROOT_DEF  > /dev/null
+
+  sudo chmod +x $CHROOT_DEF
 fi
 
-sudo cp -R /impala/. $JAIL/impala/
-CHROOT_DEF=$JAIL/etc/R-with-krb.sh
-sudo touch $CHROOT_DEF
-printf "#!/usr/bin/env bash\n " | sudo tee -a $CHROOT_DEF > /dev/null
-printf "	export DATA_SOURCE_NAME=%q \n" "${DATA_SOURCE_NAME}" | sudo tee -a $CHROOT_DEF > /dev/null
-printf "	export DBMS_USERNAME=%q \n" "${DBMS_USERNAME}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export DBMS_PASSWORD=%q \n" "${DBMS_PASSWORD}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export DBMS_TYPE=%q \n" "${DBMS_TYPE}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export CONNECTION_STRING=%q \n" "${CONNECTION_STRING}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export DBMS_SCHEMA=%q \n" "${DBMS_SCHEMA}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export TARGET_SCHEMA=%q \n" "${TARGET_SCHEMA}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export RESULT_SCHEMA=%q \n" "${RESULT_SCHEMA}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export COHORT_TARGET_TABLE=%q \n" "${COHORT_TARGET_TABLE}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export ANALYSIS_ID=%q \n" "${ANALYSIS_ID}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export PATH=%q \n" "${PATH}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export HOME=%q \n" "${HOME}" | sudo tee -a $CHROOT_DEF  > /dev/null
-printf "	export JDBC_DRIVER_PATH=%q \n" "${JDBC_DRIVER_PATH}" | sudo tee -a $CHROOT_DEF  > /dev/null
-sudo tail --lines=+2 /etc/R-with-krb.sh  | sudo tee -a $CHROOT_DEF  > /dev/null
-
-sudo chmod +x $CHROOT_DEF
+mount_scratch || exit 1
+mount_drivers || echo "Failed to mount drivers from $JDBC_DRIVER_PATH, the ones of the runtime environment are used" >&2
+
+# Analysis process tree is accounted and limited within its own cgroup
+if [ -n "$CGROUP" ]
+then
+  echo $$ | sudo tee $CGROUP/cgroup.procs > /dev/null
+fi
 
 sudo unshare --fork --pid -- chroot $JAIL /bin/bash -c " \
     mount -t proc proc /proc && \
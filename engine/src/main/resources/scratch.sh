@@ -0,0 +1,27 @@
+#!/usr/bin/env bash
+
+ACTION=$1
+DIR=$2
+# Size of the tmpfs mounted for the scratch directory, plain directory on the scratch volume if empty
+TMPFS_MB=$3
+
+case "$ACTION" in
+  create)
+    mkdir -p $DIR || exit 1
+    if [ -n "$TMPFS_MB" ]
+    then
+      sudo mount -t tmpfs -o size=${TMPFS_MB}m,mode=1777 tmpfs $DIR || exit 1
+    fi
+    ;;
+  remove)
+    if grep -q " $DIR " /proc/mounts
+    then
+      sudo umount $DIR || exit 1
+    fi
+    sudo rm -fr $DIR
+    ;;
+  *)
+    echo "Unknown action: $ACTION" >&2
+    exit 1
+    ;;
+esac
@@ -0,0 +1,119 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowFileReader;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArrowResultWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void shouldWriteTypedColumnsReadBack() throws Exception {
+
+        RowSetMetaDataImpl metaData = (RowSetMetaDataImpl) CsvResultWriterTest.metaData(
+                new String[]{"id", "amount", "ratio", "born", "seen", "name", "flag", "name", "total"},
+                new int[]{Types.BIGINT, Types.NUMERIC, Types.DOUBLE, Types.DATE, Types.TIMESTAMP, Types.VARCHAR,
+                        Types.BOOLEAN, Types.VARCHAR, Types.NUMERIC});
+        metaData.setPrecision(2, 10);
+        metaData.setScale(2, 2);
+        List<Object[]> rows = Arrays.asList(
+                new Object[]{42L, new BigDecimal("12.50"), 0.1, Date.valueOf("2020-02-29"),
+                        Timestamp.valueOf("2021-03-04 05:06:07.089"), "Zürich 😀", true, "again", "12345678901234567890.5"},
+                new Object[9]);
+
+        File file = new File(dir, "result.arrow");
+        try (ResultWriter writer = ResultFormat.ARROW.open(file.toPath(), ',', 3)) {
+            assertThat(writer.write(CsvResultWriterTest.resultSet(metaData, rows))).isEqualTo(2);
+        }
+
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowFileReader reader = new ArrowFileReader(Files.newByteChannel(file.toPath()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema().getFields().stream().map(Field::getName).collect(Collectors.toList()))
+                    .containsExactly("id", "amount", "ratio", "born", "seen", "name", "flag", "name_2", "total");
+            assertThat(root.getSchema().findField("amount").getType()).isEqualTo(new ArrowType.Decimal(10, 2, 128));
+            assertThat(root.getSchema().findField("total").getType()).isEqualTo(ArrowType.Utf8.INSTANCE);
+
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(2);
+            assertThat(((BigIntVector) root.getVector("id")).get(0)).isEqualTo(42L);
+            assertThat(((DecimalVector) root.getVector("amount")).getObject(0)).isEqualTo(new BigDecimal("12.50"));
+            assertThat(((Float8Vector) root.getVector("ratio")).get(0)).isEqualTo(0.1);
+            assertThat(((DateDayVector) root.getVector("born")).get(0)).isEqualTo((int) LocalDate.of(2020, 2, 29).toEpochDay());
+            assertThat(((TimeStampMicroVector) root.getVector("seen")).get(0)).isEqualTo(
+                    LocalDateTime.of(2021, 3, 4, 5, 6, 7).toEpochSecond(ZoneOffset.UTC) * 1_000_000L + 89_000L);
+            assertThat(text(root, "name", 0)).isEqualTo("Zürich 😀");
+            assertThat(((BitVector) root.getVector("flag")).get(0)).isEqualTo(1);
+            assertThat(text(root, "name_2", 0)).isEqualTo("again");
+            assertThat(text(root, "total", 0)).isEqualTo("12345678901234567890.5");
+            for (FieldVector vector : root.getFieldVectors()) {
+                assertThat(vector.isNull(1)).isTrue();
+            }
+            assertThat(reader.loadNextBatch()).isFalse();
+        }
+    }
+
+    @Test
+    public void shouldSplitRowsIntoBatches() throws Exception {
+
+        List<Object[]> rows = new ArrayList<>();
+        for (long i = 0; i <= ArrowResultWriter.BATCH_ROWS; i++) {
+            rows.add(new Object[]{i, "row " + i});
+        }
+
+        File file = new File(dir, "result.arrow");
+        try (ResultWriter writer = ResultFormat.ARROW.open(file.toPath(), ',', 3)) {
+            writer.write(CsvResultWriterTest.resultSet(
+                    CsvResultWriterTest.metaData(new String[]{"id", "name"}, new int[]{Types.BIGINT, Types.VARCHAR}), rows));
+        }
+
+        try (BufferAllocator allocator = new RootAllocator();
+             ArrowFileReader reader = new ArrowFileReader(Files.newByteChannel(file.toPath()), allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(reader.getRecordBlocks()).hasSize(2);
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(ArrowResultWriter.BATCH_ROWS);
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(1);
+            assertThat(((BigIntVector) root.getVector("id")).get(0)).isEqualTo(ArrowResultWriter.BATCH_ROWS);
+            assertThat(text(root, "name", 0)).isEqualTo("row " + ArrowResultWriter.BATCH_ROWS);
+        }
+    }
+
+    private static String text(VectorSchemaRoot root, String name, int row) {
+
+        return new String(((VarCharVector) root.getVector(name)).get(row), StandardCharsets.UTF_8);
+    }
+}
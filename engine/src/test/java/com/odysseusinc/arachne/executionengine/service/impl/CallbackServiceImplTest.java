@@ -0,0 +1,59 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisExecutionStatusDTO;
+import java.util.Optional;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+public class CallbackServiceImplTest {
+
+    private RestTemplate restTemplate;
+    private CallbackServiceImpl service;
+
+    @BeforeEach
+    public void setUp() {
+
+        restTemplate = mock(RestTemplate.class);
+        DiskQuotaMonitor diskQuotaMonitor = mock(DiskQuotaMonitor.class);
+        when(diskQuotaMonitor.getBytesWritten(any())).thenReturn(Optional.empty());
+        service = new CallbackServiceImpl(restTemplate, new RetryTemplate(), new RetryTemplate(), diskQuotaMonitor);
+        ReflectionTestUtils.setField(service, "submissionUpdateInterval", 60000L);
+        ReflectionTestUtils.setField(service, "stdoutTailSize", 10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldKeepTailOfOutputPendingBetweenUpdates() {
+
+        service.updateAnalysisStatus("url", 1L, "first\n", "pass");
+        for (int i = 0; i < 100; i++) {
+            service.updateAnalysisStatus("url", 1L, StringUtils.repeat('x', 100), "pass");
+        }
+        // Next update is due
+        ReflectionTestUtils.setField(service, "submissionUpdateInterval", -1L);
+        service.updateAnalysisStatus("url", 1L, "last\n", "pass");
+
+        ArgumentCaptor<HttpEntity> entities = ArgumentCaptor.forClass(HttpEntity.class);
+        verify(restTemplate, times(2)).exchange(eq("url"), eq(HttpMethod.POST), entities.capture(), eq(String.class), eq(1L), anyString());
+        assertThat(((AnalysisExecutionStatusDTO) entities.getAllValues().get(0).getBody()).getStdout()).isEqualTo("first\n");
+        String stdout = ((AnalysisExecutionStatusDTO) entities.getAllValues().get(1).getBody()).getStdout();
+        assertThat(stdout).endsWith("xxxxx" + "last\n").contains("characters skipped");
+        assertThat(stdout.length()).isLessThan(100);
+    }
+}
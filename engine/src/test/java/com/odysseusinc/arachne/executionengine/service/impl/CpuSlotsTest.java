@@ -0,0 +1,45 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class CpuSlotsTest {
+
+    @Test
+    public void shouldPinToFreeCoresFirst() {
+
+        CpuSlots slots = new CpuSlots(true, 8, 4);
+
+        CpuSlots.Slot first = slots.allocate(null).get();
+        CpuSlots.Slot second = slots.allocate(3.5).get();
+        CpuSlots.Slot third = slots.allocate(4.0).get();
+
+        assertThat(first.getCpuList()).isEqualTo("0,1");
+        assertThat(second.getCpuList()).isEqualTo("2,3,4,5");
+        // Only two cores are left, the least used ones are shared
+        assertThat(third.getCpuList()).isEqualTo("0,1,6,7");
+        assertThat(slots.getShared()).isEqualTo(1);
+
+        slots.release(second);
+
+        assertThat(slots.allocate(2.0).get().getCpuList()).isEqualTo("2,3");
+        assertThat(slots.getCoreUsage()).isEqualTo("[2, 2, 1, 1, 0, 0, 1, 1]");
+    }
+
+    @Test
+    public void shouldMatchThreadCountToSlotSize() {
+
+        Map<String, String> envp = new HashMap<>();
+
+        new CpuSlots(true, 8, 4).allocate(3.0).get().putThreadVariables(envp);
+
+        assertThat(envp).containsEntry("OMP_NUM_THREADS", "3")
+                .containsEntry("OPENBLAS_NUM_THREADS", "3")
+                .containsEntry("MKL_NUM_THREADS", "3")
+                .containsEntry("MC_CORES", "3");
+        assertThat(new CpuSlots(false, 8, 4).allocate(3.0)).isEmpty();
+    }
+}
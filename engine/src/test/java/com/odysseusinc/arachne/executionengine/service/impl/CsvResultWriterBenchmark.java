@@ -0,0 +1,83 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Rows per second of {@link CsvResultWriter} against the writer it replaced, on an in-memory result set.
+ * Not part of the regular test run, start it with -Dtest=CsvResultWriterBenchmark.
+ */
+public class CsvResultWriterBenchmark {
+
+    private static final int ROWS = 200_000;
+    private static final int ROUNDS = 10;
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void compareWriters() throws Exception {
+
+        ResultSetMetaData metaData = CsvResultWriterTest.metaData(
+                new String[]{"person_id", "year_of_birth", "value_as_number", "observation_date", "observation_datetime", "source_value"},
+                new int[]{Types.BIGINT, Types.INTEGER, Types.DOUBLE, Types.DATE, Types.TIMESTAMP, Types.VARCHAR});
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            rows.add(new Object[]{(long) i * 7919, 1900 + i % 120, i % 3 == 0 ? null : i / 7.0,
+                    new Date(1_500_000_000_000L + i * 86_400_000L), new Timestamp(1_500_000_000_000L + i * 1_000L),
+                    "source value " + i});
+        }
+        for (int round = 1; round <= ROUNDS; round++) {
+            File legacy = new File(dir, "legacy.csv");
+            File csv = new File(dir, "csv.csv");
+            long started = System.nanoTime();
+            writeLegacy(CsvResultWriterTest.resultSet(metaData, rows), legacy, ',');
+            long legacyNanos = System.nanoTime() - started;
+            started = System.nanoTime();
+            try (CsvResultWriter writer = new CsvResultWriter(csv.toPath(), ',')) {
+                writer.write(CsvResultWriterTest.resultSet(metaData, rows));
+            }
+            long csvNanos = System.nanoTime() - started;
+            System.out.printf("Round %d: PrintWriter %,d rows/s, CsvResultWriter %,d rows/s%n",
+                    round, ROWS * 1_000_000_000L / legacyNanos, ROWS * 1_000_000_000L / csvNanos);
+            legacy.delete();
+            csv.delete();
+        }
+    }
+
+    // SQLServiceImpl.SqlExecutor.processResultSet before CsvResultWriter
+    private static void writeLegacy(ResultSet resultSet, File file, char csvSeparator) throws Exception {
+
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(file, true)))) {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            int columnCount = metaData.getColumnCount();
+            for (int column = 1; column <= columnCount; column++) {
+                out.append(metaData.getColumnLabel(column));
+                if (column < columnCount) {
+                    out.append(csvSeparator);
+                }
+            }
+            out.append("\r\n");
+            while (resultSet.next()) {
+                for (int ii = 1; ii <= columnCount; ii++) {
+                    out.print(resultSet.getObject(ii));
+                    if (ii < columnCount) {
+                        out.print(csvSeparator);
+                    }
+                }
+                out.print("\r\n");
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.github.luben.zstd.ZstdInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CsvResultWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void shouldWriteEscapedTypedValues() throws Exception {
+
+        ResultSetMetaData metaData = metaData(new String[]{"id", "amount", "ratio", "born", "seen", "name;quoted", "flag"},
+                new int[]{Types.BIGINT, Types.NUMERIC, Types.DOUBLE, Types.DATE, Types.TIMESTAMP, Types.VARCHAR, Types.BOOLEAN});
+        List<Object[]> rows = new ArrayList<>();
+        rows.add(row(Long.MIN_VALUE, new BigDecimal("12.50"), 3.0, Date.valueOf("2020-02-29"),
+                Timestamp.valueOf("2021-03-04 05:06:07.089"), "say \"hi\";\r\nbye", true));
+        rows.add(row(42L, new BigDecimal("-0.001"), 0.1, Date.valueOf("0999-01-02"),
+                Timestamp.valueOf("2021-03-04 05:06:07"), "Zürich 😀", false));
+        rows.add(new Object[7]);
+        rows.add(row(0L, BigDecimal.ZERO, 1.0E7, Date.valueOf("2000-12-31"), Timestamp.valueOf("1999-12-31 23:59:59.123456789"), "", true));
+
+        File file = new File(dir, "result.csv");
+        try (CsvResultWriter writer = new CsvResultWriter(file.toPath(), ';')) {
+            assertThat(writer.write(resultSet(metaData, rows))).isEqualTo(4);
+        }
+
+        assertThat(FileUtils.readFileToString(file, StandardCharsets.UTF_8)).isEqualTo(
+                "id;amount;ratio;born;seen;\"name;quoted\";flag\r\n"
+                        + "-9223372036854775808;12.50;3.0;2020-02-29;2021-03-04 05:06:07.089;\"say \"\"hi\"\";\r\nbye\";true\r\n"
+                        + "42;-0.001;0.1;0999-01-02;2021-03-04 05:06:07.0;Zürich 😀;false\r\n"
+                        + ";;;;;;\r\n"
+                        + "0;0;1.0E7;2000-12-31;1999-12-31 23:59:59.123456789;;true\r\n");
+    }
+
+    @Test
+    public void shouldAppendToExistingFile() throws Exception {
+
+        File file = new File(dir, "result.csv");
+        for (int i = 0; i < 2; i++) {
+            ResultSet rows = resultSet(metaData(new String[]{"n"}, new int[]{Types.INTEGER}), Collections.singletonList(row(i)));
+            try (CsvResultWriter writer = new CsvResultWriter(file.toPath(), ',')) {
+                writer.write(rows);
+            }
+        }
+
+        assertThat(FileUtils.readFileToString(file, StandardCharsets.UTF_8)).isEqualTo("n\r\n0\r\nn\r\n1\r\n");
+    }
+
+    @Test
+    public void shouldWriteCompressedFramesReadBackAsSingleStream() throws Exception {
+
+        File gzip = new File(dir, "result.csv.gz");
+        File zstd = new File(dir, "result.csv.zst");
+        for (int i = 0; i < 2; i++) {
+            for (File file : new File[]{gzip, zstd}) {
+                ResultSet rows = resultSet(metaData(new String[]{"n"}, new int[]{Types.INTEGER}), Collections.singletonList(row(i)));
+                try (ResultWriter writer = ResultFormat.of(file.getName().substring(7)).open(file.toPath(), ',', 1)) {
+                    writer.write(rows);
+                }
+            }
+        }
+
+        try (InputStream in = new GZIPInputStream(new FileInputStream(gzip))) {
+            assertThat(IOUtils.toString(in, StandardCharsets.UTF_8)).isEqualTo("n\r\n0\r\nn\r\n1\r\n");
+        }
+        try (InputStream in = new ZstdInputStream(new FileInputStream(zstd))) {
+            assertThat(IOUtils.toString(in, StandardCharsets.UTF_8)).isEqualTo("n\r\n0\r\nn\r\n1\r\n");
+        }
+    }
+
+    private static Object[] row(Object... values) {
+
+        return values;
+    }
+
+    static ResultSetMetaData metaData(String[] labels, int[] types) throws SQLException {
+
+        RowSetMetaDataImpl metaData = new RowSetMetaDataImpl();
+        metaData.setColumnCount(labels.length);
+        for (int i = 0; i < labels.length; i++) {
+            metaData.setColumnLabel(i + 1, labels[i]);
+            metaData.setColumnType(i + 1, types[i]);
+            metaData.setSigned(i + 1, true);
+        }
+        return metaData;
+    }
+
+    /**
+     * Result set over rows in memory, getters do no more than a driver holding the row would.
+     */
+    static ResultSet resultSet(ResultSetMetaData metaData, List<Object[]> rows) {
+
+        int[] cursor = {-1};
+        boolean[] wasNull = {false};
+        return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class}, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "next":
+                    return ++cursor[0] < rows.size();
+                case "getMetaData":
+                    return metaData;
+                case "wasNull":
+                    return wasNull[0];
+                case "close":
+                    return null;
+                default:
+                    break;
+            }
+            Object value = rows.get(cursor[0])[(Integer) args[0] - 1];
+            wasNull[0] = value == null;
+            switch (method.getName()) {
+                case "getLong":
+                    return value == null ? 0L : ((Number) value).longValue();
+                case "getDouble":
+                    return value == null ? 0d : ((Number) value).doubleValue();
+                case "getFloat":
+                    return value == null ? 0f : ((Number) value).floatValue();
+                case "getBoolean":
+                    return value != null && (Boolean) value;
+                default:
+                    return value;
+            }
+        });
+    }
+}
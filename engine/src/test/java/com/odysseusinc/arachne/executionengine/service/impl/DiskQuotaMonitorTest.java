@@ -0,0 +1,62 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DiskQuotaMonitorTest {
+
+    @TempDir
+    Path workDir;
+
+    @Test
+    public void shouldTrackOutputAndReportExceededQuota() throws Exception {
+
+        DiskQuotaMonitor monitor = new DiskQuotaMonitor(true, 1, 0);
+        monitor.init();
+        try {
+            Files.write(workDir.resolve("existing.csv"), new byte[100]);
+            CompletableFuture<String> exceeded = new CompletableFuture<>();
+            DiskQuotaMonitor.Watch watch = monitor.watch(1L, workDir.toFile(), Optional.empty(), exceeded::complete).get();
+            assertThat(watch.getBytes()).isEqualTo(100);
+
+            // Runtime environment of the jail is not analysis output
+            File usr = workDir.resolve("usr").toFile();
+            FileUtils.writeByteArrayToFile(new File(usr, "lib/R/libR.so"), new byte[(int) FileUtils.ONE_MB]);
+            FileUtils.writeByteArrayToFile(workDir.resolve("results/nested/out.csv").toFile(), new byte[200]);
+            await(() -> watch.getBytes() == 300);
+            assertThat(monitor.getBytesWritten(1L)).contains(300L);
+            assertThat(exceeded).isNotDone();
+
+            FileUtils.writeByteArrayToFile(workDir.resolve("results/debug.csv").toFile(), new byte[(int) FileUtils.ONE_MB]);
+            assertThat(exceeded.get(5, TimeUnit.SECONDS)).contains("exceeded the disk quota of 1 MB");
+
+            FileUtils.deleteDirectory(workDir.resolve("results").toFile());
+            await(() -> watch.getBytes() == 100);
+            assertThat(watch.getPeakBytes()).isGreaterThan(FileUtils.ONE_MB);
+
+            monitor.release(watch);
+            assertThat(monitor.getBytesWritten(1L)).isEmpty();
+            assertThat(monitor.getWatchedDirectories()).isZero();
+        } finally {
+            monitor.destroy();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+
+        for (int i = 0; i < 250 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(20);
+        }
+        assertThat(condition.getAsBoolean()).isTrue();
+    }
+}
@@ -0,0 +1,82 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+public class ExecutionSlotsTest {
+
+    @Test
+    public void shouldQueueOverLimitAndHandOverReleasedSlots() {
+
+        ExecutionSlots slots = new ExecutionSlots(1, 0);
+
+        CompletableFuture<Void> first = slots.acquire(0);
+        CompletableFuture<Void> second = slots.acquire(0);
+        CompletableFuture<Void> third = slots.acquire(0);
+
+        assertThat(first).isDone();
+        assertThat(second).isNotDone();
+        assertThat(slots.getWaiting()).isEqualTo(2);
+
+        slots.release(0);
+        assertThat(second).isDone();
+        assertThat(third).isNotDone();
+        assertThat(slots.getRunning()).isEqualTo(1);
+
+        slots.release(0);
+        slots.release(0);
+        assertThat(third).isDone();
+        assertThat(slots.getRunning()).isZero();
+        assertThat(slots.getWaiting()).isZero();
+    }
+
+    @Test
+    public void shouldAdmitOnlyWhileReservationsFitMemoryBudget() {
+
+        ExecutionSlots slots = new ExecutionSlots(8, 1000);
+
+        CompletableFuture<Void> first = slots.acquire(600);
+        CompletableFuture<Void> second = slots.acquire(600);
+        CompletableFuture<Void> small = slots.acquire(100);
+
+        assertThat(first).isDone();
+        assertThat(second).isNotDone();
+        // FIFO order is kept even when a later request would fit
+        assertThat(small).isNotDone();
+        assertThat(slots.getReservedMb()).isEqualTo(600);
+
+        slots.release(600);
+        assertThat(second).isDone();
+        assertThat(small).isDone();
+        assertThat(slots.getReservedMb()).isEqualTo(700);
+    }
+
+    @Test
+    public void shouldAdmitReservationOverBudgetWhenIdle() {
+
+        ExecutionSlots slots = new ExecutionSlots(8, 1000);
+
+        assertThat(slots.acquire(4000)).isDone();
+        CompletableFuture<Void> next = slots.acquire(100);
+        assertThat(next).isNotDone();
+
+        slots.release(4000);
+        assertThat(next).isDone();
+    }
+
+    @Test
+    public void shouldAdmitNextWhenBlockingRequestIsWithdrawn() {
+
+        ExecutionSlots slots = new ExecutionSlots(8, 1000);
+
+        slots.acquire(600);
+        CompletableFuture<Void> large = slots.acquire(600);
+        CompletableFuture<Void> small = slots.acquire(100);
+
+        assertThat(slots.withdraw(large)).isTrue();
+        assertThat(small).isDone();
+        assertThat(slots.withdraw(small)).isFalse();
+    }
+}
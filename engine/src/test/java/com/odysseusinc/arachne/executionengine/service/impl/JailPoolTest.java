@@ -0,0 +1,44 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+
+public class JailPoolTest {
+
+    @Test
+    public void shouldPassWorkerOutputToAnalysisThatTakesIt() throws Exception {
+
+        PipedOutputStream worker = new PipedOutputStream();
+        JailPool.WorkerOutput output = new JailPool.WorkerOutput(new PipedInputStream(worker), new File("jail"));
+        CompletableFuture<Void> reading = CompletableFuture.runAsync(output);
+
+        InputStream taken = output.attach();
+        worker.write("analysis\n".getBytes(StandardCharsets.UTF_8));
+        worker.close();
+
+        assertThat(IOUtils.toString(taken, StandardCharsets.UTF_8)).isEqualTo("analysis\n");
+        reading.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void shouldEndOutputOfWorkerThatExitedWhileIdle() throws Exception {
+
+        PipedOutputStream worker = new PipedOutputStream();
+        JailPool.WorkerOutput output = new JailPool.WorkerOutput(new PipedInputStream(worker), new File("jail"));
+        CompletableFuture<Void> reading = CompletableFuture.runAsync(output);
+        worker.write("loading\n".getBytes(StandardCharsets.UTF_8));
+        worker.close();
+        reading.get(10, TimeUnit.SECONDS);
+
+        assertThat(IOUtils.toString(output.attach(), StandardCharsets.UTF_8)).isEmpty();
+    }
+}
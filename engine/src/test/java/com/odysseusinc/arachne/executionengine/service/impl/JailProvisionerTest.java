@@ -0,0 +1,39 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JailProvisionerTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldExportValuesAsIs() throws Exception {
+
+        Map<String, String> envp = new HashMap<>();
+        envp.put("DBMS_PASSWORD", "it's $HOME `id` \"quoted\" \\ ;");
+        envp.put("CONNECTION_STRING", "jdbc:postgresql://host/db?ssl=true&user=x y");
+        String template = "#!/usr/bin/env bash\nprintf '%s|%s|%s' \"$DBMS_PASSWORD\" \"$CONNECTION_STRING\" \"$DBMS_SCHEMA\"\n";
+
+        String script = JailProvisioner.buildEnvironmentScript(envp,
+                Arrays.asList("DBMS_PASSWORD", "CONNECTION_STRING", "DBMS_SCHEMA"), template);
+        File file = tempDir.resolve("R-with-krb.sh").toFile();
+        FileUtils.writeStringToFile(file, script, StandardCharsets.UTF_8);
+        Process process = new ProcessBuilder("bash", file.getAbsolutePath()).start();
+
+        assertThat(IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8))
+                .isEqualTo(envp.get("DBMS_PASSWORD") + "|" + envp.get("CONNECTION_STRING") + "|");
+        assertThat(process.waitFor()).isZero();
+    }
+}
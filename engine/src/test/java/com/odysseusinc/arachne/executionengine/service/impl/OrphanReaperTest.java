@@ -0,0 +1,88 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class OrphanReaperTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void shouldKillProcessesLeftByAnalysis() throws Exception {
+
+        OrphanReaper reaper = new OrphanReaper(3600, tempDir.resolve("ledger.json").toString());
+        reaper.init();
+        // Background sleep outlives its parent and gets reparented
+        Process process = new ProcessBuilder("bash", "-c", "sleep 300 & sleep 2").start();
+        long pid = ProcessTree.pidOf(process);
+        try {
+            reaper.track(1L, process, false);
+            Set<Long> tree = ProcessTree.withDescendants(pid);
+            for (int i = 0; i < 50 && tree.size() < 2; i++) {
+                Thread.sleep(20);
+                tree = ProcessTree.withDescendants(pid);
+            }
+            reaper.sweep();
+            process.waitFor();
+            long orphan = tree.stream().filter(p -> p != pid).findFirst().get();
+            assertThat(isRunning(orphan)).isTrue();
+
+            reaper.release(1L);
+            reaper.sweep();
+
+            for (int i = 0; i < 50 && isRunning(orphan); i++) {
+                Thread.sleep(20);
+            }
+            assertThat(isRunning(orphan)).isFalse();
+            assertThat(reaper.getReaped()).isEqualTo(1);
+        } finally {
+            reaper.destroy();
+            ProcessTree.signal(ProcessTree.withDescendants(pid), "KILL", false);
+        }
+    }
+
+    @Test
+    public void shouldKillProcessDetachedBetweenSweeps() throws Exception {
+
+        OrphanReaper reaper = new OrphanReaper(3600, tempDir.resolve("ledger.json").toString());
+        reaper.init();
+        // Subshell exits right away, the sleep it started is never in the tree of the analysis
+        Process process = new ProcessBuilder(OrphanReaper.inNewSession(new String[]{"bash", "-c", "(sleep 300 &); sleep 1"})).start();
+        long pid = ProcessTree.pidOf(process);
+        long orphan = -1;
+        try {
+            reaper.track(1L, process, false);
+            process.waitFor();
+            orphan = ProcessTree.sessions().get(pid).stream().filter(p -> p != pid).findFirst().get();
+            assertThat(isRunning(orphan)).isTrue();
+
+            reaper.release(1L);
+            reaper.sweep();
+
+            for (int i = 0; i < 50 && isRunning(orphan); i++) {
+                Thread.sleep(20);
+            }
+            assertThat(isRunning(orphan)).isFalse();
+            assertThat(reaper.getReaped()).isEqualTo(1);
+        } finally {
+            reaper.destroy();
+            if (orphan > 0) {
+                ProcessTree.signal(Collections.singletonList(orphan), "KILL", false);
+            }
+        }
+    }
+
+    // Killed orphan might stay a zombie if nothing reaps it
+    private static boolean isRunning(long pid) {
+
+        return ProcessStats.read(pid).filter(stats -> !stats.isZombie()).isPresent();
+    }
+}
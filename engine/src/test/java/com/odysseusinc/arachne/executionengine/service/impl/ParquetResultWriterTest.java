@@ -0,0 +1,78 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.sql.rowset.RowSetMetaDataImpl;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.example.GroupReadSupport;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.Type;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ParquetResultWriterTest {
+
+    @TempDir
+    File dir;
+
+    @Test
+    public void shouldWriteTypedColumnsReadBack() throws Exception {
+
+        RowSetMetaDataImpl metaData = (RowSetMetaDataImpl) CsvResultWriterTest.metaData(
+                new String[]{"id", "amount", "ratio", "born", "seen", "name", "flag", "name", "total"},
+                new int[]{Types.BIGINT, Types.NUMERIC, Types.DOUBLE, Types.DATE, Types.TIMESTAMP, Types.VARCHAR,
+                        Types.BOOLEAN, Types.VARCHAR, Types.NUMERIC});
+        metaData.setPrecision(2, 10);
+        metaData.setScale(2, 2);
+        List<Object[]> rows = Arrays.asList(
+                new Object[]{42L, new BigDecimal("12.50"), 0.1, Date.valueOf("2020-02-29"),
+                        Timestamp.valueOf("2021-03-04 05:06:07.089"), "Zürich 😀", true, "again", "12345678901234567890.5"},
+                new Object[9]);
+
+        File file = new File(dir, "result.parquet");
+        try (ResultWriter writer = ResultFormat.PARQUET.open(file.toPath(), ',', 3)) {
+            assertThat(writer.write(CsvResultWriterTest.resultSet(metaData, rows))).isEqualTo(2);
+        }
+
+        try (ParquetReader<Group> reader = ParquetReader.builder(new GroupReadSupport(), new Path(file.toURI())).build()) {
+            Group first = reader.read();
+            assertThat(first.getType().getFields().stream().map(Type::getName).collect(Collectors.toList()))
+                    .containsExactly("id", "amount", "ratio", "born", "seen", "name", "flag", "name_2", "total");
+            assertThat(first.getType().getType("amount").getLogicalTypeAnnotation())
+                    .isEqualTo(LogicalTypeAnnotation.decimalType(2, 10));
+            assertThat(first.getType().getType("total").getLogicalTypeAnnotation())
+                    .isEqualTo(LogicalTypeAnnotation.stringType());
+            assertThat(first.getLong("id", 0)).isEqualTo(42L);
+            assertThat(new BigDecimal(new BigInteger(first.getBinary("amount", 0).getBytes()), 2))
+                    .isEqualTo(new BigDecimal("12.50"));
+            assertThat(first.getDouble("ratio", 0)).isEqualTo(0.1);
+            assertThat(first.getInteger("born", 0)).isEqualTo((int) LocalDate.of(2020, 2, 29).toEpochDay());
+            assertThat(first.getLong("seen", 0)).isEqualTo(
+                    LocalDateTime.of(2021, 3, 4, 5, 6, 7).toEpochSecond(ZoneOffset.UTC) * 1_000_000L + 89_000L);
+            assertThat(first.getString("name", 0)).isEqualTo("Zürich 😀");
+            assertThat(first.getBoolean("flag", 0)).isTrue();
+            assertThat(first.getString("name_2", 0)).isEqualTo("again");
+            assertThat(first.getString("total", 0)).isEqualTo("12345678901234567890.5");
+
+            Group nulls = reader.read();
+            for (int field = 0; field < nulls.getType().getFieldCount(); field++) {
+                assertThat(nulls.getFieldRepetitionCount(field)).isZero();
+            }
+            assertThat(reader.read()).isNull();
+        }
+    }
+}
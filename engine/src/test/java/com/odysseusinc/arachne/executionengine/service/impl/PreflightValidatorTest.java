@@ -0,0 +1,137 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRequestDTO;
+import com.odysseusinc.arachne.executionengine.util.exception.PreflightException;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.DefaultResourceLoader;
+
+public class PreflightValidatorTest {
+
+    @TempDir
+    File analysisDir;
+
+    @Test
+    public void shouldAcceptSqlRequests() throws Exception {
+
+        for (String name : new String[]{"SQL_Request.sql", "SQL_Request_2.sql", "SQL_Request_3.sql"}) {
+            String sql = IOUtils.resourceToString("/sqlRequest/" + name, StandardCharsets.UTF_8);
+            assertThat(PreflightValidator.checkSql(name, sql)).isEmpty();
+        }
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT 'it''s' AS \"name(\" FROM t -- it's\n/* ( */;")).isEmpty();
+        assertThat(PreflightValidator.checkSql("a.sql", "CREATE FUNCTION f() AS $body$ SELECT ')' $body$ LANGUAGE sql;")).isEmpty();
+    }
+
+    @Test
+    public void shouldAcceptEscapeAndAlternativeQuotedLiterals() {
+
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT E'it\\'s', e'don\\'t' AS note FROM t;")).isEmpty();
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT q'[it's]', Q'{a'b}', nq'!x'!', q'<y'z>' FROM dual;")).isEmpty();
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT type'x', 1 FROM t;")).isEmpty();
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT 1;\nSELECT q'[x' FROM dual;"))
+                .containsExactly("a.sql:2: unterminated string literal");
+    }
+
+    @Test
+    public void shouldReportSqlProblems() {
+
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT 1;\nSELECT 'x FROM t;"))
+                .containsExactly("a.sql:2: unterminated string literal");
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT count(*\nFROM t;")).containsExactly("a.sql: 1 unclosed '('");
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT 1)\n;")).containsExactly("a.sql:1: unexpected ')'");
+        assertThat(PreflightValidator.checkSql("a.sql", "SELECT 1; /* never closed")).containsExactly("a.sql:1: unterminated comment");
+        assertThat(PreflightValidator.checkSql("a.sql", "-- nothing to run\n")).containsExactly("a.sql: no statements");
+    }
+
+    @Test
+    public void shouldRejectUnknownResultFormat() throws Exception {
+
+        PreflightValidator validator = new PreflightValidator(new DefaultResourceLoader(), true, "", 10, 2);
+        FileUtils.writeStringToFile(new File(analysisDir, "query.sql"), "SELECT 1;", StandardCharsets.UTF_8);
+        AnalysisSyncRequestDTO analysis = request("query.sql");
+
+        analysis.setResultFormat("CSV.GZ");
+        validator.validate(analysis, analysisDir);
+        analysis.setResultFormat("parquet");
+        validator.validate(analysis, analysisDir);
+        analysis.setResultFormat(".arrow");
+        validator.validate(analysis, analysisDir);
+        analysis.setResultFormat("xlsx");
+        assertThatThrownBy(() -> validator.validate(analysis, analysisDir))
+                .hasMessageContaining("Result format xlsx is unknown, supported: csv, csv.gz, csv.zst, parquet, arrow");
+        validator.destroy();
+    }
+
+    @Test
+    public void shouldOnlyWarnAboutSqlProblems() throws Exception {
+
+        PreflightValidator validator = new PreflightValidator(new DefaultResourceLoader(), true, "", 10, 2);
+        FileUtils.writeStringToFile(new File(analysisDir, "query.sql"), "SELECT count(* FROM t;", StandardCharsets.UTF_8);
+
+        validator.validate(request("query.sql"), analysisDir);
+
+        assertThat(validator.getRejected()).isZero();
+        assertThat(validator.getWarned()).isEqualTo(1);
+        validator.destroy();
+    }
+
+    @Test
+    public void shouldRejectMissingEntryPointAndWarnAboutSourcedFiles() throws Exception {
+
+        PreflightValidator validator = new PreflightValidator(new DefaultResourceLoader(), true, "", 10, 2);
+        FileUtils.writeStringToFile(new File(analysisDir, "R/helpers.R"), "f <- function() 1\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(analysisDir, "main.R"),
+                "source(\"R/helpers.R\")\n# source(\"old.R\")\nsys.source(file = 'missing.R')\nsource(\"/opt/shared.R\")\n",
+                StandardCharsets.UTF_8);
+
+        assertThat(PreflightValidator.checkSources(analysisDir, new File(analysisDir, "main.R"),
+                FileUtils.readFileToString(new File(analysisDir, "main.R"), StandardCharsets.UTF_8)))
+                .containsExactly("main.R:3: sourced file missing.R not found");
+        validator.validate(request("main.R"), analysisDir);
+        assertThatThrownBy(() -> validator.validate(request("other.R"), analysisDir))
+                .isInstanceOf(PreflightException.class)
+                .hasMessageContaining("other.R: file not found");
+
+        assertThat(validator.getValidated()).isEqualTo(2);
+        assertThat(validator.getRejected()).isEqualTo(1);
+        assertThat(validator.getWarned()).isEqualTo(1);
+        validator.destroy();
+    }
+
+    @Test
+    public void shouldAcceptScriptSourcingGeneratedFile() throws Exception {
+
+        PreflightValidator validator = new PreflightValidator(new DefaultResourceLoader(), true, "", 10, 2);
+        FileUtils.writeStringToFile(new File(analysisDir, "main.R"),
+                "writeLines(\"x <- 1\", \"generated.R\")\nsource(\"generated.R\")\nprint(x)\n", StandardCharsets.UTF_8);
+
+        validator.validate(request("main.R"), analysisDir);
+
+        assertThat(validator.getRejected()).isZero();
+        validator.destroy();
+    }
+
+    @Test
+    public void shouldTrustParserOfSameRMinorVersionOnly() {
+
+        assertThat(PreflightValidator.sameMinor("4.2.1", "4.2.3")).isTrue();
+        assertThat(PreflightValidator.sameMinor("4.0.5", "4.1.2")).isFalse();
+        assertThat(PreflightValidator.sameMinor("4.2", null)).isFalse();
+        assertThat(PreflightValidator.sameMinor("4", "4.2.3")).isFalse();
+    }
+
+        private static AnalysisSyncRequestDTO request(String executableFileName) {
+
+        AnalysisSyncRequestDTO analysis = new AnalysisSyncRequestDTO();
+        analysis.setId(1L);
+        analysis.setExecutableFileName(executableFileName);
+        return analysis;
+    }
+}
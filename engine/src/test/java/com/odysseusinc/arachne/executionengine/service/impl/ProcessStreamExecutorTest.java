@@ -0,0 +1,81 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class ProcessStreamExecutorTest {
+
+    @Test
+    public void shouldSizePoolFromMaxProcesses() {
+
+        ProcessStreamExecutor executor = new ProcessStreamExecutor(0, 8, 4);
+        try {
+            assertThat(executor.getMaximumPoolSize())
+                    .isEqualTo(8 * ProcessStreamExecutor.STREAMS_PER_PROCESS + 4 + ProcessStreamExecutor.HEADROOM_THREADS);
+        } finally {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void shouldRejectTooFewThreadsAtStartup() {
+
+        assertThatThrownBy(() -> new ProcessStreamExecutor(64, 40, 0))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("runtime.maxProcesses=40");
+    }
+
+    @Test
+    public void shouldRejectStreamsOverLimitInsteadOfQueueing() throws Exception {
+
+        int threads = ProcessStreamExecutor.requiredThreads(1, 0);
+        ProcessStreamExecutor executor = new ProcessStreamExecutor(threads, 1, 0);
+        List<PipedOutputStream> outputs = new ArrayList<>();
+        List<Future<String>> reads = new ArrayList<>();
+        try {
+            for (int i = 0; i < threads; i++) {
+                PipedOutputStream output = new PipedOutputStream();
+                outputs.add(output);
+                reads.add(executor.submit(pump(new PipedInputStream(output)), 1000));
+            }
+
+            assertThatThrownBy(() -> executor.submit(pump(new PipedInputStream(new PipedOutputStream())), 1000))
+                    .isInstanceOf(RejectedExecutionException.class);
+
+            outputs.get(0).write("done\n".getBytes(StandardCharsets.UTF_8));
+            outputs.get(0).close();
+            assertThat(reads.get(0).get(10, TimeUnit.SECONDS)).isEqualTo("done\n");
+        } finally {
+            for (PipedOutputStream output : outputs) {
+                close(output);
+            }
+            executor.destroy();
+        }
+    }
+
+    private static StdoutPump pump(PipedInputStream input) {
+
+        return new StdoutPump(input, new StdoutWindow(1024, 1024, "stdout.log"), null, 1024, Long.MAX_VALUE, text -> {
+        });
+    }
+
+    private static void close(PipedOutputStream output) {
+
+        try {
+            output.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+    }
+}
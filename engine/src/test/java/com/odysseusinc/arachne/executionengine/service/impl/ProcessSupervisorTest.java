@@ -0,0 +1,51 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class ProcessSupervisorTest {
+
+    @Test
+    public void shouldNotSignalPidsReusedByOtherProcesses() throws Exception {
+
+        Process process = new ProcessBuilder("sleep", "300").start();
+        try {
+            long pid = ProcessTree.pidOf(process);
+            long startTime = ProcessStats.read(pid).get().getStartTime();
+            Map<Long, Long> tree = new LinkedHashMap<>();
+            tree.put(pid, startTime);
+            // Same pid recorded for a process started earlier
+            Map<Long, Long> reused = new LinkedHashMap<>();
+            reused.put(pid, startTime - 1);
+
+            assertThat(ProcessSupervisor.unchanged(tree)).containsExactly(pid);
+            assertThat(ProcessSupervisor.unchanged(reused)).isEmpty();
+            assertThat(reused).isEmpty();
+        } finally {
+            process.destroyForcibly().waitFor(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void shouldTerminateProcessTreeOnTimeout() throws Exception {
+
+        ProcessSupervisor supervisor = new ProcessSupervisor();
+        supervisor.init();
+        Process process = new ProcessBuilder("sleep", "300").start();
+        try {
+            int exitCode = supervisor.watch(process, 0, 1L, false).get(10, TimeUnit.SECONDS);
+
+            assertThat(exitCode).isNotZero();
+            assertThat(supervisor.getTimedOut()).isEqualTo(1);
+        } finally {
+            supervisor.destroy();
+            process.destroyForcibly();
+        }
+    }
+}
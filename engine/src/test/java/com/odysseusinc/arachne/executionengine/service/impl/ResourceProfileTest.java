@@ -0,0 +1,101 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.odysseusinc.arachne.executionengine.util.IoCounters;
+import com.odysseusinc.arachne.executionengine.util.ProcessStats;
+import com.odysseusinc.arachne.executionengine.util.ProcessTree;
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ResourceProfileTest {
+
+    @Test
+    public void shouldKeepCountersOfExitedProcesses() {
+
+        ResourceProfile profile = new ResourceProfile(1L, 10, 1000, 100);
+
+        profile.record(1100, Arrays.asList(
+                new ProcessStats(10, 1, 100, 1024, 10, 20),
+                new ProcessStats(11, 2, 200, 2048, 30, 40)));
+        // Pid 11 exited, pid 12 started
+        profile.record(1200, Arrays.asList(
+                new ProcessStats(10, 1, 150, 1024, 10, 20),
+                new ProcessStats(12, 3, 50, 512, 0, 5)));
+        profile.finish(1300);
+
+        assertThat(profile.getCpuMillis()).isEqualTo(150 + 200 + 50);
+        assertThat(profile.getReadBytes()).isEqualTo(40);
+        assertThat(profile.getWriteBytes()).isEqualTo(65);
+        assertThat(profile.getPeakRssMb()).isEqualTo(3);
+        assertThat(profile.getPeakProcesses()).isEqualTo(2);
+        assertThat(profile.getWallMillis()).isEqualTo(300);
+        assertThat(profile.getSamples()).extracting(ResourceProfile.Sample::getOffsetMillis).containsExactly(100L, 200L);
+    }
+
+    @Test
+    public void shouldNotReportIoOfProcessesNotReadable() {
+
+        ResourceProfile profile = new ResourceProfile(1L, 10, 1000, 100);
+
+        profile.record(1100, Arrays.asList(
+                new ProcessStats(10, 1, 100, 1024, 10, 20),
+                new ProcessStats(11, 2, 200, 2048, ProcessStats.UNAVAILABLE, ProcessStats.UNAVAILABLE)));
+
+        assertThat(profile.getCpuMillis()).isEqualTo(300);
+        assertThat(profile.getReadBytes()).isNull();
+        assertThat(profile.getWriteBytes()).isNull();
+        assertThat(profile.getSamples()).extracting(ResourceProfile.Sample::getReadBytes).containsExactly((Long) null);
+    }
+
+    @Test
+    public void shouldTakeIoFromCgroup(@TempDir File group) throws Exception {
+
+        FileUtils.writeLines(new File(group, "io.stat"), Arrays.asList(
+                "8:0 rbytes=1000 wbytes=2000 rios=1 wios=2 dbytes=0 dios=0",
+                "259:0 rbytes=30 wbytes=40 rios=3 wios=4 dbytes=0 dios=0"));
+        ResourceProfile profile = new ResourceProfile(1L, 10, group, true, 1000, 100);
+
+        profile.record(1100, Collections.singletonList(new ProcessStats(10, 1, 100, 1024, ProcessStats.UNAVAILABLE,
+                ProcessStats.UNAVAILABLE)), IoCounters.readCgroup(group).orElse(null));
+
+        assertThat(profile.getReadBytes()).isEqualTo(1030);
+        assertThat(profile.getWriteBytes()).isEqualTo(2040);
+    }
+
+    @Test
+    public void shouldThinOutSeriesOverSizeLimit() {
+
+        ResourceProfile profile = new ResourceProfile(1L, 10, 0, 1);
+
+        for (int i = 0; i < ResourceProfile.MAX_SAMPLES * 4; i++) {
+            profile.record(i, Collections.singletonList(new ProcessStats(10, 1, i, 0, 0, 0)));
+        }
+
+        assertThat(profile.getSamples()).hasSizeLessThan(ResourceProfile.MAX_SAMPLES);
+        assertThat(profile.getSamples().get(0).getOffsetMillis()).isZero();
+        assertThat(profile.getSamples().get(profile.getSamples().size() - 1).getOffsetMillis())
+                .isGreaterThan(ResourceProfile.MAX_SAMPLES * 3);
+    }
+
+    @Test
+    public void shouldReadStatsOfRunningProcess() throws Exception {
+
+        Process process = new ProcessBuilder("sleep", "10").start();
+        try {
+            long pid = ProcessTree.pidOf(process);
+
+            assertThat(ProcessStats.read(pid)).hasValueSatisfying(stats -> {
+                assertThat(stats.getPid()).isEqualTo(pid);
+                assertThat(stats.getRssKb()).isPositive();
+                assertThat(stats.getStartTime()).isPositive();
+            });
+        } finally {
+            process.destroyForcibly().waitFor();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RuntimeServiceImplTest {
+
+    @TempDir
+    File analysisDir;
+
+    @Test
+    public void shouldPassJailEnvironmentToWarmSession() {
+
+        Map<String, String> envp = new HashMap<>();
+        envp.put("DBMS_USERNAME", "user");
+        envp.put("DBMS_PASSWORD", "p@ss word");
+        envp.put("KINIT_PARAMS", "");
+        envp.put("KRB_CONF", "");
+
+        assertThat(RuntimeServiceImpl.buildWarmSessionRequest("main.R", envp))
+                .hasValue("main.R\nDBMS_USERNAME\tuser\nDBMS_PASSWORD\tp@ss word\n\n");
+    }
+
+    @Test
+    public void shouldNotUseWarmSessionWhenJailSetupIsNeeded() {
+
+        Map<String, String> kerberos = new HashMap<>();
+        kerberos.put("KINIT_PARAMS", "-k -t /etc/krb.keytab user@REALM");
+        Map<String, String> multiline = new HashMap<>();
+        multiline.put("CONNECTION_STRING", "jdbc:postgresql://host/db\n");
+
+        assertThat(RuntimeServiceImpl.buildWarmSessionRequest("main.R", kerberos)).isEmpty();
+        assertThat(RuntimeServiceImpl.buildWarmSessionRequest("main.R", multiline)).isEmpty();
+    }
+
+    @Test
+    public void shouldKeepOnlyLogOfAnalysisOverDiskQuota() throws Exception {
+
+        FileUtils.writeStringToFile(new File(analysisDir, "stdout.log"), "log\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(analysisDir, "results/huge.csv"), "1,2\n", StandardCharsets.UTF_8);
+        FileUtils.writeStringToFile(new File(analysisDir, "main.R"), "print(1)\n", StandardCharsets.UTF_8);
+
+        RuntimeServiceImpl.discardOutput(analysisDir);
+
+        // Folder is what the callback packs and sends as the result
+        assertThat(analysisDir.list()).containsExactly("stdout.log");
+        assertThat(FileUtils.readFileToString(new File(analysisDir, "stdout.log"), StandardCharsets.UTF_8)).isEqualTo("log\n");
+    }
+}
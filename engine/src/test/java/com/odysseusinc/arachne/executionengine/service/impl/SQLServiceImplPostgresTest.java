@@ -0,0 +1,195 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.odysseusinc.arachne.commons.types.DBMSType;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisResultStatusDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.AnalysisSyncRequestDTO;
+import com.odysseusinc.arachne.execution_engine_common.api.v1.dto.DataSourceUnsecuredDTO;
+import com.odysseusinc.arachne.executionengine.config.properties.SqlParallelProperties;
+import com.odysseusinc.arachne.executionengine.config.properties.SqlStreamingProperties;
+import com.zaxxer.hikari.HikariDataSource;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.postgresql.ds.PGSimpleDataSource;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+@Testcontainers(disabledWithoutDocker = true)
+public class SQLServiceImplPostgresTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:15-alpine");
+
+    @TempDir
+    File analysisDir;
+
+    private PGSimpleDataSource dataSource;
+    private ThreadPoolTaskExecutor taskExecutor;
+    private SQLServiceImpl service;
+    private HikariDataSource pool;
+
+    @BeforeEach
+    public void setUp() {
+
+        dataSource = new PGSimpleDataSource();
+        dataSource.setUrl(POSTGRES.getJdbcUrl());
+        dataSource.setUser(POSTGRES.getUsername());
+        dataSource.setPassword(POSTGRES.getPassword());
+        taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(4);
+        taskExecutor.initialize();
+        SqlParallelProperties parallel = new SqlParallelProperties();
+        parallel.setMaxParallelism(1);
+        parallel.setManifest("sql-parallel.json");
+        service = service(dataSource, parallel, 10);
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        taskExecutor.shutdown();
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    public void shouldRunMaintenanceAndFunctionBodiesWhileStreamingQueries() throws Exception {
+
+        FileUtils.writeStringToFile(new File(analysisDir, "script.sql"), "CREATE TABLE numbers (n INT);\n"
+                + "CREATE FUNCTION fill(k INT) RETURNS INT AS $$\n"
+                + "BEGIN\n"
+                + "    FOR i IN 1..k LOOP\n"
+                + "        INSERT INTO numbers VALUES (i);\n"
+                + "    END LOOP;\n"
+                + "    RETURN k;\n"
+                + "END;\n"
+                + "$$ LANGUAGE plpgsql;\n"
+                + "INSERT INTO numbers SELECT fill(3) + 1;\n"
+                + "VACUUM ANALYZE numbers;\n"
+                + "CREATE INDEX CONCURRENTLY numbers_n ON numbers (n);\n"
+                + "SELECT n, E'it\\'s; fine' AS note FROM numbers ORDER BY n;\n", StandardCharsets.UTF_8);
+
+        AtomicReference<String> stdout = new AtomicReference<>();
+        assertThat(run(stdout)).as(stdout.get()).isEqualTo(AnalysisResultStatusDTO.EXECUTED);
+
+        File[] results = analysisDir.listFiles((dir, name) -> name.startsWith("script.sql.result_"));
+        assertThat(results).hasSize(1);
+        assertThat(FileUtils.readFileToString(results[0], StandardCharsets.UTF_8))
+                .isEqualTo("n,note\r\n1,it's; fine\r\n2,it's; fine\r\n3,it's; fine\r\n4,it's; fine\r\n");
+        assertThat(stdout.get()).contains("4 rows streamed, fetch size 2");
+    }
+
+    @Test
+    public void shouldKeepStatementsCommittedBeforeFailure() throws Exception {
+
+        FileUtils.writeStringToFile(new File(analysisDir, "script.sql"), "CREATE TABLE kept (n INT);\n"
+                + "INSERT INTO kept VALUES (1), (2), (3);\n"
+                + "SELECT n FROM kept;\n"
+                + "SELECT n FROM missing;\n", StandardCharsets.UTF_8);
+
+        AtomicReference<String> stdout = new AtomicReference<>();
+        assertThat(run(stdout)).isEqualTo(AnalysisResultStatusDTO.FAILED);
+
+        try (Connection conn = dataSource.getConnection();
+             Statement statement = conn.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT count(*) FROM kept")) {
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getInt(1)).isEqualTo(3);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void shouldShareSmallPoolBetweenConcurrentAnalyses() throws Exception {
+
+        pool = new HikariDataSource();
+        pool.setJdbcUrl(POSTGRES.getJdbcUrl());
+        pool.setUsername(POSTGRES.getUsername());
+        pool.setPassword(POSTGRES.getPassword());
+        pool.setMaximumPoolSize(2);
+        // Shorter than the files take, a worker waiting for the pool would fail
+        pool.setConnectionTimeout(500);
+        SqlParallelProperties parallel = new SqlParallelProperties();
+        parallel.setMaxParallelism(4);
+        parallel.setManifest("sql-parallel.json");
+        service = service(pool, parallel, 2);
+
+        File[] dirs = new File[3];
+        for (int i = 0; i < dirs.length; i++) {
+            dirs[i] = new File(analysisDir, "analysis" + i);
+            FileUtils.writeStringToFile(new File(dirs[i], "sql-parallel.json"), "{\"parallelism\": 4}", StandardCharsets.UTF_8);
+            for (int file = 0; file < 4; file++) {
+                FileUtils.writeStringToFile(new File(dirs[i], "query" + file + ".sql"),
+                        "SELECT n FROM generate_series(1, 2) n, pg_sleep(1) s;", StandardCharsets.UTF_8);
+            }
+        }
+        AtomicReference<String>[] stdouts = new AtomicReference[dirs.length];
+        AtomicReference<AnalysisResultStatusDTO>[] statuses = new AtomicReference[dirs.length];
+        Future<?>[] runs = new Future[dirs.length];
+        for (int i = 0; i < dirs.length; i++) {
+            stdouts[i] = new AtomicReference<>();
+            statuses[i] = new AtomicReference<>();
+            runs[i] = submit(i + 1L, dirs[i], statuses[i], stdouts[i]);
+        }
+
+        for (int i = 0; i < dirs.length; i++) {
+            runs[i].get(1, TimeUnit.MINUTES);
+            assertThat(statuses[i].get()).as(stdouts[i].get()).isEqualTo(AnalysisResultStatusDTO.EXECUTED);
+            assertThat(dirs[i].listFiles((dir, name) -> name.contains(".sql.result_"))).hasSize(4);
+        }
+    }
+
+    private SQLServiceImpl service(DataSource source, SqlParallelProperties parallel, int poolCapacity) {
+
+        SqlStreamingProperties streaming = new SqlStreamingProperties();
+        streaming.setEnabled(true);
+        // Fewer rows than the results hold, so they are read through the cursor
+        streaming.setFetchSize(2);
+        SQLServiceImpl created = new SQLServiceImpl(taskExecutor, dto -> source, streaming, parallel);
+        ReflectionTestUtils.setField(created, "csvSeparator", ',');
+        ReflectionTestUtils.setField(created, "defaultFormat", "csv");
+        ReflectionTestUtils.setField(created, "gzipLevel", 1);
+        ReflectionTestUtils.setField(created, "zstdLevel", 3);
+        ReflectionTestUtils.setField(created, "poolCapacity", poolCapacity);
+        return created;
+    }
+
+    private AnalysisResultStatusDTO run(AtomicReference<String> stdout) throws Exception {
+
+        AtomicReference<AnalysisResultStatusDTO> status = new AtomicReference<>();
+        submit(1L, analysisDir, status, stdout).get(1, TimeUnit.MINUTES);
+        return status.get();
+    }
+
+    private Future<?> submit(Long id, File dir, AtomicReference<AnalysisResultStatusDTO> status,
+                             AtomicReference<String> stdout) {
+
+        DataSourceUnsecuredDTO source = new DataSourceUnsecuredDTO();
+        source.setType(DBMSType.POSTGRESQL);
+        AnalysisSyncRequestDTO analysis = new AnalysisSyncRequestDTO();
+        analysis.setId(id);
+        analysis.setDataSource(source);
+        return service.analyze(analysis, dir, new StdoutHandlerParams(10, text -> {
+        }), (result, output, resultDir, e) -> {
+            status.set(result);
+            stdout.set(output);
+        });
+    }
+}
@@ -0,0 +1,72 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class SqlExecutionPlanTest {
+
+    @TempDir
+    File analysisDir;
+
+    @Test
+    public void shouldRunSequentiallyWithoutManifest() throws Exception {
+
+        List<File> files = files("a.sql", "b.sql");
+
+        SqlExecutionPlan plan = SqlExecutionPlan.of(analysisDir, files, new File(analysisDir, "sql-parallel.json"), 4);
+
+        assertThat(plan.getParallelism()).isEqualTo(1);
+        assertThat(plan.getOrder()).isEqualTo(files);
+    }
+
+    @Test
+    public void shouldOrderDependenciesFirstAndCapParallelism() throws Exception {
+
+        List<File> files = files("a.sql", "b.sql", "c.sql", "d.sql");
+        File manifest = manifest("{\"parallelism\": 3, \"dependsOn\": {\"a.sql\": [\"c.sql\"], \"b.sql\": [\"a.sql\", \"d.sql\"]}}");
+
+        SqlExecutionPlan plan = SqlExecutionPlan.of(analysisDir, files, manifest, 8);
+
+        assertThat(plan.getParallelism()).isEqualTo(3);
+        assertThat(plan.getOrder()).extracting(File::getName).containsExactly("c.sql", "d.sql", "a.sql", "b.sql");
+        assertThat(plan.getDependencies(files.get(1))).extracting(File::getName).containsExactly("a.sql", "d.sql");
+        assertThat(SqlExecutionPlan.of(analysisDir, files, manifest, 2).getParallelism()).isEqualTo(2);
+        assertThat(SqlExecutionPlan.of(analysisDir, files, manifest, 1).getParallelism()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRejectUnknownFilesAndCycles() throws Exception {
+
+        List<File> files = files("a.sql", "b.sql", "c.sql");
+
+        File unknown = manifest("{\"dependsOn\": {\"a.sql\": [\"x.sql\"]}}");
+        assertThatThrownBy(() -> SqlExecutionPlan.of(analysisDir, files, unknown, 4))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("sql-parallel.json: unknown SQL file x.sql");
+        File cycle = manifest("{\"dependsOn\": {\"a.sql\": [\"b.sql\"], \"b.sql\": [\"a.sql\"]}}");
+        assertThatThrownBy(() -> SqlExecutionPlan.of(analysisDir, files, cycle, 4))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessage("sql-parallel.json: circular dependencies between a.sql, b.sql");
+    }
+
+    private List<File> files(String... names) {
+
+        return Arrays.stream(names).map(name -> new File(analysisDir, name)).collect(Collectors.toList());
+    }
+
+    private File manifest(String content) throws Exception {
+
+        File manifest = new File(analysisDir, "sql-parallel.json");
+        FileUtils.writeStringToFile(manifest, content, StandardCharsets.UTF_8);
+        return manifest;
+    }
+}
@@ -0,0 +1,49 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class SqlScriptTest {
+
+    @Test
+    public void shouldKeepFunctionBodiesAndLiteralsWhole() {
+
+        String function = "CREATE FUNCTION f() RETURNS int AS $body$\nBEGIN\n  PERFORM 1; RETURN 2;\nEND;\n$body$ LANGUAGE plpgsql;";
+        String script = function + "\nSELECT $$a;b$$, E'it\\'s;', 'x'';y', \"semi;colon\" FROM t; -- done;\n"
+                + "/* outer /* nested; */ still; */ VACUUM t;\n;SELECT $1";
+
+        SqlScript parsed = SqlScript.parse(script);
+
+        assertThat(parsed.getStatements().stream().map(SqlScript.Statement::getSql).collect(Collectors.toList())).containsExactly(
+                function,
+                "\nSELECT $$a;b$$, E'it\\'s;', 'x'';y', \"semi;colon\" FROM t;",
+                " -- done;\n/* outer /* nested; */ still; */ VACUUM t;",
+                "\n;",
+                "SELECT $1");
+        assertThat(parsed.getStatements().stream().map(SqlScript.Statement::isQuery).collect(Collectors.toList()))
+                .containsExactly(false, true, false, false, true);
+        assertThat(parsed.getStatements().get(3).isEmpty()).isTrue();
+        assertThat(parsed.hasTransactionControl()).isFalse();
+    }
+
+    @Test
+    public void shouldRecognizeQueriesAndTransactionControl() {
+
+        SqlScript parsed = SqlScript.parse("(select 1) union all (select 2);\nWITH x AS (SELECT 1) SELECT * FROM x;\n"
+                + "CREATE INDEX CONCURRENTLY i ON t (c);\nBEGIN;\nCOMMIT;");
+
+        assertThat(parsed.getStatements().stream().map(SqlScript.Statement::isQuery).collect(Collectors.toList()))
+                .containsExactly(true, true, false, false, false);
+        assertThat(parsed.hasTransactionControl()).isTrue();
+    }
+
+    @Test
+    public void shouldRejectUnterminatedText() {
+
+        assertThat(SqlScript.parse("SELECT 'open;")).isNull();
+        assertThat(SqlScript.parse("CREATE FUNCTION f() AS $$ BEGIN;")).isNull();
+        assertThat(SqlScript.parse("SELECT 1; /* open")).isNull();
+    }
+}
@@ -0,0 +1,114 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.Test;
+
+public class StdoutPumpTest {
+
+    @Test
+    public void shouldDecodeMultibyteCharactersSplitBetweenReads() {
+
+        String text = "Привет, 世界\n";
+        List<String> chunks = new ArrayList<>();
+        StdoutPump pump = new StdoutPump(new OneByteInputStream(text.getBytes(StandardCharsets.UTF_8)), window(), null, 1024, Long.MAX_VALUE, chunks::add);
+
+        String stdout = pump.call();
+
+        assertThat(stdout).isEqualTo(text);
+        assertThat(String.join("", chunks)).isEqualTo(text);
+    }
+
+    @Test
+    public void shouldPublishWholeLinesOnSizeThreshold() {
+
+        List<String> chunks = new ArrayList<>();
+        StdoutPump pump = new StdoutPump(new OneByteInputStream("line1\nline2\nli".getBytes(StandardCharsets.UTF_8)), window(), null, 8, Long.MAX_VALUE, chunks::add);
+
+        pump.call();
+
+        assertThat(chunks).containsExactly("line1\n", "line2\n", "li");
+    }
+
+    @Test
+    public void shouldPublishPendingOutputOnTick() throws Exception {
+
+        List<String> chunks = new CopyOnWriteArrayList<>();
+        PipedOutputStream out = new PipedOutputStream();
+        StdoutPump pump = new StdoutPump(new PipedInputStream(out), window(), null, 1024, 0, chunks::add);
+        Thread thread = new Thread(pump::call);
+        thread.start();
+
+        out.write("progress 50%".getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (chunks.isEmpty() && System.currentTimeMillis() < deadline) {
+            pump.tick();
+            Thread.sleep(10);
+        }
+        out.close();
+        thread.join(5000);
+
+        assertThat(String.join("", chunks)).isEqualTo("progress 50%");
+    }
+
+    @Test
+    public void shouldNotPublishAfterDrain() {
+
+        List<String> chunks = new ArrayList<>();
+        StdoutPump pump = new StdoutPump(new ByteArrayInputStream("tail\n".getBytes(StandardCharsets.UTF_8)), window(), null, 1024, Long.MAX_VALUE, chunks::add);
+
+        assertThat(pump.drain()).isEmpty();
+        pump.call();
+
+        assertThat(chunks).isEmpty();
+    }
+
+    @Test
+    public void shouldWriteWholeOutputToLogAndKeepWindow() {
+
+        StringWriter log = new StringWriter();
+        StdoutPump pump = new StdoutPump(new ByteArrayInputStream("0123456789".getBytes(StandardCharsets.UTF_8)),
+                new StdoutWindow(2, 3, "stdout.log"), log, 1024, Long.MAX_VALUE, null);
+
+        String stdout = pump.call();
+
+        assertThat(log.toString()).isEqualTo("0123456789");
+        assertThat(stdout).startsWith("01").endsWith("789").contains("5 characters skipped, see stdout.log");
+    }
+
+    private static StdoutWindow window() {
+
+        return new StdoutWindow(1024, 1024, "stdout.log");
+    }
+
+    private static class OneByteInputStream extends FilterInputStream {
+
+        private OneByteInputStream(byte[] bytes) {
+
+            super(new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+
+            return super.read(b, off, Math.min(len, 1));
+        }
+
+        @Override
+        public int available() {
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.odysseusinc.arachne.executionengine.service.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class StdoutWindowTest {
+
+    @Test
+    public void shouldKeepWholeOutputWithinBounds() {
+
+        StdoutWindow window = new StdoutWindow(4, 4, "stdout.log");
+
+        append(window, "abc");
+        append(window, "def");
+
+        assertThat(window.toString()).isEqualTo("abcdef");
+        assertThat(window.getSkipped()).isZero();
+    }
+
+    @Test
+    public void shouldKeepHeadAndTail() {
+
+        StdoutWindow window = new StdoutWindow(3, 4, "stdout.log");
+
+        for (int i = 0; i < 100; i++) {
+            append(window, Integer.toString(i % 10));
+        }
+
+        assertThat(window.getSkipped()).isEqualTo(93);
+        assertThat(window.toString())
+                .startsWith("012")
+                .contains("[93 characters skipped, see stdout.log]")
+                .endsWith("6789");
+    }
+
+    private static void append(StdoutWindow window, String text) {
+
+        window.append(text.toCharArray(), 0, text.length());
+    }
+}